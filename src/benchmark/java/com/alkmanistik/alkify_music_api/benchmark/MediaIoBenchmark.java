@@ -0,0 +1,255 @@
+package com.alkmanistik.alkify_music_api.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отдача медиафайла в сокет разными способами: текущие пути отдачи и альтернативы им.
+ * <p>
+ * Каждый поток пишет в свое loopback-соединение, которое вычитывает и выбрасывает отдельный поток,
+ * так что меряется путь от файла до ядра, а не сеть. Файлы генерируются один раз в target/benchmark-media
+ * и после первого прохода лежат в page cache - это соответствует горячим трекам.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MediaIoBenchmark {
+
+    // Совпадает с project.streaming.async.chunk-size
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @State(Scope.Benchmark)
+    public static class MediaFile {
+
+        @Param({"50KB", "1MB", "10MB", "100MB"})
+        public String size;
+
+        Path file;
+        long length;
+
+        @Setup(Level.Trial)
+        public void generate() throws IOException {
+            length = DataSize.parse(size).toBytes();
+            Path directory = Files.createDirectories(Path.of("target", "benchmark-media"));
+            file = directory.resolve(size + ".bin");
+            if (Files.exists(file) && Files.size(file) == length) {
+                return;
+            }
+            // Случайное содержимое: как и сжатое аудио, оно не дает файловой системе схитрить
+            SplittableRandom random = new SplittableRandom(length);
+            byte[] block = new byte[CHUNK_SIZE];
+            try (OutputStream out = Files.newOutputStream(file)) {
+                for (long written = 0; written < length; written += block.length) {
+                    for (int i = 0; i < block.length; i += Long.BYTES) {
+                        long value = random.nextLong();
+                        for (int j = 0; j < Long.BYTES; j++) {
+                            block[i + j] = (byte) (value >>> (j * 8));
+                        }
+                    }
+                    out.write(block, 0, (int) Math.min(block.length, length - written));
+                }
+            }
+        }
+    }
+
+    /**
+     * Соединение одного потока бенчмарка. Поток-сливщик на другой стороне читает все и выбрасывает.
+     */
+    @State(Scope.Thread)
+    public static class Connection {
+
+        ServerSocketChannel server;
+        SocketChannel client;
+        OutputStream out;
+        ByteBuffer directBuffer;
+        byte[] heapBuffer;
+        private Thread drain;
+
+        @Setup(Level.Trial)
+        public void open() throws IOException {
+            server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            client = SocketChannel.open(server.getLocalAddress());
+            SocketChannel accepted = server.accept();
+            drain = Thread.ofPlatform().daemon().name("benchmark-drain").start(() -> {
+                ByteBuffer sink = ByteBuffer.allocateDirect(256 * 1024);
+                try (accepted) {
+                    while (accepted.read(sink.clear()) >= 0) {
+                        // отбрасываем
+                    }
+                } catch (IOException ignored) {
+                    // соединение закрыто в tearDown
+                }
+            });
+            // Аналог ServletOutputStream поверх сокета
+            out = client.socket().getOutputStream();
+            directBuffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            heapBuffer = new byte[CHUNK_SIZE];
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Exception {
+            client.close();
+            server.close();
+            drain.join();
+        }
+    }
+
+    /**
+     * Счетчики на итерацию: переданные байты и процессорное время потока (user + system) для расчета CPU на ГБ.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Cost {
+
+        public long bytes;
+        public long cpuNanos;
+
+        long started;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            cpuNanos = 0;
+        }
+
+        @Setup(Level.Invocation)
+        public void start() {
+            started = THREADS.getCurrentThreadCpuTime();
+        }
+
+        @TearDown(Level.Invocation)
+        public void stop() {
+            cpuNanos += THREADS.getCurrentThreadCpuTime() - started;
+        }
+    }
+
+    /**
+     * Исходный путь getImage: InputStream файла, скопированный StreamUtils.copy.
+     */
+    @Benchmark
+    public long streamCopy(MediaFile media, Connection connection, Cost cost) throws IOException {
+        try (InputStream in = Files.newInputStream(media.file)) {
+            return count(cost, StreamUtils.copy(in, connection.out));
+        }
+    }
+
+    /**
+     * Блокирующий путь MediaStreamingService: transferTo в Channels.newChannel поверх потока ответа.
+     */
+    @Benchmark
+    public long channelTransfer(MediaFile media, Connection connection, Cost cost) throws IOException {
+        try (FileChannel channel = FileChannel.open(media.file, StandardOpenOption.READ)) {
+            var target = Channels.newChannel(connection.out);
+            long position = 0;
+            while (position < media.length) {
+                position += channel.transferTo(position, media.length - position, target);
+            }
+            return count(cost, position);
+        }
+    }
+
+    /**
+     * Путь AsyncMediaWriter: позиционное чтение кусками в массив и запись в поток ответа.
+     */
+    @Benchmark
+    public long heapChunks(MediaFile media, Connection connection, Cost cost) throws IOException {
+        try (FileChannel channel = FileChannel.open(media.file, StandardOpenOption.READ)) {
+            byte[] chunk = connection.heapBuffer;
+            long position = 0;
+            while (position < media.length) {
+                ByteBuffer target = ByteBuffer.wrap(chunk, 0, (int) Math.min(chunk.length, media.length - position));
+                while (target.hasRemaining()) {
+                    channel.read(target, position + target.position());
+                }
+                connection.out.write(chunk, 0, target.limit());
+                position += target.limit();
+            }
+            return count(cost, position);
+        }
+    }
+
+    /**
+     * Чтение в direct-буфер и запись в канал сокета: без копии между heap и нативной памятью.
+     */
+    @Benchmark
+    public long directBuffer(MediaFile media, Connection connection, Cost cost) throws IOException {
+        try (FileChannel channel = FileChannel.open(media.file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = connection.directBuffer;
+            long position = 0;
+            while (position < media.length) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    connection.client.write(buffer);
+                }
+                position += read;
+            }
+            return count(cost, position);
+        }
+    }
+
+    /**
+     * Файл, отображенный в память, пишется в сокет напрямую из page cache.
+     */
+    @Benchmark
+    public long mmap(MediaFile media, Connection connection, Cost cost) throws IOException {
+        try (FileChannel channel = FileChannel.open(media.file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, media.length);
+            while (mapped.hasRemaining()) {
+                connection.client.write(mapped);
+            }
+            return count(cost, media.length);
+        }
+    }
+
+    /**
+     * transferTo прямо в канал сокета - на Linux это sendfile, как у коннектора Tomcat.
+     */
+    @Benchmark
+    public long sendfile(MediaFile media, Connection connection, Cost cost) throws IOException {
+        try (FileChannel channel = FileChannel.open(media.file, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < media.length) {
+                position += channel.transferTo(position, media.length - position, connection.client);
+            }
+            return count(cost, position);
+        }
+    }
+
+    private static long count(Cost cost, long bytes) {
+        cost.bytes += bytes;
+        return bytes;
+    }
+}
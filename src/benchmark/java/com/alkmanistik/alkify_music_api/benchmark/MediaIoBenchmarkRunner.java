@@ -0,0 +1,89 @@
+package com.alkmanistik.alkify_music_api.benchmark;
+
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Прогон {@link MediaIoBenchmark} на нескольких уровнях конкурентности со сводкой:
+ * пропускная способность, процессорное время на гигабайт и скорость аллокаций.
+ * <p>
+ * Без аргументов - полный прогон по потокам 1, 8 и 32, JSON каждого прогона пишется в target/jmh.
+ * Аргументы передаются JMH как есть, например {@code -Dbenchmark.args="-p size=1MB -t 4 -prof gc"}.
+ */
+public class MediaIoBenchmarkRunner {
+
+    private static final int[] THREADS = {1, 8, 32};
+    private static final double GB = 1024.0 * 1024 * 1024;
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        Path output = Files.createDirectories(Path.of("target", "jmh"));
+        List<RunResult> results = new ArrayList<>();
+        if (args.length > 0) {
+            CommandLineOptions options = new CommandLineOptions(args);
+            results.addAll(run(new OptionsBuilder().parent(options).include(MediaIoBenchmark.class.getSimpleName()).build()));
+        } else {
+            for (int threads : THREADS) {
+                results.addAll(run(new OptionsBuilder()
+                        .include(MediaIoBenchmark.class.getSimpleName())
+                        .threads(threads)
+                        .forks(1)
+                        .warmupIterations(3)
+                        .warmupTime(TimeValue.seconds(2))
+                        .measurementIterations(5)
+                        .measurementTime(TimeValue.seconds(2))
+                        .addProfiler(GCProfiler.class)
+                        .resultFormat(ResultFormatType.JSON)
+                        .result(output.resolve("media-io-t" + threads + ".json").toString())
+                        .build()));
+            }
+        }
+        printSummary(results);
+    }
+
+    private static Collection<RunResult> run(Options options) throws RunnerException {
+        return new Runner(options).run();
+    }
+
+    private static void printSummary(List<RunResult> results) {
+        System.out.println();
+        System.out.printf("%-18s %8s %8s %12s %12s %14s%n",
+                "Benchmark", "Size", "Threads", "MB/s", "CPU s/GB", "Alloc B/op");
+        for (RunResult run : results) {
+            var params = run.getParams();
+            String method = params.getBenchmark().substring(params.getBenchmark().lastIndexOf('.') + 1);
+            String size = params.getParam("size");
+            long length = DataSize.parse(size).toBytes();
+            double opsPerSecond = run.getPrimaryResult().getScore();
+            Map<String, Result> secondary = run.getSecondaryResults();
+            double bytes = score(secondary, "bytes");
+            double cpuNanos = score(secondary, "cpuNanos");
+            double cpuPerGb = bytes > 0 ? cpuNanos / 1e9 / (bytes / GB) : Double.NaN;
+            System.out.printf("%-18s %8s %8d %12.1f %12.3f %14.0f%n",
+                    method, size, params.getThreads(), opsPerSecond * length / (1024 * 1024), cpuPerGb,
+                    score(secondary, "gc.alloc.rate.norm"));
+        }
+    }
+
+    private static double score(Map<String, Result> secondary, String name) {
+        Result result = secondary.get(name);
+        return result != null ? result.getScore() : Double.NaN;
+    }
+}
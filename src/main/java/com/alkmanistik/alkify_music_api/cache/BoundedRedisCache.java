@@ -0,0 +1,361 @@
+package com.alkmanistik.alkify_music_api.cache;
+
+import com.alkmanistik.alkify_music_api.dto.CacheStatsDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кеш Redis с лимитами одного пространства имен: число записей и размер значения.
+ * <p>
+ * Ключи пространства лежат в sorted set {@code cache-index:<кеш>:<поколение>} со временем записи в score:
+ * при превышении {@code max-entries} удаляются самые старые записи, а вышедшие по TTL вычищаются из индекса
+ * при следующей записи. Так поиск по произвольным строкам не вытесняет из Redis горячие записи каталога.
+ * Значение больше {@code max-value-size} не кешируется совсем.
+ * <p>
+ * В каждый ключ встроено поколение кеша - счетчик {@code cache-gen:<кеш>}. Сброс всего кеша - один INCR
+ * вместо перебора ключей: записи прошлого поколения больше не находятся и истекают сами по TTL.
+ * Поколение читается из Redis не чаще раза в {@code generation-refresh}, а сброс на другом узле
+ * перечитывает его сразу по сообщению инвалидации.
+ */
+@Slf4j
+public class BoundedRedisCache implements Cache {
+
+    static final String INDEX_PREFIX = "cache-index:";
+    static final String GENERATION_PREFIX = "cache-gen:";
+    // Сколько записей берем для оценки занимаемой памяти
+    private static final int MEMORY_SAMPLE = 32;
+
+    /**
+     * Обслуживание индекса после записи одним вызовом вместо пяти-шести команд с ожиданием ответа на каждую.
+     * KEYS[1] - индекс; ARGV: ключ, время записи, TTL в мс (0 - без TTL), max-entries (-1 - без лимита),
+     * префикс ключей Redis текущего поколения. Возвращает число вытесненных записей.
+     * Ключи вытесняемых записей собираются в скрипте, поэтому он рассчитан на Redis без кластера, как и весь кеш.
+     */
+    private static final RedisScript<Long> TRACK_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+            local ttl = tonumber(ARGV[3])
+            if ttl > 0 then
+                redis.call('ZREMRANGEBYSCORE', KEYS[1], 0, tonumber(ARGV[2]) - ttl)
+                redis.call('PEXPIRE', KEYS[1], ttl)
+            end
+            local max = tonumber(ARGV[4])
+            if max < 0 then
+                return 0
+            end
+            local excess = redis.call('ZCARD', KEYS[1]) - max
+            if excess <= 0 then
+                return 0
+            end
+            local oldest = redis.call('ZPOPMIN', KEYS[1], excess)
+            for i = 1, #oldest, 2 do
+                redis.call('UNLINK', ARGV[5] .. oldest[i])
+            end
+            return excess
+            """, Long.class);
+
+    private final RedisCache redis;
+    private final RedisCacheConfiguration configuration;
+    private final CachePolicyProperties.Policy policy;
+    private final Duration ttl;
+    private final StringRedisTemplate redisTemplate;
+    private final CacheDependencyIndex dependencyIndex;
+    private final String generationKey;
+    private final long generationRefreshNanos;
+    // Идущие загрузки по ключам Redis
+    private final Map<String, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+
+    private volatile long generation;
+    // Момент System.nanoTime() последнего чтения поколения; Long.MIN_VALUE - еще не читали
+    private volatile long generationCheckedAt = Long.MIN_VALUE;
+
+    BoundedRedisCache(RedisCache redis, CachePolicyProperties.Policy policy, StringRedisTemplate redisTemplate,
+                      CacheDependencyIndex dependencyIndex, Duration generationRefresh) {
+        this.redis = redis;
+        this.dependencyIndex = dependencyIndex;
+        this.configuration = redis.getCacheConfiguration();
+        this.policy = policy;
+        this.ttl = configuration.getTtlFunction().getTimeToLive(null, null);
+        this.redisTemplate = redisTemplate;
+        this.generationKey = GENERATION_PREFIX + redis.getName();
+        this.generationRefreshNanos = generationRefresh.toNanos();
+    }
+
+    @Override
+    public String getName() {
+        return redis.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redis.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return redis.get(redisKey(key));
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return redis.get(redisKey(key), type);
+    }
+
+    /**
+     * Загрузка одного ключа на узле идет в одном потоке, остальные ждут ее результата.
+     * В отличие от {@link RedisCache#get(Object, Callable)}, медленная загрузка не держит промахи по другим ключам.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String redisKey = redisKey(key);
+        ValueWrapper cached = redis.get(redisKey);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loads.putIfAbsent(redisKey, load);
+        if (existing != null) {
+            return (T) await(existing);
+        }
+        try {
+            // Пока ждали слот, значение могла положить предыдущая загрузка
+            cached = redis.get(redisKey);
+            T value;
+            if (cached != null) {
+                value = (T) cached.get();
+            } else {
+                try {
+                    value = valueLoader.call();
+                } catch (Exception e) {
+                    throw new ValueRetrievalException(key, valueLoader, e);
+                }
+                put(key, value);
+            }
+            load.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(redisKey, load);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (!fits(key, value)) {
+            // Старое значение под этим ключом устарело, а новое хранить не будем
+            evict(key);
+            return;
+        }
+        long generation = generation();
+        redis.put(redisKey(generation, key), value);
+        track(generation, key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        long generation = generation();
+        if (!fits(key, value)) {
+            ValueWrapper existing = redis.get(redisKey(generation, key));
+            return existing != null ? existing : new SimpleValueWrapper(value);
+        }
+        ValueWrapper existing = redis.putIfAbsent(redisKey(generation, key), value);
+        if (existing == null) {
+            track(generation, key, value);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        long generation = generation();
+        redis.evict(redisKey(generation, key));
+        untrack(generation, key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        long generation = generation();
+        boolean evicted = redis.evictIfPresent(redisKey(generation, key));
+        untrack(generation, key);
+        return evicted;
+    }
+
+    @Override
+    public void clear() {
+        long previous = generation();
+        if (ttl.isZero()) {
+            // Без TTL записи прошлого поколения никогда не истекут - удаляем их перебором, как раньше
+            redis.clear();
+            redisTemplate.delete(indexKey(previous));
+            return;
+        }
+        Long next = redisTemplate.opsForValue().increment(generationKey);
+        if (next != null) {
+            generation = next;
+            generationCheckedAt = System.nanoTime();
+        }
+        // UNLINK освобождает память индекса в фоне и не блокирует Redis на большом множестве
+        redisTemplate.unlink(indexKey(previous));
+        log.debug("Cache {} cleared: generation {} -> {}", getName(), previous, next);
+    }
+
+    @Override
+    public boolean invalidate() {
+        clear();
+        return true;
+    }
+
+    /**
+     * Перечитать поколение при следующем обращении - другой узел только что сбросил кеш.
+     */
+    void refreshGeneration() {
+        generationCheckedAt = Long.MIN_VALUE;
+    }
+
+    /**
+     * Число записей по индексу и оценка памяти по выборке {@code MEMORY USAGE}.
+     */
+    public CacheStatsDTO stats() {
+        long generation = generation();
+        String indexKey = indexKey(generation);
+        ZSetOperations<String, String> index = redisTemplate.opsForZSet();
+        pruneExpired(indexKey, System.currentTimeMillis());
+        Long entries = index.zCard(indexKey);
+        long count = entries != null ? entries : 0;
+
+        List<String> sample = count > 0 ? index.randomMembers(indexKey, MEMORY_SAMPLE) : List.of();
+        long sampledBytes = 0;
+        int sampled = 0;
+        for (String member : sample != null ? sample : List.<String>of()) {
+            Long usage = memoryUsage(configuration.getKeyPrefixFor(getName()) + redisKey(generation, member));
+            if (usage != null) {
+                sampledBytes += usage;
+                sampled++;
+            }
+        }
+        long estimatedBytes = sampled > 0 ? sampledBytes * count / sampled : 0;
+        return new CacheStatsDTO(
+                getName(),
+                count,
+                estimatedBytes,
+                ttl.isZero() ? null : ttl.toString(),
+                policy.getMaxEntries(),
+                policy.getMaxValueSize() != null ? policy.getMaxValueSize().toBytes() : null,
+                null
+        );
+    }
+
+    private boolean fits(Object key, Object value) {
+        if (value == null || policy.getMaxValueSize() == null) {
+            return true;
+        }
+        // Сериализация второй раз - цена только записи, а записей в кеш на порядки меньше, чем чтений
+        ByteBuffer serialized = configuration.getValueSerializationPair().write(value);
+        if (serialized.remaining() <= policy.getMaxValueSize().toBytes()) {
+            return true;
+        }
+        log.debug("Value of {}::{} is {} bytes, over the limit - not cached", getName(), key, serialized.remaining());
+        return false;
+    }
+
+    private void track(long generation, Object key, Object value) {
+        String convertedKey = convertKey(key);
+        // В индексе зависимостей ключ без поколения: сброс по нему попадет в текущее поколение
+        dependencyIndex.record(getName(), convertedKey, CacheDependency.of(value));
+        Long trimmed = redisTemplate.execute(TRACK_SCRIPT, List.of(indexKey(generation)),
+                convertedKey,
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(ttl.toMillis()),
+                String.valueOf(policy.getMaxEntries() != null ? policy.getMaxEntries() : -1),
+                configuration.getKeyPrefixFor(getName()) + redisKey(generation, ""));
+        if (trimmed != null && trimmed > 0) {
+            log.debug("Cache {} trimmed by {} oldest entries", getName(), trimmed);
+        }
+    }
+
+    private void pruneExpired(String indexKey, long now) {
+        if (ttl.isZero()) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] rawKey = indexKey.getBytes(StandardCharsets.UTF_8);
+            connection.zSetCommands().zRemRangeByScore(rawKey, 0, now - ttl.toMillis());
+            connection.keyCommands().pExpire(rawKey, ttl.toMillis());
+            return null;
+        });
+    }
+
+    private void untrack(long generation, Object key) {
+        redisTemplate.opsForZSet().remove(indexKey(generation), convertKey(key));
+    }
+
+    private long generation() {
+        long now = System.nanoTime();
+        long checkedAt = generationCheckedAt;
+        if (checkedAt != Long.MIN_VALUE && now - checkedAt < generationRefreshNanos) {
+            return generation;
+        }
+        String value = redisTemplate.opsForValue().get(generationKey);
+        generation = value != null ? Long.parseLong(value) : 0;
+        generationCheckedAt = now;
+        return generation;
+    }
+
+    private String indexKey(long generation) {
+        return INDEX_PREFIX + getName() + ":" + generation;
+    }
+
+    private String redisKey(Object key) {
+        return redisKey(generation(), key);
+    }
+
+    private String redisKey(long generation, Object key) {
+        return generation + ":" + convertKey(key);
+    }
+
+    private Long memoryUsage(String redisKey) {
+        return redisTemplate.execute((RedisCallback<Long>) connection -> memoryUsage(connection, redisKey));
+    }
+
+    private static Long memoryUsage(RedisConnection connection, String redisKey) {
+        Object result = connection.execute("MEMORY", "USAGE".getBytes(StandardCharsets.UTF_8),
+                redisKey.getBytes(StandardCharsets.UTF_8));
+        return result instanceof Number number ? number.longValue() : null;
+    }
+
+    private String convertKey(Object key) {
+        return CacheKeys.convert(key, configuration.getConversionService());
+    }
+}
@@ -0,0 +1,64 @@
+package com.alkmanistik.alkify_music_api.cache;
+
+import com.alkmanistik.alkify_music_api.dto.CacheStatsDTO;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Оборачивает кеши {@link RedisCacheManager} в {@link BoundedRedisCache} с настройками из {@link CachePolicyProperties}.
+ */
+public class BoundedRedisCacheManager implements CacheManager {
+
+    private final RedisCacheManager redisCacheManager;
+    private final CachePolicyProperties properties;
+    private final StringRedisTemplate redisTemplate;
+    private final CacheDependencyIndex dependencyIndex;
+    private final Map<String, BoundedRedisCache> caches = new ConcurrentHashMap<>();
+
+    public BoundedRedisCacheManager(RedisCacheManager redisCacheManager, CachePolicyProperties properties,
+                                    StringRedisTemplate redisTemplate, CacheDependencyIndex dependencyIndex) {
+        this.redisCacheManager = redisCacheManager;
+        this.properties = properties;
+        this.redisTemplate = redisTemplate;
+        this.dependencyIndex = dependencyIndex;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    /**
+     * @return статистика по всем настроенным и уже использованным кешам
+     */
+    public List<CacheStatsDTO> stats() {
+        properties.getCaches().keySet().forEach(this::getCache);
+        return caches.values().stream()
+                .map(BoundedRedisCache::stats)
+                .sorted(Comparator.comparing(CacheStatsDTO::getName))
+                .toList();
+    }
+
+    private BoundedRedisCache createCache(String name) {
+        if (!(redisCacheManager.getCache(name) instanceof RedisCache redis)) {
+            throw new IllegalArgumentException("Unknown cache: " + name);
+        }
+        return new BoundedRedisCache(redis, properties.policyFor(name), redisTemplate, dependencyIndex,
+                properties.getGenerationRefresh());
+    }
+}
@@ -0,0 +1,89 @@
+package com.alkmanistik.alkify_music_api.cache;
+
+import com.alkmanistik.alkify_music_api.dto.AlbumDTO;
+import com.alkmanistik.alkify_music_api.dto.AlbumMinimalDTO;
+import com.alkmanistik.alkify_music_api.dto.ArtistDTO;
+import com.alkmanistik.alkify_music_api.dto.ArtistMinimalDTO;
+import com.alkmanistik.alkify_music_api.dto.TrackDTO;
+import com.alkmanistik.alkify_music_api.dto.TrackMinimalDTO;
+import com.alkmanistik.alkify_music_api.dto.UserDTO;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Сущность, данные которой вошли в закешированное значение. По ним строится обратный индекс:
+ * запись сущности сбрасывает только те записи кешей, в которые она попала.
+ */
+public record CacheDependency(String type, long id) {
+
+    public static CacheDependency track(Long id) {
+        return new CacheDependency("track", id);
+    }
+
+    public static CacheDependency album(Long id) {
+        return new CacheDependency("album", id);
+    }
+
+    public static CacheDependency artist(Long id) {
+        return new CacheDependency("artist", id);
+    }
+
+    public static CacheDependency user(Long id) {
+        return new CacheDependency("user", id);
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + id;
+    }
+
+    /**
+     * Собирает сущности из DTO и списков DTO; для остальных значений (флаги, счетчики) зависимостей нет -
+     * такие кеши сбрасываются по ключу.
+     */
+    static Set<CacheDependency> of(Object value) {
+        Set<CacheDependency> dependencies = new LinkedHashSet<>();
+        collect(value, dependencies);
+        return dependencies;
+    }
+
+    private static void collect(Object value, Set<CacheDependency> into) {
+        switch (value) {
+            case null -> {
+            }
+            case Collection<?> collection -> collection.forEach(item -> collect(item, into));
+            case TrackDTO track -> {
+                add(into, "track", track.getId());
+                collect(track.getAlbum(), into);
+                collect(track.getArtists(), into);
+            }
+            case TrackMinimalDTO track -> add(into, "track", track.getId());
+            case AlbumDTO album -> {
+                add(into, "album", album.getId());
+                collect(album.getArtists(), into);
+                collect(album.getTracks(), into);
+            }
+            case AlbumMinimalDTO album -> add(into, "album", album.getId());
+            case ArtistDTO artist -> {
+                add(into, "artist", artist.getId());
+                collect(artist.getAlbums(), into);
+                collect(artist.getTracks(), into);
+            }
+            case ArtistMinimalDTO artist -> add(into, "artist", artist.getId());
+            case UserDTO user -> {
+                add(into, "user", user.getId());
+                collect(user.getManagedArtists(), into);
+            }
+            default -> {
+            }
+        }
+    }
+
+    private static void add(Set<CacheDependency> into, String type, Long id) {
+        if (id != null) {
+            into.add(new CacheDependency(type, id));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.alkmanistik.alkify_music_api.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Обратный индекс зависимостей в Redis: множество {@code cache-deps:<тип>:<id>} хранит записи
+ * {@code <кеш>|<ключ>}, в значения которых вошла сущность.
+ * <p>
+ * Записи в индекс добавляются при записи в кеш, а забираются и удаляются одним SPOP при изменении сущности,
+ * поэтому параллельная запись в кеш не теряется между чтением и удалением множества. Протухшие по TTL
+ * записи остаются в индексе до изменения сущности или истечения самого множества - их сброс ничего не стоит.
+ */
+@Slf4j
+public class CacheDependencyIndex {
+
+    static final String PREFIX = "cache-deps:";
+    static final String SEPARATOR = "|";
+
+    private final StringRedisTemplate redisTemplate;
+    // Множество живет не меньше самой долгоживущей записи кеша; null - без срока
+    private final Duration ttl;
+
+    public CacheDependencyIndex(StringRedisTemplate redisTemplate, Duration ttl) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = ttl;
+    }
+
+    void record(String cacheName, String key, Set<CacheDependency> dependencies) {
+        if (dependencies.isEmpty()) {
+            return;
+        }
+        String member = cacheName + SEPARATOR + key;
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection strings = (StringRedisConnection) connection;
+            for (CacheDependency dependency : dependencies) {
+                String indexKey = PREFIX + dependency;
+                strings.sAdd(indexKey, member);
+                if (ttl != null) {
+                    strings.expire(indexKey, ttl.toSeconds());
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Забирает из индекса все записи кешей, зависящие от сущностей.
+     * @return пары имя кеша и ключ
+     */
+    public List<Entry> take(Collection<CacheDependency> dependencies) {
+        if (dependencies.isEmpty()) {
+            return List.of();
+        }
+        List<Object> popped = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection strings = (StringRedisConnection) connection;
+            for (CacheDependency dependency : dependencies) {
+                // SPOP с количеством не меньше размера забирает все множество и удаляет ключ
+                strings.sPop(PREFIX + dependency, Integer.MAX_VALUE);
+            }
+            return null;
+        });
+        Set<String> members = new LinkedHashSet<>();
+        for (Object result : popped) {
+            if (result instanceof Collection<?> values) {
+                values.forEach(value -> members.add(value.toString()));
+            }
+        }
+        List<Entry> entries = new ArrayList<>(members.size());
+        for (String member : members) {
+            int separator = member.indexOf(SEPARATOR);
+            if (separator > 0) {
+                entries.add(new Entry(member.substring(0, separator), member.substring(separator + 1)));
+            }
+        }
+        return entries;
+    }
+
+    public record Entry(String cacheName, String key) {
+    }
+}
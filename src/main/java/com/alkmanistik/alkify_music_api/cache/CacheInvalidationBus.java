@@ -0,0 +1,76 @@
+package com.alkmanistik.alkify_music_api.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Рассылка инвалидаций локальных кешей через Redis pub/sub.
+ * Сообщение: {@code <узел>|E|<кеш>|<ключ>} для одного ключа или {@code <узел>|C|<кеш>} для всего кеша.
+ * Свои сообщения узел пропускает - локально он уже все сбросил.
+ */
+@Slf4j
+public class CacheInvalidationBus implements MessageListener {
+
+    public static final String CHANNEL = "cache.invalidation";
+
+    private static final String SEPARATOR = "|";
+    private static final String EVICT = "E";
+    private static final String CLEAR = "C";
+
+    private final String origin = UUID.randomUUID().toString();
+    private final StringRedisTemplate redisTemplate;
+    private TwoLevelCacheManager cacheManager;
+
+    public CacheInvalidationBus(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    void bind(TwoLevelCacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    void publishEvict(String cacheName, String key) {
+        publish(String.join(SEPARATOR, origin, EVICT, cacheName, key));
+    }
+
+    void publishClear(String cacheName) {
+        publish(String.join(SEPARATOR, origin, CLEAR, cacheName));
+    }
+
+    private void publish(String message) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, message);
+        } catch (RuntimeException e) {
+            // Узлы, не получившие сообщение, догонят по TTL локального кеша
+            log.warn("Failed to publish cache invalidation: {}", e.toString());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        // Ключ может сам содержать разделитель, поэтому делим не больше чем на 4 части
+        String[] parts = body.split("\\|", 4);
+        if (parts.length < 3 || origin.equals(parts[0]) || cacheManager == null) {
+            return;
+        }
+        TwoLevelCache cache = cacheManager.getLocalCache(parts[2]);
+        if (cache == null) {
+            return;
+        }
+        switch (parts[1]) {
+            case EVICT -> {
+                if (parts.length == 4) {
+                    cache.evictLocal(parts[3]);
+                }
+            }
+            case CLEAR -> cache.clearLocal();
+            default -> log.debug("Unknown cache invalidation message: {}", body);
+        }
+    }
+}
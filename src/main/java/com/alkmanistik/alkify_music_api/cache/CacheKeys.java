@@ -0,0 +1,23 @@
+package com.alkmanistik.alkify_music_api.cache;
+
+import org.springframework.core.convert.ConversionService;
+
+/**
+ * Строковая форма ключа кеша - та же, что строит {@code RedisCache}. По ней запись можно найти и удалить
+ * из индексов, с других узлов и из L1: составной ключ {@code {#a, #b}} превращается в {@code "a,b"}.
+ */
+final class CacheKeys {
+
+    private CacheKeys() {
+    }
+
+    static String convert(Object key, ConversionService conversionService) {
+        if (key instanceof String string) {
+            return string;
+        }
+        if (conversionService.canConvert(key.getClass(), String.class)) {
+            return conversionService.convert(key, String.class);
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.alkmanistik.alkify_music_api.cache;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Настройки кешей из {@code project.cache}: общие значения в {@code defaults}
+ * и переопределения для отдельных кешей в {@code caches}.
+ */
+@Data
+@ConfigurationProperties("project.cache")
+public class CachePolicyProperties {
+
+    private Local local = new Local();
+    private Policy defaults = new Policy();
+    private Map<String, Policy> caches = new LinkedHashMap<>();
+    // Как часто узел перечитывает поколение кеша из Redis, если не пришло сообщение о сбросе
+    private Duration generationRefresh = Duration.ofSeconds(1);
+
+    /**
+     * @return настройки кеша с подставленными значениями по умолчанию
+     */
+    public Policy policyFor(String cacheName) {
+        Policy policy = caches.get(cacheName);
+        if (policy == null) {
+            return defaults;
+        }
+        Policy merged = new Policy();
+        merged.setTtl(policy.getTtl() != null ? policy.getTtl() : defaults.getTtl());
+        merged.setMaxEntries(policy.getMaxEntries() != null ? policy.getMaxEntries() : defaults.getMaxEntries());
+        merged.setMaxValueSize(policy.getMaxValueSize() != null ? policy.getMaxValueSize() : defaults.getMaxValueSize());
+        merged.setSignedUrls(policy.getSignedUrls() != null ? policy.getSignedUrls() : defaults.getSignedUrls());
+        return merged;
+    }
+
+    @Data
+    public static class Local {
+        private boolean enabled = true;
+        private long maxSize = 10000;
+        private Duration ttl = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Policy {
+        // null - без срока (но не дольше срока подписи, если в значениях есть ссылки на медиа)
+        private Duration ttl;
+        // null - без ограничения
+        private Long maxEntries;
+        // Значения больше лимита не кешируются, а вычисляются каждый раз
+        private DataSize maxValueSize;
+        // Значения содержат подписанные ссылки, и кеш не должен пережить подпись; null - да
+        private Boolean signedUrls;
+    }
+}
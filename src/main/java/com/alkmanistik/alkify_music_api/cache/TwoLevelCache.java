@@ -0,0 +1,230 @@
+package com.alkmanistik.alkify_music_api.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Кеш из двух уровней: L1 в памяти процесса (Caffeine) перед общим L2 в Redis.
+ * Попадание в L1 обходится без сети и десериализации. Запись и сброс идут в оба уровня, а остальным узлам
+ * рассылается инвалидация их L1. Объекты из L1 общие для всех вызывающих - менять их нельзя, как и раньше
+ * нельзя было рассчитывать на то, что изменения попадут в кеш.
+ */
+public class TwoLevelCache implements org.springframework.cache.Cache {
+
+    // Caffeine не хранит null, а закешированный null надо отличать от промаха
+    private static final Object NULL = new Object();
+
+    private final String name;
+    private final org.springframework.cache.Cache redis;
+    private final Cache<String, Object> local;
+    private final CacheInvalidationBus bus;
+    // Идущие загрузки мимо L1 по ключам; запись или сброс ключа снимает загрузку, и ее результат в L1 не попадет
+    private final Map<String, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+    // Счетчик полных сбросов L1: invalidateAll не видит запись, которая кладется в этот момент
+    private final AtomicLong clears = new AtomicLong();
+
+    TwoLevelCache(String name, org.springframework.cache.Cache redis, Cache<String, Object> local,
+                  CacheInvalidationBus bus) {
+        this.name = name;
+        this.redis = redis;
+        this.local = local;
+        this.bus = bus;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redis.getNativeCache();
+    }
+
+    public long localSize() {
+        return local.estimatedSize();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = localKey(key);
+        Object cached = local.getIfPresent(localKey);
+        if (cached == null) {
+            cached = load(localKey, () -> {
+                ValueWrapper wrapper = redis.get(key);
+                return wrapper != null ? toLocal(wrapper.get()) : null;
+            });
+        }
+        return cached != null ? new SimpleValueWrapper(fromLocal(cached)) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = localKey(key);
+        Object cached = local.getIfPresent(localKey);
+        if (cached == null) {
+            // Один запрос к Redis и БД на ключ на узле; загрузки других ключей его не ждут
+            cached = load(localKey, () -> toLocal(redis.get(key, valueLoader)));
+        }
+        return (T) fromLocal(cached);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        redis.put(key, value);
+        String localKey = localKey(key);
+        replaceLocal(localKey, toLocal(value));
+        bus.publishEvict(name, localKey);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = redis.putIfAbsent(key, value);
+        String localKey = localKey(key);
+        replaceLocal(localKey, toLocal(existing != null ? existing.get() : value));
+        if (existing == null) {
+            bus.publishEvict(name, localKey);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        redis.evict(key);
+        String localKey = localKey(key);
+        replaceLocal(localKey, null);
+        bus.publishEvict(name, localKey);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean evicted = redis.evictIfPresent(key);
+        String localKey = localKey(key);
+        replaceLocal(localKey, null);
+        bus.publishEvict(name, localKey);
+        return evicted;
+    }
+
+    @Override
+    public void clear() {
+        redis.clear();
+        clearLocalEntries();
+        bus.publishClear(name);
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean invalidated = redis.invalidate();
+        clearLocalEntries();
+        bus.publishClear(name);
+        return invalidated;
+    }
+
+    void evictLocal(String localKey) {
+        replaceLocal(localKey, null);
+    }
+
+    void clearLocal() {
+        // Сначала новое поколение, иначе загрузка между сбросом и обновлением прочитает старое
+        if (redis instanceof BoundedRedisCache bounded) {
+            bounded.refreshGeneration();
+        }
+        clearLocalEntries();
+    }
+
+    private void clearLocalEntries() {
+        clears.incrementAndGet();
+        loads.clear();
+        local.invalidateAll();
+    }
+
+    /**
+     * Single-flight загрузка мимо L1. Сама загрузка идет вне блокировок Caffeine, а в L1 результат кладется,
+     * только если за это время ключ не записывали и не сбрасывали: иначе прочитанное до сброса старое значение
+     * вернулось бы в L1 после него.
+     */
+    private Object load(String localKey, Supplier<Object> loader) {
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loads.putIfAbsent(localKey, load);
+        if (existing != null) {
+            return await(existing);
+        }
+        long clearsBefore = clears.get();
+        Object value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            loads.remove(localKey, load);
+            load.completeExceptionally(e);
+            throw e;
+        }
+        if (value == null) {
+            loads.remove(localKey, load);
+        } else {
+            local.asMap().compute(localKey, (ignored, current) -> loads.remove(localKey, load) ? value : current);
+            if (clears.get() != clearsBefore) {
+                local.asMap().remove(localKey, value);
+            }
+        }
+        load.complete(value);
+        return value;
+    }
+
+    /**
+     * Меняет запись L1 под блокировкой ключа в Caffeine и снимает идущую загрузку этого ключа.
+     * @param value новое значение или null, чтобы удалить запись
+     */
+    private void replaceLocal(String localKey, Object value) {
+        local.asMap().compute(localKey, (ignored, current) -> {
+            loads.remove(localKey);
+            return value;
+        });
+    }
+
+    private static Object await(CompletableFuture<Object> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Ключ L1 - строка в той же форме, что и в Redis: ее можно передать другим узлам и найти по индексу зависимостей.
+     */
+    static String localKey(Object key) {
+        return CacheKeys.convert(key, DefaultConversionService.getSharedInstance());
+    }
+
+    private static Object toLocal(Object value) {
+        return value != null ? value : NULL;
+    }
+
+    private static Object fromLocal(Object value) {
+        return value == NULL ? null : value;
+    }
+}
@@ -0,0 +1,77 @@
+package com.alkmanistik.alkify_music_api.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Оборачивает кеши Redis в {@link TwoLevelCache} с локальным L1 для каждого имени.
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private final CacheManager redisCacheManager;
+    private final CacheInvalidationBus bus;
+    private final MeterRegistry meterRegistry;
+    private final CachePolicyProperties properties;
+    private final Duration localTtl;
+    private final Map<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(CacheManager redisCacheManager, CacheInvalidationBus bus, MeterRegistry meterRegistry,
+                                CachePolicyProperties properties, Duration localTtl) {
+        this.redisCacheManager = redisCacheManager;
+        this.bus = bus;
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+        this.localTtl = localTtl;
+        bus.bind(this);
+    }
+
+    public CacheManager getRedisCacheManager() {
+        return redisCacheManager;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    /**
+     * @return кеш, если он уже создан на этом узле; инвалидации для остальных обрабатывать не нужно
+     */
+    TwoLevelCache getLocalCache(String name) {
+        return caches.get(name);
+    }
+
+    private TwoLevelCache createCache(String name) {
+        Cache redis = redisCacheManager.getCache(name);
+        if (redis == null) {
+            throw new IllegalArgumentException("Unknown cache: " + name);
+        }
+        // L1 не больше лимита записей самого кеша
+        Long maxEntries = properties.policyFor(name).getMaxEntries();
+        long maxSize = maxEntries != null
+                ? Math.min(maxEntries, properties.getLocal().getMaxSize())
+                : properties.getLocal().getMaxSize();
+        // TTL L1 - страховка на случай потерянного сообщения pub/sub, поэтому он короткий
+        com.github.benmanes.caffeine.cache.Cache<String, Object> local = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(localTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, name, "level", "local");
+        return new TwoLevelCache(name, redis, local, bus);
+    }
+}
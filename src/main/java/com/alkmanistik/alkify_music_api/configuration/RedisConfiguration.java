@@ -1,21 +1,65 @@
 package com.alkmanistik.alkify_music_api.configuration;
 
+import com.alkmanistik.alkify_music_api.cache.BoundedRedisCacheManager;
+import com.alkmanistik.alkify_music_api.cache.CacheDependencyIndex;
+import com.alkmanistik.alkify_music_api.cache.CacheInvalidationBus;
+import com.alkmanistik.alkify_music_api.cache.CachePolicyProperties;
+import com.alkmanistik.alkify_music_api.cache.TwoLevelCacheManager;
+import com.alkmanistik.alkify_music_api.service.MediaUrlService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
+
 @Configuration
 @EnableCaching
+@EnableConfigurationProperties(CachePolicyProperties.class)
 public class RedisConfiguration {
 
     @Bean
-    public RedisCacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+    public CacheInvalidationBus cacheInvalidationBus(StringRedisTemplate stringRedisTemplate) {
+        return new CacheInvalidationBus(stringRedisTemplate);
+    }
+
+    @Bean
+    public CacheDependencyIndex cacheDependencyIndex(StringRedisTemplate stringRedisTemplate,
+                                                     CachePolicyProperties properties, MediaUrlService mediaUrlService) {
+        // Индекс должен пережить самую долгоживущую запись, которая в него попала
+        Duration ttl = effectiveTtl(properties.getDefaults(), mediaUrlService);
+        for (String name : properties.getCaches().keySet()) {
+            Duration cacheTtl = effectiveTtl(properties.policyFor(name), mediaUrlService);
+            ttl = ttl == null || cacheTtl == null ? null : (cacheTtl.compareTo(ttl) > 0 ? cacheTtl : ttl);
+        }
+        return new CacheDependencyIndex(stringRedisTemplate, ttl);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                            CacheInvalidationBus cacheInvalidationBus) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(cacheInvalidationBus, new ChannelTopic(CacheInvalidationBus.CHANNEL));
+        return container;
+    }
+
+    @Bean
+    public CacheManager cacheManager(RedisConnectionFactory connectionFactory, MediaUrlService mediaUrlService,
+                                     CacheInvalidationBus cacheInvalidationBus, MeterRegistry meterRegistry,
+                                     CachePolicyProperties properties, StringRedisTemplate stringRedisTemplate,
+                                     CacheDependencyIndex cacheDependencyIndex) {
         RedisCacheConfiguration config = RedisCacheConfiguration
                 .defaultCacheConfig()
                 .serializeKeysWith(
@@ -29,10 +73,42 @@ public class RedisConfiguration {
                                 .fromSerializer(new GenericJackson2JsonRedisSerializer())
                 );
 
-        return RedisCacheManager.builder(connectionFactory)
-                .cacheDefaults(config)
-                .build();
+        RedisCacheManager.RedisCacheManagerBuilder builder = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(withPolicy(config, properties.getDefaults(), mediaUrlService));
+        properties.getCaches().forEach((name, policy) ->
+                builder.withCacheConfiguration(name, withPolicy(config, properties.policyFor(name), mediaUrlService)));
+        RedisCacheManager redisCacheManager = builder.build();
+        redisCacheManager.afterPropertiesSet();
+        CacheManager bounded = new BoundedRedisCacheManager(redisCacheManager, properties, stringRedisTemplate,
+                cacheDependencyIndex);
+
+        CachePolicyProperties.Local local = properties.getLocal();
+        if (!local.isEnabled()) {
+            return bounded;
+        }
+        // L1 не должен пережить запись в Redis, иначе из него уйдет ссылка с истекшей подписью
+        Duration ttl = mediaUrlService.isEnabled() && mediaUrlService.cacheTtl().compareTo(local.getTtl()) < 0
+                ? mediaUrlService.cacheTtl()
+                : local.getTtl();
+        return new TwoLevelCacheManager(bounded, cacheInvalidationBus, meterRegistry, properties, ttl);
+    }
+
+    /**
+     * TTL кеша из настроек; DTO с подписанными ссылками на медиа держим не дольше срока жизни ссылки.
+     */
+    private RedisCacheConfiguration withPolicy(RedisCacheConfiguration config, CachePolicyProperties.Policy policy,
+                                               MediaUrlService mediaUrlService) {
+        Duration ttl = effectiveTtl(policy, mediaUrlService);
+        return ttl != null ? config.entryTtl(ttl) : config;
+    }
 
+    private Duration effectiveTtl(CachePolicyProperties.Policy policy, MediaUrlService mediaUrlService) {
+        Duration ttl = policy.getTtl();
+        if (!Boolean.FALSE.equals(policy.getSignedUrls()) && mediaUrlService.isEnabled()
+                && (ttl == null || ttl.compareTo(mediaUrlService.cacheTtl()) > 0)) {
+            ttl = mediaUrlService.cacheTtl();
+        }
+        return ttl;
     }
 
 }
@@ -42,6 +42,7 @@ public class SecurityConfiguration {
                     corsConfiguration.setAllowedOriginPatterns(List.of("*"));
                     corsConfiguration.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS"));
                     corsConfiguration.setAllowedHeaders(List.of("*"));
+                    corsConfiguration.setExposedHeaders(List.of("Location", "Upload-Offset", "Upload-Length"));
                     corsConfiguration.setAllowCredentials(true);
                     return corsConfiguration;
                 }))
@@ -1,10 +1,15 @@
 package com.alkmanistik.alkify_music_api.controller;
 
 import com.alkmanistik.alkify_music_api.dto.AlbumDTO;
+import com.alkmanistik.alkify_music_api.dto.PlaybackManifestDTO;
 import com.alkmanistik.alkify_music_api.exception.ForbiddenException;
 import com.alkmanistik.alkify_music_api.request.AlbumRequest;
+import com.alkmanistik.alkify_music_api.service.AlbumArchiveService;
 import com.alkmanistik.alkify_music_api.service.AlbumService;
+import com.alkmanistik.alkify_music_api.service.PlaybackManifestService;
 import com.alkmanistik.alkify_music_api.service.SecurityService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -22,6 +27,8 @@ import java.util.List;
 public class AlbumController {
 
     private final AlbumService albumService;
+    private final AlbumArchiveService albumArchiveService;
+    private final PlaybackManifestService playbackManifestService;
     private final SecurityService securityService;
 
     @PostMapping(value = "/{artist_id}",consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -55,6 +62,22 @@ public class AlbumController {
         return albumService.getAlbumById(id);
     }
 
+    // Доступ по подписанной ссылке downloadUrl из AlbumDTO проверяет SignedMediaUrlFilter
+    @GetMapping("/{id}/download")
+    @PreAuthorize("permitAll()")
+    public void downloadAlbum(@PathVariable Long id,
+                              HttpServletRequest request,
+                              HttpServletResponse response) throws IOException {
+        albumArchiveService.download(id, request, response);
+    }
+
+    @GetMapping("/{id}/manifest")
+    @PreAuthorize("permitAll()")
+    public PlaybackManifestDTO getPlaybackManifest(@PathVariable Long id,
+                                                   HttpServletResponse response) throws IOException {
+        return playbackManifestService.forAlbum(id, response);
+    }
+
     @PutMapping(value = "/{id}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @PreAuthorize("hasRole('USER')")
     public AlbumDTO updateAlbum(
@@ -0,0 +1,25 @@
+package com.alkmanistik.alkify_music_api.controller;
+
+import com.alkmanistik.alkify_music_api.dto.CacheStatsDTO;
+import com.alkmanistik.alkify_music_api.service.CacheStatsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/caches")
+@RequiredArgsConstructor
+public class CacheController {
+
+    private final CacheStatsService cacheStatsService;
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/stats")
+    public List<CacheStatsDTO> getStats() {
+        return cacheStatsService.stats();
+    }
+}
@@ -0,0 +1,70 @@
+package com.alkmanistik.alkify_music_api.controller;
+
+import com.alkmanistik.alkify_music_api.exception.ForbiddenException;
+import com.alkmanistik.alkify_music_api.storage.ClusterMediaStorage;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Обмен файлами между узлами кластера. Доступ только по общему секрету узлов.
+ */
+@RestController
+@RequestMapping("/internal/v1/cluster/media")
+@RequiredArgsConstructor
+@ConditionalOnProperty(value = "project.storage.backend", havingValue = "cluster")
+public class ClusterMediaController {
+
+    private final ClusterMediaStorage clusterMediaStorage;
+
+    @RequestMapping(value = "/{directory}/{fileName}", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public ResponseEntity<FileSystemResource> getReplica(
+            @PathVariable String directory,
+            @PathVariable String fileName,
+            @RequestHeader(value = ClusterMediaStorage.SECRET_HEADER, required = false) String secret
+    ) throws IOException, ForbiddenException {
+        checkSecret(secret);
+        Path file = clusterMediaStorage.localCopy(clusterMediaStorage.directoryOf(directory), fileName);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(Files.size(file))
+                .body(new FileSystemResource(file));
+    }
+
+    @PutMapping("/{directory}/{fileName}")
+    public ResponseEntity<Void> putReplica(
+            @PathVariable String directory,
+            @PathVariable String fileName,
+            @RequestHeader(value = ClusterMediaStorage.SECRET_HEADER, required = false) String secret,
+            HttpServletRequest request
+    ) throws IOException, ForbiddenException {
+        checkSecret(secret);
+        clusterMediaStorage.acceptReplica(clusterMediaStorage.directoryOf(directory), fileName, request.getInputStream());
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/{directory}/{fileName}")
+    public ResponseEntity<Void> deleteReplica(
+            @PathVariable String directory,
+            @PathVariable String fileName,
+            @RequestHeader(value = ClusterMediaStorage.SECRET_HEADER, required = false) String secret
+    ) throws IOException, ForbiddenException {
+        checkSecret(secret);
+        clusterMediaStorage.deleteReplica(clusterMediaStorage.directoryOf(directory), fileName);
+        return ResponseEntity.noContent().build();
+    }
+
+    private void checkSecret(String secret) throws ForbiddenException {
+        if (!clusterMediaStorage.isTrusted(secret)) {
+            throw new ForbiddenException("Invalid cluster secret");
+        }
+    }
+}
@@ -1,24 +1,32 @@
 package com.alkmanistik.alkify_music_api.controller;
 
+import com.alkmanistik.alkify_music_api.dto.MediaValidatorDTO;
+import com.alkmanistik.alkify_music_api.exception.ServiceUnavailableException;
+import com.alkmanistik.alkify_music_api.service.AudioIngestService;
 import com.alkmanistik.alkify_music_api.service.FileService;
+import com.alkmanistik.alkify_music_api.service.ImageCacheService;
+import com.alkmanistik.alkify_music_api.service.ImageVariantService;
+import com.alkmanistik.alkify_music_api.service.MediaStreamingService;
+import com.alkmanistik.alkify_music_api.service.MediaValidatorService;
+import com.alkmanistik.alkify_music_api.service.SeekIndexService;
+import com.alkmanistik.alkify_music_api.service.WaveformService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.channels.Channels;
-import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 
 @RestController
 @RequestMapping("/api/v1/files")
@@ -26,6 +34,13 @@ import java.nio.file.StandardOpenOption;
 public class FileController {
 
     private final FileService fileService;
+    private final MediaStreamingService mediaStreamingService;
+    private final MediaValidatorService mediaValidatorService;
+    private final ImageVariantService imageVariantService;
+    private final ImageCacheService imageCacheService;
+    private final AudioIngestService audioIngestService;
+    private final SeekIndexService seekIndexService;
+    private final WaveformService waveformService;
 
     @Value("${project.images}")
     private String imagePath;
@@ -35,32 +50,87 @@ public class FileController {
 
     @PreAuthorize("permitAll()")
     @GetMapping("/audios/{audioName}")
-    public void getAudio(@PathVariable String audioName, HttpServletResponse response) throws IOException {
-        Path filePath = Path.of(audioPath, audioName);
-
-        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ);
-             OutputStream os = response.getOutputStream()) {
-
-            response.setContentType(MediaTypeFactory
-                    .getMediaType(audioName)
-                    .orElse(MediaType.APPLICATION_OCTET_STREAM)
-                    .toString());
+    public void getAudio(@PathVariable String audioName,
+                         @RequestParam(required = false) Integer t,
+                         @RequestParam(required = false) Integer preview,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        Path filePath = fileService.getExistingFile(audioPath, audioName);
+        MediaValidatorDTO validators = mediaValidatorService.getValidators(audioPath, audioName);
+        boolean clip = t != null || preview != null;
+        String etag = clip
+                ? validators.getEtag().replaceFirst("\"$", "-t" + (t != null ? t : 0)
+                        + (preview != null ? "-p" + preview : "") + "\"")
+                : validators.getEtag();
+        if (isNotModified(etag, validators.getLastModified(), request, response)) {
+            return;
+        }
+        MediaType contentType = MediaTypeFactory
+                .getMediaType(audioName)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+
+        if (clip) {
+            SeekIndexService.Clip range = seekIndexService.clip(audioName, t != null ? t : 0, preview);
+            mediaStreamingService.streamClip(filePath, contentType, range, request, response);
+            return;
+        }
+        mediaStreamingService.stream(filePath, contentType, validators, request, response);
+    }
 
-            channel.transferTo(0, channel.size(), Channels.newChannel(os));
-            os.flush();
+    @PreAuthorize("permitAll()")
+    @GetMapping("/waveforms/{audioName}")
+    public void getWaveform(@PathVariable String audioName,
+                            HttpServletRequest request,
+                            HttpServletResponse response) throws IOException, ServiceUnavailableException {
+        MediaValidatorDTO validators = mediaValidatorService.getValidators(audioPath, audioName);
+        String etag = validators.getEtag().replaceFirst("\"$", "-peaks\"");
+        if (isNotModified(etag, validators.getLastModified(), request, response)) {
+            return;
         }
+        Path peaks = waveformService.getPeaks(audioName);
+        mediaStreamingService.streamBytes(ByteBuffer.wrap(Files.readAllBytes(peaks)),
+                MediaType.APPLICATION_OCTET_STREAM_VALUE, request, response);
     }
 
     @PreAuthorize("permitAll()")
     @GetMapping("/images/{imageName}")
-    public void getImage(@PathVariable String imageName, HttpServletResponse response) throws IOException {
-        try (InputStream is = fileService.getResourceFile(imagePath, imageName)) {
-            response.setContentType(MediaTypeFactory
-                    .getMediaType(imageName)
+    public void getImage(@PathVariable String imageName,
+                         @RequestParam(required = false) Integer w,
+                         @RequestParam(defaultValue = "false") boolean lqip,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        String variant = imageVariantService.variantName(w, lqip);
+        MediaValidatorDTO validators = mediaValidatorService.getValidators(imagePath, imageName);
+        String etag = variant == null
+                ? validators.getEtag()
+                : validators.getEtag().replaceFirst("\"$", "-" + variant + "\"");
+        if (isNotModified(etag, validators.getLastModified(), request, response)) {
+            return;
+        }
+
+        String cacheKey = imageName + "/" + (variant == null ? "original" : variant);
+        ImageCacheService.CachedImage cached = imageCacheService.get(cacheKey);
+        if (cached == null) {
+            Path filePath = variant == null
+                    ? fileService.getExistingFile(imagePath, imageName)
+                    : imageVariantService.getVariant(imageName, variant);
+            String contentType = MediaTypeFactory
+                    .getMediaType(filePath.getFileName().toString())
                     .orElse(MediaType.IMAGE_PNG)  // Дефолтный тип для изображений
-                    .toString());
-            StreamUtils.copy(is, response.getOutputStream());
+                    .toString();
+            cached = imageCacheService.load(cacheKey, filePath, contentType);
+            if (cached == null) {
+                // Слишком большой для кеша - отдаем с диска
+                // If-Range сверяется с тем ETag, который клиент получил, - у варианта он свой
+                MediaValidatorDTO fileValidators = new MediaValidatorDTO(etag, validators.getLastModified(),
+                        Files.size(filePath));
+                mediaStreamingService.stream(filePath, MediaType.parseMediaType(contentType), fileValidators,
+                        request, response);
+                return;
+            }
         }
+
+        mediaStreamingService.streamBytes(cached.content(), cached.contentType(), request, response);
     }
 
     @PreAuthorize("hasRole('ADMIN')")
@@ -81,7 +151,7 @@ public class FileController {
     @PostMapping("/uploadAudio")
     public ResponseEntity<String> uploadAudio(@RequestPart MultipartFile file) throws IOException {
         validateAudioFile(file);
-        String fileName = fileService.uploadFile(audioPath, file);
+        String fileName = audioIngestService.ingest(file).fileName();
         return ResponseEntity.ok("Audio uploaded: " + fileName);
     }
 
@@ -93,6 +163,13 @@ public class FileController {
         return ResponseEntity.ok("Image uploaded: " + fileName);
     }
 
+    private boolean isNotModified(String etag, long lastModified,
+                                  HttpServletRequest request,
+                                  HttpServletResponse response) {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, MediaValidatorService.IMMUTABLE.getHeaderValue());
+        return new ServletWebRequest(request, response).checkNotModified(etag, lastModified);
+    }
+
     private void validateImageFile(MultipartFile file) {
         if (!file.getContentType().startsWith("image/")) {
             throw new IllegalArgumentException("Only images are allowed");
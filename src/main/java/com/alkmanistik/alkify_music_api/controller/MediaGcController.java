@@ -0,0 +1,31 @@
+package com.alkmanistik.alkify_music_api.controller;
+
+import com.alkmanistik.alkify_music_api.dto.MediaGcReportDTO;
+import com.alkmanistik.alkify_music_api.service.MediaGarbageCollector;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/files/gc")
+@RequiredArgsConstructor
+public class MediaGcController {
+
+    private final MediaGarbageCollector mediaGarbageCollector;
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/report")
+    public Collection<MediaGcReportDTO> getLastReports() {
+        return mediaGarbageCollector.lastReports();
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/dry-run")
+    public List<MediaGcReportDTO> dryRun() throws IOException {
+        return mediaGarbageCollector.dryRunReport();
+    }
+}
@@ -0,0 +1,77 @@
+package com.alkmanistik.alkify_music_api.controller;
+
+import com.alkmanistik.alkify_music_api.exception.ConflictException;
+import com.alkmanistik.alkify_music_api.model.UploadSession;
+import com.alkmanistik.alkify_music_api.service.ResumableUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/v1/files/uploads")
+@RequiredArgsConstructor
+public class ResumableUploadController {
+
+    public static final String UPLOAD_OFFSET = "Upload-Offset";
+    public static final String UPLOAD_LENGTH = "Upload-Length";
+
+    private final ResumableUploadService resumableUploadService;
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping
+    public ResponseEntity<Void> createUpload(@RequestParam String fileName,
+                                             @RequestHeader(UPLOAD_LENGTH) long length) throws IOException {
+        UploadSession session = resumableUploadService.createSession(fileName, length);
+        var location = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQuery(null)
+                .path("/{id}")
+                .buildAndExpand(session.getId())
+                .toUri();
+        return ResponseEntity.created(location)
+                .header(UPLOAD_OFFSET, String.valueOf(session.getUploadOffset()))
+                .header(UPLOAD_LENGTH, String.valueOf(session.getLength()))
+                .build();
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @RequestMapping(value = "/{uploadId}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> getUploadOffset(@PathVariable String uploadId) {
+        return progress(resumableUploadService.getSession(uploadId));
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PutMapping("/{uploadId}")
+    public ResponseEntity<Void> uploadChunk(@PathVariable String uploadId,
+                                            @RequestHeader(UPLOAD_OFFSET) long offset,
+                                            HttpServletRequest request) throws IOException, ConflictException {
+        return progress(resumableUploadService.writeChunk(uploadId, offset, request.getInputStream()));
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<String> completeUpload(@PathVariable String uploadId) throws IOException, ConflictException {
+        String fileName = resumableUploadService.complete(uploadId);
+        return ResponseEntity.ok("Audio uploaded: " + fileName);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> abortUpload(@PathVariable String uploadId) throws IOException, ConflictException {
+        resumableUploadService.abort(uploadId);
+        return ResponseEntity.noContent().build();
+    }
+
+    private ResponseEntity<Void> progress(UploadSession session) {
+        return ResponseEntity.noContent()
+                .cacheControl(CacheControl.noStore())
+                .header(UPLOAD_OFFSET, String.valueOf(session.getUploadOffset()))
+                .header(UPLOAD_LENGTH, String.valueOf(session.getLength()))
+                .build();
+    }
+}
@@ -0,0 +1,30 @@
+package com.alkmanistik.alkify_music_api.controller;
+
+import com.alkmanistik.alkify_music_api.dto.ShardMigrationStatusDTO;
+import com.alkmanistik.alkify_music_api.service.ShardedLayoutMigrationService;
+import com.alkmanistik.alkify_music_api.exception.ConflictException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/v1/files/shard-migration")
+@RequiredArgsConstructor
+public class ShardMigrationController {
+
+    private final ShardedLayoutMigrationService shardedLayoutMigrationService;
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping
+    public ShardMigrationStatusDTO getStatus() {
+        return shardedLayoutMigrationService.status();
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public ShardMigrationStatusDTO start() throws ConflictException {
+        return shardedLayoutMigrationService.start();
+    }
+}
@@ -1,10 +1,14 @@
 package com.alkmanistik.alkify_music_api.controller;
 
+import com.alkmanistik.alkify_music_api.dto.PlaybackManifestDTO;
 import com.alkmanistik.alkify_music_api.dto.TrackDTO;
 import com.alkmanistik.alkify_music_api.exception.ForbiddenException;
+import com.alkmanistik.alkify_music_api.request.TrackBatchRequest;
 import com.alkmanistik.alkify_music_api.request.TrackRequest;
+import com.alkmanistik.alkify_music_api.service.PlaybackManifestService;
 import com.alkmanistik.alkify_music_api.service.SecurityService;
 import com.alkmanistik.alkify_music_api.service.TrackService;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -22,6 +26,7 @@ public class TrackController {
 
     private final SecurityService securityService;
     private final TrackService trackService;
+    private final PlaybackManifestService playbackManifestService;
 
     @PreAuthorize("permitAll()")
     @GetMapping()
@@ -37,6 +42,13 @@ public class TrackController {
         return trackService.getAllTracks();
     }
 
+    @PreAuthorize("permitAll()")
+    @GetMapping("/manifest")
+    public PlaybackManifestDTO getPlaybackManifest(@RequestParam List<Long> ids,
+                                                   HttpServletResponse response) throws IOException {
+        return playbackManifestService.forTracks(ids, response);
+    }
+
     @PreAuthorize("permitAll()")
     @GetMapping("/{trackId}")
     public TrackDTO getTrackById(@PathVariable Long trackId) {
@@ -62,6 +74,17 @@ public class TrackController {
         return trackService.createTrack(albumId, user, request, audio);
     }
 
+    @PostMapping("/{albumId}/batch")
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuthorize("hasRole('USER')")
+    public List<TrackDTO> createTracks(
+            @PathVariable Long albumId,
+            @RequestPart @Valid TrackBatchRequest request,
+            @RequestPart(required = false) List<MultipartFile> audios) throws IOException, ForbiddenException {
+        var user = securityService.getCurrentUser();
+        return trackService.createTracks(albumId, user, request.getTracks(), audios);
+    }
+
     @PutMapping("/{trackId}")
     @ResponseStatus(HttpStatus.OK)
     @PreAuthorize("hasRole('USER')")
@@ -17,6 +17,7 @@ public class AlbumDTO {
     private String title;
     private String description;
     private String imageUrl;
+    private String downloadUrl;
     private int releaseDate;
     private List<ArtistMinimalDTO> artists;
     private List<TrackMinimalDTO> tracks;
@@ -0,0 +1,18 @@
+package com.alkmanistik.alkify_music_api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheStatsDTO {
+    private String name;
+    private long entries;
+    private long estimatedBytes;
+    private String ttl;
+    private Long maxEntries;
+    private Long maxValueSize;
+    private Long localEntries;
+}
@@ -0,0 +1,30 @@
+package com.alkmanistik.alkify_music_api.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class MediaGcReportDTO {
+    private String directory;
+    private boolean dryRun;
+    private long scannedFiles;
+    private long orphanedFiles;
+    private long orphanedBytes;
+    private long reclaimedFiles;
+    private long staleTempFiles;
+    private long purgedFromQuarantine;
+    private List<String> orphanSamples = new ArrayList<>();
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+
+    public MediaGcReportDTO(String directory, boolean dryRun) {
+        this.directory = directory;
+        this.dryRun = dryRun;
+        this.startedAt = LocalDateTime.now();
+    }
+}
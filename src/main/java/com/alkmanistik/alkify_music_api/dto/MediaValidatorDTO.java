@@ -0,0 +1,14 @@
+package com.alkmanistik.alkify_music_api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MediaValidatorDTO {
+    private String etag;
+    private long lastModified;
+    private long size;
+}
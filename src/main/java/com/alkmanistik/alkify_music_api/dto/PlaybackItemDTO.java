@@ -0,0 +1,23 @@
+package com.alkmanistik.alkify_music_api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlaybackItemDTO {
+    private int position;
+    private Long trackId;
+    private String title;
+    private String url;
+    private String waveformUrl;
+    private long size;
+    private int durationSeconds;
+    private int bitrate;
+    private int sampleRate;
+    private String codec;
+    private String mimeType;
+    private String etag;
+}
@@ -0,0 +1,17 @@
+package com.alkmanistik.alkify_music_api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlaybackManifestDTO {
+    private Long albumId;
+    private long totalSize;
+    private long totalDurationSeconds;
+    private List<PlaybackItemDTO> items;
+}
@@ -0,0 +1,19 @@
+package com.alkmanistik.alkify_music_api.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+public class ShardMigrationStatusDTO {
+    private boolean running;
+    private long scannedFiles;
+    private long movedFiles;
+    private long duplicateFiles;
+    private long failedFiles;
+    private String currentDirectory;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
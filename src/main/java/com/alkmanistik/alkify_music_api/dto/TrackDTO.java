@@ -18,7 +18,11 @@ public class TrackDTO {
     private String title;
     private String genre;
     private int durationSeconds;
+    private int bitrate;
+    private int sampleRate;
+    private long fileSize;
     private String audioUrl;
+    private String waveformUrl;
     private int releaseDate;
     private List<ArtistMinimalDTO> artists;
     private AlbumMinimalDTO album;
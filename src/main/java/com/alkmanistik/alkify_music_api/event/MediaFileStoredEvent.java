@@ -0,0 +1,4 @@
+package com.alkmanistik.alkify_music_api.event;
+
+public record MediaFileStoredEvent(String path, String fileName) {
+}
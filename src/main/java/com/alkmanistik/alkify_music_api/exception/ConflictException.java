@@ -0,0 +1,7 @@
+package com.alkmanistik.alkify_music_api.exception;
+
+public class ConflictException extends Exception{
+    public ConflictException(String message) {
+        super(message);
+    }
+}
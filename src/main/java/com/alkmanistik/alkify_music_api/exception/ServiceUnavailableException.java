@@ -0,0 +1,7 @@
+package com.alkmanistik.alkify_music_api.exception;
+
+public class ServiceUnavailableException extends Exception{
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -27,6 +27,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtService jwtService;
     private final CustomUserDetailsService userDetailsService;
 
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        // Медиа отдается по подписанным ссылкам - разбор JWT и поход в БД за пользователем там не нужны
+        return SignedMediaUrlFilter.isMediaRead(request);
+    }
+
     @Override
     protected void doFilterInternal(
             @NonNull HttpServletRequest request,
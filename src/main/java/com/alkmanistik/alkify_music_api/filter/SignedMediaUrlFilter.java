@@ -0,0 +1,62 @@
+package com.alkmanistik.alkify_music_api.filter;
+
+import com.alkmanistik.alkify_music_api.service.MediaUrlService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Пропускает чтение аудио, изображений и архивов альбомов только по действующей подписанной ссылке.
+ */
+@Component
+@RequiredArgsConstructor
+public class SignedMediaUrlFilter extends OncePerRequestFilter {
+
+    private final MediaUrlService mediaUrlService;
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !mediaUrlService.isEnabled() || !isMediaRead(request);
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        if (!mediaUrlService.verify(pathOf(request),
+                request.getParameter(MediaUrlService.EXPIRES_PARAM),
+                request.getParameter(MediaUrlService.SIGNATURE_PARAM))) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "Invalid or expired media URL");
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * GET/HEAD аудио, изображений и архива альбома: для них JWT не нужен, доступ решает подпись ссылки.
+     */
+    public static boolean isMediaRead(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!HttpMethod.GET.matches(method) && !HttpMethod.HEAD.matches(method)) {
+            return false;
+        }
+        String path = pathOf(request);
+        return path.startsWith(MediaUrlService.FILES_PATH + MediaUrlService.AUDIOS + "/")
+                || path.startsWith(MediaUrlService.FILES_PATH + MediaUrlService.IMAGES + "/")
+                || path.startsWith(MediaUrlService.ALBUMS_PATH) && path.endsWith(MediaUrlService.DOWNLOAD);
+    }
+
+    private static String pathOf(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+}
@@ -5,6 +5,8 @@ import com.alkmanistik.alkify_music_api.model.Album;
 import com.alkmanistik.alkify_music_api.model.Artist;
 import com.alkmanistik.alkify_music_api.model.Track;
 import com.alkmanistik.alkify_music_api.model.User;
+import com.alkmanistik.alkify_music_api.service.MediaUrlService;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
@@ -16,8 +18,11 @@ import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Component
+@RequiredArgsConstructor
 public class GlobalMapper {
 
+    private final MediaUrlService mediaUrlService;
+
     private <T, R> List<R> safeMap(Collection<T> collection, Function<T, R> mapper) {
         return Optional.ofNullable(collection)
                 .orElseGet(Collections::emptyList)
@@ -53,7 +58,7 @@ public class GlobalMapper {
         ArtistDTO artistDTO = new ArtistDTO();
         artistDTO.setId(artist.getId());
         artistDTO.setArtistName(artist.getArtistName());
-        artistDTO.setImageUrl(artist.getImageFilePath());
+        artistDTO.setImageUrl(mediaUrlService.signImage(artist.getImageFilePath()));
         artistDTO.setDescription(artist.getDescription());
         artistDTO.setSubscriberCount(safeSize(artist.getSubscribers()));
         artistDTO.setAlbums(safeMap(artist.getAlbums(), this::toAlbumMinimalDTO));
@@ -67,7 +72,7 @@ public class GlobalMapper {
         ArtistMinimalDTO dto = new ArtistMinimalDTO();
         dto.setId(artist.getId());
         dto.setArtistName(artist.getArtistName());
-        dto.setImageUrl(artist.getImageFilePath());
+        dto.setImageUrl(mediaUrlService.signImage(artist.getImageFilePath()));
         return dto;
     }
 
@@ -78,7 +83,8 @@ public class GlobalMapper {
         dto.setId(album.getId());
         dto.setTitle(album.getTitle());
         dto.setDescription(album.getDescription());
-        dto.setImageUrl(album.getImageFilePath());
+        dto.setImageUrl(mediaUrlService.signImage(album.getImageFilePath()));
+        dto.setDownloadUrl(mediaUrlService.signAlbumDownload(album.getId()));
         dto.setReleaseDate(getYearOrNull(album.getCreatedAt()));
         dto.setArtists(safeMap(album.getArtists(), this::toArtistMinimalDTO));
         dto.setTracks(safeMap(album.getTracks(), this::toTrackMinimalDTO));
@@ -92,7 +98,7 @@ public class GlobalMapper {
         dto.setId(album.getId());
         dto.setTitle(album.getTitle());
         dto.setReleaseDate(getYearOrNull(album.getCreatedAt()));
-        dto.setImageUrl(album.getImageFilePath());
+        dto.setImageUrl(mediaUrlService.signImage(album.getImageFilePath()));
         dto.setTrackCount(safeSize(album.getTracks()));
         return dto;
     }
@@ -105,7 +111,11 @@ public class GlobalMapper {
         dto.setTitle(track.getTitle());
         dto.setGenre(track.getGenre());
         dto.setDurationSeconds(track.getDurationSeconds());
-        dto.setAudioUrl(track.getAudioFilePath());
+        dto.setBitrate(track.getBitrate());
+        dto.setSampleRate(track.getSampleRate());
+        dto.setFileSize(track.getFileSize());
+        dto.setAudioUrl(mediaUrlService.signAudio(track.getAudioFilePath()));
+        dto.setWaveformUrl(mediaUrlService.waveformUrl(track.getAudioFilePath()));
         dto.setReleaseDate(getYearOrNull(track.getReleaseDate()));
         dto.setArtists(safeMap(track.getArtists(), this::toArtistMinimalDTO));
         dto.setAlbum(toAlbumMinimalDTO(track.getAlbum()));
@@ -121,7 +131,7 @@ public class GlobalMapper {
         dto.setId(track.getId());
         dto.setTitle(track.getTitle());
         dto.setDurationSeconds(track.getDurationSeconds());
-        dto.setAudioUrl(track.getAudioFilePath());
+        dto.setAudioUrl(mediaUrlService.signAudio(track.getAudioFilePath()));
         dto.setExplicit(track.isExplicit());
         return dto;
     }
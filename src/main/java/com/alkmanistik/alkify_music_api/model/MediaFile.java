@@ -0,0 +1,41 @@
+package com.alkmanistik.alkify_music_api.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "media_files",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"directory", "fileName"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MediaFile {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private String directory;
+    private String fileName;
+    @Column(length = 64)
+    private String sha256;
+    // CRC-32 нужен для STORED-записей в ZIP, у старых файлов считается при первом архиве
+    private Long crc32;
+    private long size;
+    private long lastModified;
+    @ColumnDefault("1")
+    private int referenceCount;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+}
@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -25,6 +26,14 @@ public class Track {
     private String title;
     private String genre;
     private int durationSeconds;
+    @ColumnDefault("0")
+    private int bitrate;
+    @ColumnDefault("0")
+    private int sampleRate;
+    @ColumnDefault("0")
+    private long fileSize;
+    @Column(length = 8)
+    private String audioFormat;
     private String audioFilePath;
     private LocalDateTime releaseDate;
     private boolean isExplicit;
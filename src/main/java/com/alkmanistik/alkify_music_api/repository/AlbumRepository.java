@@ -1,8 +1,12 @@
 package com.alkmanistik.alkify_music_api.repository;
 
 import com.alkmanistik.alkify_music_api.model.Album;
+import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface AlbumRepository extends JpaRepository<Album, Long> {
@@ -10,4 +14,14 @@ public interface AlbumRepository extends JpaRepository<Album, Long> {
     List<Album> findByArtistsId(Long artistId);
 
     List<Album> findByTitleContainingIgnoreCase(String title);
+
+    @Modifying
+    @Transactional
+    @Query("update Album a set a.imageFilePath = :newName where a.imageFilePath = :oldName")
+    int renameImageFile(String oldName, String newName);
+
+    @Query("select distinct a.imageFilePath from Album a where a.imageFilePath in :names")
+    List<String> findReferencedImageFiles(Collection<String> names);
+
+    boolean existsByImageFilePath(String imageFilePath);
 }
@@ -2,8 +2,12 @@ package com.alkmanistik.alkify_music_api.repository;
 
 import com.alkmanistik.alkify_music_api.model.Artist;
 import com.alkmanistik.alkify_music_api.model.User;
+import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ArtistRepository extends JpaRepository<Artist, Long> {
@@ -20,4 +24,14 @@ public interface ArtistRepository extends JpaRepository<Artist, Long> {
     int countSubscribersById(Long artistId);
 
     boolean existsByIdAndSubscribersId(Long artistId, Long userId);
+
+    @Modifying
+    @Transactional
+    @Query("update Artist a set a.imageFilePath = :newName where a.imageFilePath = :oldName")
+    int renameImageFile(String oldName, String newName);
+
+    @Query("select distinct a.imageFilePath from Artist a where a.imageFilePath in :names")
+    List<String> findReferencedImageFiles(Collection<String> names);
+
+    boolean existsByImageFilePath(String imageFilePath);
 }
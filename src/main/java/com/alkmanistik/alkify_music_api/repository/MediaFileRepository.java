@@ -0,0 +1,59 @@
+package com.alkmanistik.alkify_music_api.repository;
+
+import com.alkmanistik.alkify_music_api.model.MediaFile;
+import jakarta.persistence.LockModeType;
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface MediaFileRepository extends JpaRepository<MediaFile, Long> {
+    Optional<MediaFile> findByDirectoryAndFileName(String directory, String fileName);
+
+    // Ждет коммита транзакции, которая прямо сейчас добавляет ссылку на файл
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select m from MediaFile m where m.directory = :directory and m.fileName = :fileName")
+    Optional<MediaFile> findForUpdate(String directory, String fileName);
+
+    void deleteByDirectoryAndFileName(String directory, String fileName);
+
+    boolean existsByDirectoryAndFileName(String directory, String fileName);
+
+    // Вставка или добавление ссылок одним запросом: одновременные загрузки одного содержимого
+    // не теряют инкременты и не падают на уникальном ключе (directory, file_name)
+    @Modifying
+    @Transactional
+    @Query(value = """
+            insert into media_files (directory, file_name, sha256, crc32, size, last_modified, reference_count,
+                                     created_at, updated_at)
+            values (:directory, :fileName, :sha256, :crc32, :size, :lastModified, :references, now(), now())
+            on conflict (directory, file_name) do update set
+                reference_count = media_files.reference_count + :addedReferences,
+                sha256 = excluded.sha256,
+                crc32 = excluded.crc32,
+                size = excluded.size,
+                last_modified = excluded.last_modified,
+                updated_at = now()
+            """, nativeQuery = true)
+    int upsert(String directory, String fileName, String sha256, long crc32, long size, long lastModified,
+               int references, int addedReferences);
+
+    @Modifying
+    @Transactional
+    @Query("update MediaFile m set m.referenceCount = m.referenceCount - 1 " +
+            "where m.directory = :directory and m.fileName = :fileName and m.referenceCount > 1")
+    int releaseReference(String directory, String fileName);
+
+    @Modifying
+    @Transactional
+    @Query("delete from MediaFile m " +
+            "where m.directory = :directory and m.fileName = :fileName and m.referenceCount <= 1")
+    int deleteUnreferenced(String directory, String fileName);
+
+    List<MediaFile> findByDirectoryAndFileNameIn(String directory, Collection<String> fileNames);
+}
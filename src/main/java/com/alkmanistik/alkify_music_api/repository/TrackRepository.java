@@ -1,8 +1,12 @@
 package com.alkmanistik.alkify_music_api.repository;
 
 import com.alkmanistik.alkify_music_api.model.Track;
+import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface TrackRepository extends JpaRepository<Track, Long> {
@@ -13,4 +17,14 @@ public interface TrackRepository extends JpaRepository<Track, Long> {
     boolean existsByIdAndLikedUsersId(Long trackId, Long userId);
 
     List<Track> findByLikedUsersId(Long userId);
+
+    @Modifying
+    @Transactional
+    @Query("update Track t set t.audioFilePath = :newName where t.audioFilePath = :oldName")
+    int renameAudioFile(String oldName, String newName);
+
+    @Query("select distinct t.audioFilePath from Track t where t.audioFilePath in :names")
+    List<String> findReferencedAudioFiles(Collection<String> names);
+
+    boolean existsByAudioFilePath(String audioFilePath);
 }
@@ -0,0 +1,11 @@
+package com.alkmanistik.alkify_music_api.repository;
+
+import com.alkmanistik.alkify_music_api.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+    List<UploadSession> findByUpdatedAtBefore(LocalDateTime updatedAt);
+}
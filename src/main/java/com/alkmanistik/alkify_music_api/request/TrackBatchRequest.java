@@ -0,0 +1,17 @@
+package com.alkmanistik.alkify_music_api.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TrackBatchRequest {
+    @NotEmpty
+    private List<@Valid TrackRequest> tracks;
+}
@@ -0,0 +1,94 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.model.Album;
+import com.alkmanistik.alkify_music_api.model.Track;
+import com.alkmanistik.alkify_music_api.repository.AlbumRepository;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Скачивание альбома одним ZIP-архивом для офлайн-режима вместо запроса на каждый трек.
+ * Аудио уже сжато, поэтому записи STORED: архив отдается прямо с диска, без временных файлов и буферов.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AlbumArchiveService {
+
+    private static final MediaType APPLICATION_ZIP = MediaType.parseMediaType("application/zip");
+
+    private final AlbumRepository albumRepository;
+    private final FileService fileService;
+    private final MediaStreamingService mediaStreamingService;
+
+    @Value("${project.audios}")
+    private String audioPath;
+
+    @Value("${project.images}")
+    private String imagePath;
+
+    @Transactional
+    public void download(Long albumId, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Album album = albumRepository.findById(albumId)
+                .orElseThrow(() -> new EntityNotFoundException("Album not found with id: " + albumId));
+
+        // Размеры и CRC собираем до первого байта ответа: отсутствующий файл дает 404, а не оборванный архив
+        StoredZipBuilder zip = new StoredZipBuilder();
+        List<Track> tracks = Optional.ofNullable(album.getTracks()).orElseGet(List::of).stream()
+                .filter(track -> track.getAudioFilePath() != null)
+                .sorted(Comparator.comparing(Track::getId))
+                .toList();
+        int number = 1;
+        for (Track track : tracks) {
+            String entryName = "%02d - %s%s".formatted(number++, sanitize(track.getTitle()),
+                    extensionOf(track.getAudioFilePath()));
+            addFile(zip, entryName, audioPath, track.getAudioFilePath());
+        }
+        if (album.getImageFilePath() != null) {
+            addFile(zip, "cover" + extensionOf(album.getImageFilePath()), imagePath, album.getImageFilePath());
+        }
+        var segments = zip.finish();
+
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(sanitize(album.getTitle()) + ".zip", StandardCharsets.UTF_8)
+                .build()
+                .toString());
+        log.info("Streaming album {} archive: {} tracks, {} bytes", albumId, tracks.size(), zip.length());
+        mediaStreamingService.streamSegments(APPLICATION_ZIP, zip.length(), segments, request, response);
+    }
+
+    private void addFile(StoredZipBuilder zip, String entryName, String path, String fileName) throws IOException {
+        Path file = fileService.getExistingFile(path, fileName);
+        long crc32 = fileService.crc32(path, fileName);
+        zip.addFile(entryName, file, Files.size(file), crc32, Files.getLastModifiedTime(file).toMillis());
+    }
+
+    private String sanitize(String name) {
+        if (name == null || name.isBlank()) {
+            return "untitled";
+        }
+        return name.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").strip();
+    }
+
+    private String extensionOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 ? fileName.substring(dot) : "";
+    }
+}
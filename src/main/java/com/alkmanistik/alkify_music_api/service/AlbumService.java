@@ -1,5 +1,6 @@
 package com.alkmanistik.alkify_music_api.service;
 
+import com.alkmanistik.alkify_music_api.cache.CacheDependency;
 import com.alkmanistik.alkify_music_api.dto.AlbumDTO;
 import com.alkmanistik.alkify_music_api.exception.ForbiddenException;
 import com.alkmanistik.alkify_music_api.mapper.GlobalMapper;
@@ -35,6 +36,7 @@ public class AlbumService {
     private final GlobalMapper globalMapper;
     private final TrackService trackService;
     private final FileService fileService;
+    private final CacheInvalidationService cacheInvalidationService;
 
     @Value("${project.images}")
     private String imagePath;
@@ -42,18 +44,8 @@ public class AlbumService {
     @Transactional
     @Caching(evict = {
             @CacheEvict(value = "albums.all", allEntries = true),
-            @CacheEvict(value = "albums.byArtist", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", key = "#artistId"),
-            @CacheEvict(value = "album.byId", key = "#result.id", condition = "#result != null"),
-            @CacheEvict(value = "albums.search", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", key = "#artistId"),
-            @CacheEvict(value = "artists.byUserId", key = "#user.id"),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "albums.byArtist", key = "#artistId"),
+            @CacheEvict(value = "albums.search", allEntries = true)
     })
     public AlbumDTO createAlbum(Long artistId, User user, AlbumRequest albumRequest, MultipartFile file) throws IOException, ForbiddenException {
         Artist artist = artistRepository.findById(artistId)
@@ -73,17 +65,11 @@ public class AlbumService {
         }
         album.setArtists(List.of(artist));
         var savedAlbum = albumRepository.save(album);
+        // Альбом появляется в DTO исполнителя и у всех, кто его встраивает
+        cacheInvalidationService.evictDependents(CacheDependency.artist(artistId));
         log.info("Album created: {}", savedAlbum.getId());
-        if (albumRequest.getTracks() != null) {
-            albumRequest.getTracks().forEach(trackRequest -> {
-                try {
-                    trackService.createTrack(savedAlbum.getId(), user, trackRequest, null);
-                } catch (IOException e) {
-                    throw new RuntimeException("Failed to create track: " + trackRequest.getTitle(), e);
-                } catch (ForbiddenException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+        if (albumRequest.getTracks() != null && !albumRequest.getTracks().isEmpty()) {
+            trackService.createTracks(savedAlbum.getId(), user, albumRequest.getTracks(), List.of());
         }
         return globalMapper.toAlbumDTO(savedAlbum);
     }
@@ -115,17 +101,8 @@ public class AlbumService {
 
     @Transactional
     @Caching(evict = {
-            @CacheEvict(value = "albums.all", allEntries = true),
-            @CacheEvict(value = "albums.byArtist", allEntries = true),
             @CacheEvict(value = "album.byId", key = "#id"),
-            @CacheEvict(value = "albums.search", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", allEntries = true),
-            @CacheEvict(value = "artists.byUserId", key = "#user.id"),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "albums.search", allEntries = true)
     })
     public AlbumDTO updateAlbum(Long id, User user, AlbumRequest albumRequest, MultipartFile file) throws IOException, ForbiddenException {
         Album album = albumRepository.findById(id)
@@ -147,23 +124,15 @@ public class AlbumService {
         }
 
         Album updatedAlbum = albumRepository.save(album);
+        cacheInvalidationService.evictDependents(CacheDependency.album(id));
         log.info("Album updated: {}", id);
         return globalMapper.toAlbumDTO(updatedAlbum);
     }
 
     @Transactional
     @Caching(evict = {
-            @CacheEvict(value = "albums.all", allEntries = true),
-            @CacheEvict(value = "albums.byArtist", allEntries = true),
             @CacheEvict(value = "album.byId", key = "#album_id"),
-            @CacheEvict(value = "albums.search", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", allEntries = true),
-            @CacheEvict(value = "artists.byUserId", key = "#user.id"),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "albums.all", allEntries = true)
     })
     public void deleteAlbum(Long album_id, User user) throws ForbiddenException {
         Album album = albumRepository.findById(album_id)
@@ -178,22 +147,14 @@ public class AlbumService {
         }
 
         albumRepository.delete(album);
+        cacheInvalidationService.evictDependents(CacheDependency.album(album_id));
         log.info("Album deleted: {} by userId {}", album_id, user.getId());
     }
 
     @Transactional
     @Caching(evict = {
-            @CacheEvict(value = "albums.all", allEntries = true),
-            @CacheEvict(value = "albums.byArtist", allEntries = true),
             @CacheEvict(value = "album.byId", key = "#album_id"),
-            @CacheEvict(value = "albums.search", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", allEntries = true),
-            @CacheEvict(value = "artists.byUserId", allEntries = true),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", allEntries = true),
-            @CacheEvict(value = "user.byEmail", allEntries = true)
+            @CacheEvict(value = "albums.all", allEntries = true)
     })
     public void delete(Long album_id) {
         Album album = albumRepository.findById(album_id)
@@ -206,22 +167,15 @@ public class AlbumService {
         }
 
         albumRepository.delete(album);
+        cacheInvalidationService.evictDependents(CacheDependency.album(album_id));
         log.info("Album deleted: {}", album_id);
     }
 
     @Transactional
     @Caching(evict = {
-            @CacheEvict(value = "albums.all", allEntries = true),
-            @CacheEvict(value = "albums.byArtist", allEntries = true),
             @CacheEvict(value = "album.byId", key = "#albumId"),
-            @CacheEvict(value = "albums.search", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", key = "#artistId"),
-            @CacheEvict(value = "artists.byUserId", key = "#user.id"),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "albums.byArtist", key = "#artistId"),
+            @CacheEvict(value = "artist.byId", key = "#artistId")
     })
     public AlbumDTO addArtistToAlbum(User user, Long albumId, Long artistId) throws ForbiddenException {
         Album album = albumRepository.findById(albumId)
@@ -238,22 +192,15 @@ public class AlbumService {
 
         album.getArtists().add(artist);
         Album updatedAlbum = albumRepository.save(album);
+        cacheInvalidationService.evictDependents(CacheDependency.album(albumId), CacheDependency.artist(artistId));
         return globalMapper.toAlbumDTO(updatedAlbum);
     }
 
     @Transactional
     @Caching(evict = {
-            @CacheEvict(value = "albums.all", allEntries = true),
-            @CacheEvict(value = "albums.byArtist", allEntries = true),
             @CacheEvict(value = "album.byId", key = "#albumId"),
-            @CacheEvict(value = "albums.search", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", key = "#artistId"),
-            @CacheEvict(value = "artists.byUserId", key = "#user.id"),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "albums.byArtist", key = "#artistId"),
+            @CacheEvict(value = "artist.byId", key = "#artistId")
     })
     public void removeArtistFromAlbum(User user, Long albumId, Long artistId) throws ForbiddenException {
         Album album = albumRepository.findById(albumId)
@@ -274,6 +221,7 @@ public class AlbumService {
 
         album.getArtists().remove(artist);
         albumRepository.save(album);
+        cacheInvalidationService.evictDependents(CacheDependency.album(albumId), CacheDependency.artist(artistId));
     }
 
     @Cacheable(value = "albums.search", key = "#title", sync = true)
@@ -290,15 +238,8 @@ public class AlbumService {
     @Transactional
     @Caching(evict = {
             @CacheEvict(value = "albums.all", allEntries = true),
-            @CacheEvict(value = "albums.byArtist", allEntries = true),
-            @CacheEvict(value = "albums.search", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", key = "#artistId"),
-            @CacheEvict(value = "artists.byUserId", allEntries = true),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", allEntries = true),
-            @CacheEvict(value = "user.byEmail", allEntries = true)
+            @CacheEvict(value = "albums.byArtist", key = "#artistId"),
+            @CacheEvict(value = "artist.byId", key = "#artistId")
     })
     public void deleteAlbumsByArtist(Long artistId) {
         albumRepository.findByArtistsId(artistId).forEach(album ->
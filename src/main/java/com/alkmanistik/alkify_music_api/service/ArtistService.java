@@ -1,5 +1,6 @@
 package com.alkmanistik.alkify_music_api.service;
 
+import com.alkmanistik.alkify_music_api.cache.CacheDependency;
 import com.alkmanistik.alkify_music_api.dto.ArtistDTO;
 import com.alkmanistik.alkify_music_api.dto.UserDTO;
 import com.alkmanistik.alkify_music_api.exception.ForbiddenException;
@@ -35,6 +36,7 @@ public class ArtistService {
     private final GlobalMapper globalMapper;
     private final AlbumService albumService;
     private final FileService fileService;
+    private final CacheInvalidationService cacheInvalidationService;
 
     @Value("${project.images}")
     private String imagePath;
@@ -42,13 +44,8 @@ public class ArtistService {
     @Transactional
     @Caching(evict = {
             @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", key = "#result.id", condition = "#result != null"),
             @CacheEvict(value = "artists.byUserId", key = "#user.id"),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "artist.subscriptions", key = "#user.id"),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "artist.search", allEntries = true)
     })
     public ArtistDTO createArtist(User user, ArtistRequest artistRequest, MultipartFile file) throws IOException {
         Artist artist = new Artist();
@@ -60,6 +57,8 @@ public class ArtistService {
         }
         artist.setUser(user);
         var savedArtist = artistRepository.save(artist);
+        // Новый исполнитель входит в managedArtists владельца
+        cacheInvalidationService.evictDependents(CacheDependency.user(user.getId()));
         log.info("Created new artist with id: {}", savedArtist.getId());
         if (artistRequest.getAlbums() != null) {
             artistRequest.getAlbums().forEach(albumRequest -> {
@@ -101,15 +100,9 @@ public class ArtistService {
 
     @Transactional
     @Caching(evict = {
-            @CacheEvict(value = "artists.all", allEntries = true),
             @CacheEvict(value = "artist.byId", key = "#id"),
-            @CacheEvict(value = "artists.byUserId", key = "#user.id"),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "artist.subscriptions", allEntries = true),
             @CacheEvict(value = "artist.subscribers", key = "#id"),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "artist.subscribers.count", key = "#id")
     })
     public void deleteArtist(Long id, User user) throws ForbiddenException {
         Artist artist = artistRepository.findById(id)
@@ -124,21 +117,16 @@ public class ArtistService {
         albumService.deleteAlbumsByArtist(artist.getId());
 
         artistRepository.delete(artist);
+        cacheInvalidationService.evictDependents(CacheDependency.artist(id));
 
         log.info("Deleted artist with id: {} by userId {}", id, user.getId());
     }
 
     @Transactional
     @Caching(evict = {
-            @CacheEvict(value = "artists.all", allEntries = true),
             @CacheEvict(value = "artist.byId", key = "#id"),
-            @CacheEvict(value = "artists.byUserId", allEntries = true),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "artist.subscriptions", allEntries = true),
             @CacheEvict(value = "artist.subscribers", key = "#id"),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", allEntries = true),
-            @CacheEvict(value = "user.byEmail", allEntries = true)
+            @CacheEvict(value = "artist.subscribers.count", key = "#id")
     })
     protected void delete(Long id) {
         Artist artist = artistRepository.findById(id)
@@ -151,18 +139,14 @@ public class ArtistService {
         albumService.deleteAlbumsByArtist(artist.getId());
 
         artistRepository.delete(artist);
+        cacheInvalidationService.evictDependents(CacheDependency.artist(id));
         log.info("Deleted artist with id: {}", id);
     }
 
     @Transactional
     @Caching(evict = {
-            @CacheEvict(value = "artists.all", allEntries = true),
             @CacheEvict(value = "artist.byId", key = "#id"),
-            @CacheEvict(value = "artists.byUserId", allEntries = true),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "artist.search", allEntries = true)
     })
     public ArtistDTO updateArtistById(Long id, User user, ArtistRequest artistRequest, MultipartFile file) throws IOException, ForbiddenException {
         var artistForUpdate = artistRepository.findById(id)
@@ -179,6 +163,7 @@ public class ArtistService {
             artistForUpdate.setImageFilePath(newFileName);
         }
         var updatedArtist = artistRepository.save(artistForUpdate);
+        cacheInvalidationService.evictDependents(CacheDependency.artist(id));
         return globalMapper.toArtistDTO(updatedArtist);
     }
 
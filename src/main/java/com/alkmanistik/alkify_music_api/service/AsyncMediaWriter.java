@@ -0,0 +1,214 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.service.MediaIoScheduler.StreamPacer;
+import com.alkmanistik.alkify_music_api.service.MediaStreamingService.Bytes;
+import com.alkmanistik.alkify_music_api.service.MediaStreamingService.FileRegion;
+import com.alkmanistik.alkify_music_api.service.MediaStreamingService.Region;
+import com.alkmanistik.alkify_music_api.service.MediaStreamingService.Segment;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Неблокирующая отдача ответа через Servlet async I/O.
+ * Пишет кусками, пока контейнер сообщает о готовности сокета, и отпускает поток, как только буфер заполнен -
+ * медленный клиент больше не держит поток воркера на все время скачивания.
+ * Если планировщик ввода-вывода велит подождать, отдача приостанавливается без занятого потока
+ * и продолжается через {@link AsyncContext#start(Runnable)}.
+ */
+@Slf4j
+class AsyncMediaWriter implements WriteListener, AsyncListener {
+
+    private final AsyncContext asyncContext;
+    private final FileChannel channel;
+    private final Iterator<Segment> segments;
+    private final byte[] chunk;
+    private final StreamPacer pacer;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    private ServletOutputStream out;
+    // Канал файла текущей части, когда ответ собран из нескольких файлов
+    private FileChannel partChannel;
+    private Segment current;
+    private long position;
+    private long remaining;
+    // Момент System.nanoTime(), раньше которого следующий кусок писать нельзя
+    private long pausedUntil;
+
+    AsyncMediaWriter(AsyncContext asyncContext, FileChannel channel, List<Segment> segments, int chunkSize,
+                     StreamPacer pacer) {
+        this.asyncContext = asyncContext;
+        this.channel = channel;
+        this.segments = segments.iterator();
+        this.chunk = new byte[chunkSize];
+        this.pacer = pacer;
+    }
+
+    void start() throws IOException {
+        asyncContext.addListener(this);
+        try {
+            out = asyncContext.getResponse().getOutputStream();
+            out.setWriteListener(this);
+        } catch (IOException | RuntimeException e) {
+            finish();
+            throw e;
+        }
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+        // Контейнер вызывает нас снова, когда isReady() вернул false и сокет освободился
+        while (out.isReady()) {
+            long pause = pausedUntil - System.nanoTime();
+            if (pause > 0) {
+                pacer.resumeAfter(pause, this::resume);
+                return;
+            }
+            int length = nextChunk();
+            if (length < 0) {
+                finish();
+                return;
+            }
+            out.write(chunk, 0, length);
+            // Первый кусок уходит сразу из запаса ведра, пауза считается уже после записи
+            pausedUntil = System.nanoTime() + pacer.reserve(length, !(current instanceof Bytes));
+        }
+    }
+
+    private void resume() {
+        if (finished.get()) {
+            return;
+        }
+        try {
+            asyncContext.start(() -> {
+                try {
+                    onWritePossible();
+                } catch (IOException | RuntimeException e) {
+                    onError(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            // Контекст уже завершен по таймауту или обрыву соединения
+            finish();
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        log.debug("Media streaming aborted: {}", throwable.toString());
+        finish();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        closeChannel();
+        pacer.close();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        log.debug("Media streaming timed out");
+        finish();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        finish();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+        // повторный startAsync не используется
+    }
+
+    /**
+     * Заполняет буфер из текущего сегмента.
+     * @return число байт в буфере или -1, если все сегменты отданы
+     */
+    private int nextChunk() throws IOException {
+        while (current == null || remaining == 0) {
+            if (!segments.hasNext()) {
+                return -1;
+            }
+            current = segments.next();
+            position = 0;
+            closePart();
+            remaining = switch (current) {
+                case Bytes bytes -> bytes.content().remaining();
+                case Region region -> {
+                    position = region.start();
+                    yield region.count();
+                }
+                case FileRegion part -> {
+                    partChannel = FileChannel.open(part.file(), StandardOpenOption.READ);
+                    position = part.start();
+                    yield part.count();
+                }
+            };
+        }
+
+        int length = (int) Math.min(chunk.length, remaining);
+        switch (current) {
+            case Bytes bytes -> {
+                ByteBuffer content = bytes.content();
+                content.get(content.position() + (int) position, chunk, 0, length);
+            }
+            case Region ignored -> read(channel, length);
+            case FileRegion ignored -> read(partChannel, length);
+        }
+        position += length;
+        remaining -= length;
+        return length;
+    }
+
+    private void read(FileChannel source, int length) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(chunk, 0, length);
+        while (target.hasRemaining()) {
+            // Позиционное чтение не трогает общий указатель канала
+            if (source.read(target, position + target.position()) < 0) {
+                // Файл укоротили во время отдачи
+                throw new IOException("Unexpected end of file at position " + (position + target.position()));
+            }
+        }
+    }
+
+    private void finish() {
+        if (finished.compareAndSet(false, true)) {
+            closeChannel();
+            pacer.close();
+            asyncContext.complete();
+        }
+    }
+
+    private void closeChannel() {
+        closeQuietly(channel);
+        closePart();
+    }
+
+    private void closePart() {
+        closeQuietly(partChannel);
+        partChannel = null;
+    }
+
+    private void closeQuietly(FileChannel fileChannel) {
+        if (fileChannel == null) {
+            return;
+        }
+        try {
+            fileChannel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close media channel", e);
+        }
+    }
+}
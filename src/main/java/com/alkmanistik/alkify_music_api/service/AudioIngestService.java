@@ -0,0 +1,63 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.model.Track;
+import com.alkmanistik.alkify_music_api.service.AudioProbeService.AudioMetadata;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Прием аудио за один проход: перенос загруженного файла на место, определение формата по содержимому
+ * и разбор заголовков, чтобы длительность трека была известна без скачивания самого файла.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AudioIngestService {
+
+    private final FileService fileService;
+    private final AudioProbeService audioProbeService;
+
+    @Value("${project.audios}")
+    private String audioPath;
+
+    public IngestedAudio ingest(MultipartFile file) throws IOException {
+        return ingest(fileService.spool(audioPath, file));
+    }
+
+    /**
+     * Принимает уже лежащий в каталоге аудио временный файл. Файл перемещается в хранилище или удаляется.
+     */
+    public IngestedAudio ingest(Path tempFile) throws IOException {
+        try {
+            AudioMetadata metadata = audioProbeService.probe(tempFile);
+            FileService.Checksums checksums = fileService.checksums(tempFile);
+            // Расширение берем по настоящему формату, а не из имени, присланного клиентом
+            String fileName = fileService.storeFile(audioPath, tempFile, metadata.format().extension(), checksums);
+            log.info("Ingested {} as {}: {}", tempFile.getFileName(), fileName, metadata);
+            return new IngestedAudio(fileName, metadata);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    public void applyTo(Track track, IngestedAudio audio) {
+        AudioMetadata metadata = audio.metadata();
+        track.setAudioFilePath(audio.fileName());
+        track.setDurationSeconds(metadata.durationSeconds());
+        track.setBitrate(metadata.bitrate());
+        track.setSampleRate(metadata.sampleRate());
+        track.setFileSize(metadata.size());
+        track.setAudioFormat(metadata.format().name());
+    }
+
+    public record IngestedAudio(String fileName, AudioMetadata metadata) {
+    }
+}
@@ -0,0 +1,395 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Определяет настоящий формат аудио по сигнатуре и достает из заголовков длительность, битрейт и частоту.
+ * Читает только заголовки (для Ogg еще хвост файла с последней страницей), сам звук не декодирует.
+ */
+@Slf4j
+@Service
+public class AudioProbeService {
+
+    static final int PROBE_SIZE = 64 * 1024;
+    private static final int ID3V2_HEADER_SIZE = 10;
+    static final int ID3V1_SIZE = 128;
+    static final int OPUS_SAMPLE_RATE = 48000;
+
+    public AudioMetadata probe(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = skipId3v2(channel);
+            ByteBuffer head = read(channel, start, PROBE_SIZE);
+
+            AudioMetadata metadata;
+            try {
+                metadata = switch (detectFormat(head)) {
+                    case FLAC -> probeFlac(head, size);
+                    case OGG -> probeOgg(channel, head, size);
+                    case WAV -> probeWav(channel, size);
+                    case MP4 -> probeMp4(channel, size);
+                    case MP3 -> probeMp3(channel, head, start, size);
+                };
+            } catch (IndexOutOfBoundsException e) {
+                // Заголовок обрезан или поля указывают за пределы прочитанного
+                throw new IllegalArgumentException("Corrupted audio file", e);
+            }
+            log.debug("Probed {}: {}", file, metadata);
+            return metadata;
+        }
+    }
+
+    private AudioMetadata probeMp3(FileChannel channel, ByteBuffer head, long start, long size) throws IOException {
+        int offset = findMp3Sync(head);
+        if (offset < 0) {
+            throw new IllegalArgumentException("Unsupported or corrupted audio file");
+        }
+        Mp3Frame frame = Mp3Frame.parse(head.getInt(offset));
+        long audioStart = start + offset;
+
+        // Xing/Info (LAME) или VBRI хранят число кадров - по нему длительность VBR-файла точная
+        long frames = -1;
+        int xingOffset = offset + frame.sideInfoSize() + 4;
+        if (startsWith(head, xingOffset, "Xing") || startsWith(head, xingOffset, "Info")) {
+            int flags = head.getInt(xingOffset + 4);
+            if ((flags & 0x1) != 0) {
+                frames = Integer.toUnsignedLong(head.getInt(xingOffset + 8));
+            }
+        } else if (startsWith(head, offset + 36, "VBRI")) {
+            frames = Integer.toUnsignedLong(head.getInt(offset + 36 + 14));
+        }
+
+        long audioEnd = size;
+        if (size - ID3V1_SIZE > audioStart
+                && startsWith(read(channel, size - ID3V1_SIZE, 3), 0, "TAG")) {
+            audioEnd -= ID3V1_SIZE;
+        }
+
+        long durationMillis;
+        int bitrate;
+        if (frames > 0) {
+            durationMillis = frames * frame.samplesPerFrame() * 1000 / frame.sampleRate();
+            bitrate = averageBitrate(audioEnd - audioStart, durationMillis);
+        } else {
+            bitrate = frame.bitrate();
+            durationMillis = (audioEnd - audioStart) * 8 / bitrate;
+        }
+        return new AudioMetadata(AudioFormat.MP3, durationMillis, bitrate, frame.sampleRate(), size);
+    }
+
+    private AudioMetadata probeFlac(ByteBuffer head, long size) {
+        // STREAMINFO всегда первый блок: 20 бит частоты, 3 бита каналов, 5 бит глубины, 36 бит числа сэмплов
+        if (head.limit() < 26 || (head.get(4) & 0x7F) != 0) {
+            throw new IllegalArgumentException("Corrupted FLAC stream");
+        }
+        long bits = head.getLong(18);
+        int sampleRate = (int) (bits >>> 44);
+        long totalSamples = bits & 0xF_FFFF_FFFFL;
+        if (sampleRate == 0) {
+            throw new IllegalArgumentException("Corrupted FLAC stream");
+        }
+        long durationMillis = totalSamples * 1000 / sampleRate;
+        return new AudioMetadata(AudioFormat.FLAC, durationMillis, averageBitrate(size, durationMillis), sampleRate, size);
+    }
+
+    private AudioMetadata probeOgg(FileChannel channel, ByteBuffer head, long size) throws IOException {
+        head.order(ByteOrder.LITTLE_ENDIAN);
+        int packet = 27 + Byte.toUnsignedInt(head.get(26));
+        int sampleRate;
+        int granuleRate;
+        long preSkip = 0;
+        int nominalBitrate = 0;
+        if (startsWith(head, packet + 1, "vorbis") && head.get(packet) == 1) {
+            sampleRate = head.getInt(packet + 12);
+            granuleRate = sampleRate;
+            nominalBitrate = head.getInt(packet + 20) / 1000;
+        } else if (startsWith(head, packet, "OpusHead")) {
+            sampleRate = head.getInt(packet + 12);
+            granuleRate = OPUS_SAMPLE_RATE;
+            preSkip = Short.toUnsignedInt(head.getShort(packet + 10));
+        } else {
+            throw new IllegalArgumentException("Unsupported Ogg codec");
+        }
+
+        // Позиция гранулы последней страницы - это число сэмплов во всем потоке
+        long lastGranule = lastOggGranule(channel, size);
+        long durationMillis = lastGranule > preSkip && granuleRate > 0
+                ? (lastGranule - preSkip) * 1000 / granuleRate
+                : 0;
+        int bitrate = durationMillis > 0 ? averageBitrate(size, durationMillis) : nominalBitrate;
+        return new AudioMetadata(AudioFormat.OGG, durationMillis, bitrate, sampleRate, size);
+    }
+
+    private long lastOggGranule(FileChannel channel, long size) throws IOException {
+        long tailStart = Math.max(0, size - PROBE_SIZE);
+        ByteBuffer tail = read(channel, tailStart, PROBE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = tail.limit() - 27; i >= 0; i--) {
+            if (startsWith(tail, i, "OggS")) {
+                long granule = tail.getLong(i + 6);
+                if (granule != -1) {
+                    return granule;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private AudioMetadata probeWav(FileChannel channel, long size) throws IOException {
+        int sampleRate = 0;
+        int byteRate = 0;
+        long dataSize = -1;
+        long position = 12;
+        while (position + 8 <= size && dataSize < 0) {
+            ByteBuffer chunk = read(channel, position, 16).order(ByteOrder.LITTLE_ENDIAN);
+            long chunkSize = Integer.toUnsignedLong(chunk.getInt(4));
+            if (startsWith(chunk, 0, "fmt ") && chunk.limit() >= 16) {
+                sampleRate = chunk.getInt(12);
+                byteRate = read(channel, position + 16, 4).order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+            } else if (startsWith(chunk, 0, "data")) {
+                // Потоковые записи оставляют размер 0 или 0xFFFFFFFF - берем до конца файла
+                long available = size - position - 8;
+                dataSize = chunkSize == 0 || chunkSize > available ? available : chunkSize;
+            }
+            // Чанки выравниваются на четную границу
+            position += 8 + chunkSize + (chunkSize & 1);
+        }
+        if (byteRate <= 0 || dataSize < 0) {
+            throw new IllegalArgumentException("Corrupted WAV file");
+        }
+        long durationMillis = dataSize * 1000 / byteRate;
+        return new AudioMetadata(AudioFormat.WAV, durationMillis, byteRate * 8 / 1000, sampleRate, size);
+    }
+
+    private AudioMetadata probeMp4(FileChannel channel, long size) throws IOException {
+        long[] moov = findBox(channel, 0, size, "moov");
+        long[] mvhd = moov != null ? findBox(channel, moov[0], moov[1], "mvhd") : null;
+        if (mvhd == null) {
+            throw new IllegalArgumentException("Corrupted MP4 file");
+        }
+        long[] timing = readTiming(channel, mvhd[0]);
+        long durationMillis = timing[0] > 0 ? timing[1] * 1000 / timing[0] : 0;
+
+        // У аудиодорожки шкала времени mdhd совпадает с частотой дискретизации
+        int sampleRate = 0;
+        long[] trak = findBox(channel, moov[0], moov[1], "trak");
+        long[] mdia = trak != null ? findBox(channel, trak[0], trak[1], "mdia") : null;
+        long[] mdhd = mdia != null ? findBox(channel, mdia[0], mdia[1], "mdhd") : null;
+        if (mdhd != null) {
+            sampleRate = (int) readTiming(channel, mdhd[0])[0];
+        }
+        return new AudioMetadata(AudioFormat.MP4, durationMillis, averageBitrate(size, durationMillis), sampleRate, size);
+    }
+
+    /**
+     * @return начало и конец содержимого бокса или null
+     */
+    private long[] findBox(FileChannel channel, long start, long end, String type) throws IOException {
+        long position = start;
+        while (position + 8 <= end) {
+            ByteBuffer header = read(channel, position, 16);
+            long boxSize = Integer.toUnsignedLong(header.getInt(0));
+            int headerSize = 8;
+            if (boxSize == 1 && header.limit() >= 16) {
+                boxSize = header.getLong(8);
+                headerSize = 16;
+            } else if (boxSize == 0) {
+                boxSize = end - position;
+            }
+            if (boxSize < headerSize) {
+                return null;
+            }
+            if (startsWith(header, 4, type)) {
+                return new long[]{position + headerSize, Math.min(end, position + boxSize)};
+            }
+            position += boxSize;
+        }
+        return null;
+    }
+
+    // Полные боксы mvhd/mdhd: версия, флаги, даты, затем timescale и duration
+    private long[] readTiming(FileChannel channel, long position) throws IOException {
+        ByteBuffer box = read(channel, position, 32);
+        if (box.get(0) == 1) {
+            return new long[]{Integer.toUnsignedLong(box.getInt(20)), box.getLong(24)};
+        }
+        return new long[]{Integer.toUnsignedLong(box.getInt(12)), Integer.toUnsignedLong(box.getInt(16))};
+    }
+
+    static int findMp3Sync(ByteBuffer head) {
+        for (int i = 0; i + 4 <= head.limit(); i++) {
+            if ((head.get(i) & 0xFF) != 0xFF || (head.get(i + 1) & 0xE0) != 0xE0) {
+                continue;
+            }
+            Mp3Frame frame = Mp3Frame.parse(head.getInt(i));
+            if (frame == null) {
+                continue;
+            }
+            // Случайные 0xFFE встречаются в мусоре, подтверждаем синхронизацию следующим кадром
+            int next = i + frame.length();
+            if (next + 4 > head.limit() || Mp3Frame.parse(head.getInt(next)) != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Формат по сигнатуре в начале потока, уже после ID3v2-тега; все, что не опознано, считаем MP3.
+     */
+    static AudioFormat detectFormat(ByteBuffer head) {
+        if (startsWith(head, 0, "fLaC")) {
+            return AudioFormat.FLAC;
+        }
+        if (startsWith(head, 0, "OggS")) {
+            return AudioFormat.OGG;
+        }
+        if (startsWith(head, 0, "RIFF") && startsWith(head, 8, "WAVE")) {
+            return AudioFormat.WAV;
+        }
+        if (startsWith(head, 4, "ftyp")) {
+            return AudioFormat.MP4;
+        }
+        return AudioFormat.MP3;
+    }
+
+    static long skipId3v2(FileChannel channel) throws IOException {
+        ByteBuffer header = read(channel, 0, ID3V2_HEADER_SIZE);
+        if (header.limit() < ID3V2_HEADER_SIZE || !startsWith(header, 0, "ID3")) {
+            return 0;
+        }
+        // Размер тега записан как synchsafe integer: по 7 бит в каждом байте
+        int tagSize = (header.get(6) & 0x7F) << 21 | (header.get(7) & 0x7F) << 14
+                | (header.get(8) & 0x7F) << 7 | header.get(9) & 0x7F;
+        boolean footer = (header.get(5) & 0x10) != 0;
+        return ID3V2_HEADER_SIZE + tagSize + (footer ? ID3V2_HEADER_SIZE : 0);
+    }
+
+    private static int averageBitrate(long bytes, long durationMillis) {
+        return durationMillis > 0 ? (int) (bytes * 8 / durationMillis) : 0;
+    }
+
+    static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(length, channel.size() - position)));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.flip();
+    }
+
+    static boolean startsWith(ByteBuffer buffer, int offset, String signature) {
+        if (offset < 0 || offset + signature.length() > buffer.limit()) {
+            return false;
+        }
+        byte[] expected = signature.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(offset + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public enum AudioFormat {
+        MP3(".mp3"),
+        FLAC(".flac"),
+        OGG(".ogg"),
+        WAV(".wav"),
+        MP4(".m4a");
+
+        private final String extension;
+
+        AudioFormat(String extension) {
+            this.extension = extension;
+        }
+
+        public String extension() {
+            return extension;
+        }
+    }
+
+    /**
+     * @param bitrate средний битрейт, кбит/с
+     * @param size    размер файла в байтах
+     */
+    public record AudioMetadata(AudioFormat format, long durationMillis, int bitrate, int sampleRate, long size) {
+
+        public int durationSeconds() {
+            return (int) Math.round(durationMillis / 1000.0);
+        }
+    }
+
+    /**
+     * Заголовок кадра MPEG-1/2/2.5 Layer I-III.
+     */
+    record Mp3Frame(int version, int layer, int bitrate, int sampleRate, boolean padding, boolean mono) {
+
+        private static final int VERSION_1 = 3;
+        private static final int VERSION_2 = 2;
+
+        private static final int[][] BITRATES = {
+                // MPEG-1 Layer I, II, III
+                {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+                {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+                {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+                // MPEG-2/2.5 Layer I, II и III
+                {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+                {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+        };
+        private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+        /**
+         * @return кадр или null, если это не заголовок кадра
+         */
+        static Mp3Frame parse(int header) {
+            if ((header & 0xFFE00000) != 0xFFE00000) {
+                return null;
+            }
+            int version = header >>> 19 & 0x3;
+            int layer = 4 - (header >>> 17 & 0x3);
+            int bitrateIndex = header >>> 12 & 0xF;
+            int sampleRateIndex = header >>> 10 & 0x3;
+            // Версия 1 зарезервирована, free-format битрейт не поддерживаем
+            if (version == 1 || layer == 4 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+                return null;
+            }
+            int table = version == VERSION_1 ? layer - 1 : (layer == 1 ? 3 : 4);
+            int sampleRate = SAMPLE_RATES[sampleRateIndex] >> (version == VERSION_1 ? 0 : version == VERSION_2 ? 1 : 2);
+            boolean padding = (header >>> 9 & 0x1) != 0;
+            boolean mono = (header >>> 6 & 0x3) == 3;
+            return new Mp3Frame(version, layer, BITRATES[table][bitrateIndex], sampleRate, padding, mono);
+        }
+
+        int samplesPerFrame() {
+            if (layer == 1) {
+                return 384;
+            }
+            return layer == 3 && version != VERSION_1 ? 576 : 1152;
+        }
+
+        int length() {
+            if (layer == 1) {
+                return (12 * bitrate * 1000 / sampleRate + (padding ? 1 : 0)) * 4;
+            }
+            return samplesPerFrame() / 8 * bitrate * 1000 / sampleRate + (padding ? 1 : 0);
+        }
+
+        // Размер side info Layer III - после него в первом кадре лежит заголовок Xing/Info
+        int sideInfoSize() {
+            if (version == VERSION_1) {
+                return mono ? 17 : 32;
+            }
+            return mono ? 9 : 17;
+        }
+    }
+}
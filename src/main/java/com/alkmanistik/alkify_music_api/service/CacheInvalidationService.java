@@ -0,0 +1,59 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.cache.CacheDependency;
+import com.alkmanistik.alkify_music_api.cache.CacheDependencyIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+/**
+ * Точечный сброс кешей по зависимостям: вместо {@code allEntries} для всего каталога удаляются только записи,
+ * в которые вошла измененная сущность. Внутри транзакции сброс откладывается до коммита,
+ * чтобы параллельное чтение не закешировало старые данные обратно.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CacheInvalidationService {
+
+    private final CacheManager cacheManager;
+    private final CacheDependencyIndex cacheDependencyIndex;
+
+    public void evictDependents(CacheDependency... dependencies) {
+        List<CacheDependency> changed = List.of(dependencies);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evictNow(changed);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evictNow(changed);
+            }
+        });
+    }
+
+    private void evictNow(List<CacheDependency> dependencies) {
+        List<CacheDependencyIndex.Entry> entries;
+        try {
+            entries = cacheDependencyIndex.take(dependencies);
+        } catch (RuntimeException e) {
+            // Без индекса не знаем, что сбрасывать: записи доживут до своего TTL
+            log.error("Failed to read cache dependencies of {}", dependencies, e);
+            return;
+        }
+        for (CacheDependencyIndex.Entry entry : entries) {
+            Cache cache = cacheManager.getCache(entry.cacheName());
+            if (cache != null) {
+                cache.evict(entry.key());
+            }
+        }
+        log.debug("Evicted {} cache entries depending on {}", entries.size(), dependencies);
+    }
+}
@@ -0,0 +1,39 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.cache.BoundedRedisCacheManager;
+import com.alkmanistik.alkify_music_api.cache.TwoLevelCache;
+import com.alkmanistik.alkify_music_api.cache.TwoLevelCacheManager;
+import com.alkmanistik.alkify_music_api.dto.CacheStatsDTO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Сводка по пространствам имен кеша: записи и память в Redis, записи в локальном L1.
+ */
+@Service
+@RequiredArgsConstructor
+public class CacheStatsService {
+
+    private final CacheManager cacheManager;
+
+    public List<CacheStatsDTO> stats() {
+        CacheManager redisCacheManager = cacheManager instanceof TwoLevelCacheManager twoLevel
+                ? twoLevel.getRedisCacheManager()
+                : cacheManager;
+        if (!(redisCacheManager instanceof BoundedRedisCacheManager bounded)) {
+            return List.of();
+        }
+        List<CacheStatsDTO> stats = bounded.stats();
+        if (cacheManager instanceof TwoLevelCacheManager) {
+            stats.forEach(stat -> {
+                if (cacheManager.getCache(stat.getName()) instanceof TwoLevelCache cache) {
+                    stat.setLocalEntries(cache.localSize());
+                }
+            });
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,166 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.repository.AlbumRepository;
+import com.alkmanistik.alkify_music_api.repository.ArtistRepository;
+import com.alkmanistik.alkify_music_api.repository.MediaFileRepository;
+import com.alkmanistik.alkify_music_api.repository.TrackRepository;
+import com.alkmanistik.alkify_music_api.storage.MediaLayout;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Pattern;
+
+/**
+ * Переименовывает файлы, загруженные под UUID, в имена по SHA-256 и схлопывает дубликаты.
+ * Запускается при старте, если включен project.storage.migrate-on-startup.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(value = "project.storage.migrate-on-startup", havingValue = "true")
+public class ContentAddressedMigrationService implements ApplicationRunner {
+
+    private static final int BATCH_SIZE = 500;
+    private static final Pattern CONTENT_ADDRESSED_NAME = Pattern.compile("^[0-9a-f]{64}(\\.[^.]+)?$");
+
+    // Кеши, в которых лежат DTO с именами файлов
+    private static final List<String> AFFECTED_CACHES = List.of(
+            "tracks.all", "track.byId", "tracks.byAlbum", "tracks.search", "tracks.liked",
+            "albums.all", "album.byId", "albums.byArtist", "albums.search",
+            "artists.all", "artist.byId", "artists.byUserId", "artist.search",
+            "artist.subscriptions", "artist.subscribers",
+            "users.all", "user.byId", "user.byEmail", "media.validators"
+    );
+
+    private final FileService fileService;
+    private final MediaLayout mediaLayout;
+    private final MediaFileRepository mediaFileRepository;
+    private final TrackRepository trackRepository;
+    private final AlbumRepository albumRepository;
+    private final ArtistRepository artistRepository;
+    private final CacheManager cacheManager;
+
+    @Value("${project.images}")
+    private String imagePath;
+
+    @Value("${project.audios}")
+    private String audioPath;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        int migrated = migrateDirectory(imagePath) + migrateDirectory(audioPath);
+        if (migrated > 0) {
+            AFFECTED_CACHES.stream()
+                    .map(cacheManager::getCache)
+                    .filter(Objects::nonNull)
+                    .forEach(Cache::clear);
+        }
+        log.info("Content-addressed migration finished, {} files migrated", migrated);
+    }
+
+    private int migrateDirectory(String path) throws IOException {
+        Path dirPath = Paths.get(path);
+        if (!Files.isDirectory(dirPath)) {
+            return 0;
+        }
+
+        int migrated = 0;
+        String cursor = null;
+        List<Path> batch;
+        do {
+            // Файлы могут лежать и в корне, и в каталогах шардов
+            batch = mediaLayout.listFiles(path, cursor, BATCH_SIZE);
+            for (Path file : batch) {
+                String fileName = file.getFileName().toString();
+                if (fileName.startsWith(".") || CONTENT_ADDRESSED_NAME.matcher(fileName).matches()) {
+                    continue;
+                }
+                try {
+                    if (migrateFile(path, file, fileName)) {
+                        migrated++;
+                    }
+                } catch (IOException e) {
+                    log.error("Failed to migrate file {}{}", path, fileName, e);
+                }
+            }
+            if (!batch.isEmpty()) {
+                cursor = mediaLayout.relativeName(path, batch.getLast());
+            }
+        } while (batch.size() == BATCH_SIZE);
+        return migrated;
+    }
+
+    private boolean migrateFile(String path, Path source, String oldName) throws IOException {
+        FileService.Checksums checksums = fileService.checksums(source);
+        String newName = checksums.sha256() + extensionOf(oldName);
+        Path target = mediaLayout.locate(path, newName);
+
+        Lock lock = fileService.lockFor(path, newName);
+        lock.lock();
+        try {
+            // Сначала кладем файл под новым именем, потом переключаем ссылки и только затем удаляем старый,
+            // чтобы при падении на любом шаге ссылки не указывали в пустоту
+            if (!Files.exists(target)) {
+                copyAtomically(source, target);
+            }
+
+            int references = renameReferences(path, oldName, newName);
+            mediaFileRepository.findByDirectoryAndFileName(path, oldName)
+                    .ifPresent(mediaFileRepository::delete);
+            if (references > 0) {
+                fileService.acquireReference(path, newName, target, checksums, references);
+            }
+            Files.delete(source);
+            log.info("Migrated {}{} -> {} ({} references)", path, oldName, newName, references);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Копия появляется под именем-хэшем только целиком: после падения посреди копирования следующий запуск
+     * не примет обрезанный файл за готовый.
+     */
+    private void copyAtomically(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path tempFile = Files.createTempFile(target.getParent(), ".migrate-", ".tmp");
+        try {
+            Files.copy(source, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private int renameReferences(String path, String oldName, String newName) {
+        if (path.equals(audioPath)) {
+            return trackRepository.renameAudioFile(oldName, newName);
+        }
+        return albumRepository.renameImageFile(oldName, newName)
+                + artistRepository.renameImageFile(oldName, newName);
+    }
+
+    private String extensionOf(String fileName) {
+        return Optional.of(fileName.lastIndexOf('.'))
+                .filter(index -> index >= 0)
+                .map(fileName::substring)
+                .orElse("");
+    }
+}
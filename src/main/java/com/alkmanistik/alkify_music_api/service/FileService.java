@@ -1,6 +1,17 @@
 package com.alkmanistik.alkify_music_api.service;
 
+import com.alkmanistik.alkify_music_api.event.MediaFileDeletedEvent;
+import com.alkmanistik.alkify_music_api.event.MediaFileStoredEvent;
+import com.alkmanistik.alkify_music_api.model.MediaFile;
+import com.alkmanistik.alkify_music_api.repository.MediaFileRepository;
+import com.alkmanistik.alkify_music_api.storage.MediaLayout;
+import com.alkmanistik.alkify_music_api.storage.MediaStorage;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -9,59 +20,148 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class FileService {
 
-    public String uploadFile(String path, MultipartFile file) throws IOException {
+    private static final int LOCK_STRIPES = 64;
 
-        if (file == null || file.isEmpty()) {
-            throw new IllegalArgumentException("File is null or empty");
-        }
+    private final MediaFileRepository mediaFileRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MediaStorage mediaStorage;
+    private final MediaLayout mediaLayout;
+    private final Lock[] fileLocks = createLocks();
 
-        String originalFilename = file.getOriginalFilename();
+    @Value("${project.storage.content-addressed:false}")
+    private boolean contentAddressed;
 
-        if (originalFilename == null || originalFilename.isBlank()) {
-            throw new IllegalArgumentException("Original filename is invalid");
+    public String uploadFile(String path, MultipartFile file) throws IOException {
+        String extension = extensionOf(file);
+        Path tempFile = spool(path, file);
+        try {
+            return storeFile(path, tempFile, extension, checksums(tempFile));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
         }
+    }
 
-        String extension = originalFilename.substring(originalFilename.lastIndexOf("."));
-        String fileName = UUID.randomUUID() + extension;
+    /**
+     * Переносит тело загрузки во временный файл в целевом каталоге.
+     * Если контейнер уже сбросил multipart на диск, файл переименовывается без повторного копирования.
+     */
+    public Path spool(String path, MultipartFile file) throws IOException {
+        extensionOf(file);
 
         Path dirPath = Paths.get(path);
         if (!Files.exists(dirPath)) {
             Files.createDirectories(dirPath);
         }
 
-        Path filePath = dirPath.resolve(fileName);
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+        Path tempFile = Files.createTempFile(dirPath, ".upload-", ".tmp");
+        try {
+            // transferTo(File) с абсолютным путем - только так Tomcat перемещает свой временный файл
+            file.transferTo(tempFile.toAbsolutePath().toFile());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return tempFile;
+    }
+
+    private String extensionOf(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("File is null or empty");
+        }
+
+        String originalFilename = file.getOriginalFilename();
+
+        if (originalFilename == null || originalFilename.isBlank() || originalFilename.lastIndexOf('.') < 0) {
+            throw new IllegalArgumentException("Original filename is invalid");
+        }
 
-        log.info("File uploaded to: {}", filePath);
+        return originalFilename.substring(originalFilename.lastIndexOf("."));
+    }
 
+    public String storeFile(String path, Path source, String extension, Checksums checksums) throws IOException {
+        String fileName = (contentAddressed ? checksums.sha256() : UUID.randomUUID().toString()) + extension;
+        Lock lock = lockFor(path, fileName);
+        lock.lock();
+        try {
+            boolean stored = mediaStorage.store(path, fileName, source);
+            if (stored) {
+                log.info("File uploaded: {}{}", path, fileName);
+            } else {
+                // Такое содержимое уже есть в хранилище - храним одну копию
+                log.info("File deduplicated: {}{}", path, fileName);
+            }
+            Path filePath = mediaStorage.fetch(path, fileName);
+            if (!stored) {
+                // Ссылка появится в БД только с коммитом вызывающего, а mtime виден сборщику мусора сразу
+                Files.setLastModifiedTime(filePath, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+            acquireReference(path, fileName, filePath, checksums, 1);
+        } catch (IOException e) {
+            Files.deleteIfExists(source);
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+        eventPublisher.publishEvent(new MediaFileStoredEvent(path, fileName));
         return fileName;
     }
 
-    public InputStream getResourceFile(String path, String fileName) throws FileNotFoundException {
+    public InputStream getResourceFile(String path, String fileName) throws IOException {
+        return new FileInputStream(getExistingFile(path, fileName).toFile());
+    }
+
+    /**
+     * @return локальный путь к файлу; при удаленном хранилище файл при необходимости подтягивается в горячий слой
+     */
+    public Path getExistingFile(String path, String fileName) throws IOException {
 
         if (fileName == null || fileName.isBlank()) {
             throw new IllegalArgumentException("Filename is null or empty");
         }
 
-        Path filePath = Paths.get(path).resolve(fileName);
-        if (!Files.exists(filePath)) {
-            throw new FileNotFoundException("File not found: " + fileName);
-        }
-
-        return new FileInputStream(filePath.toFile());
+        return mediaStorage.fetch(path, fileName);
     }
 
 
+    @Transactional
+    @CacheEvict(value = "media.validators", key = "{#path, #fileName}")
     public void deleteFile(String path, String fileName) {
-        Path fullPath = Paths.get(path, fileName).normalize();
+        Path fullPath = mediaLayout.resolvePath(path, fileName);
+        Lock lock = lockFor(path, fileName);
+        lock.lock();
         try {
-            boolean deleted = Files.deleteIfExists(fullPath);
+            // Счетчик меняется только атомарными запросами: чтение-изменение-запись под локальной блокировкой
+            // теряло ссылки, потому что блокировка снимается раньше коммита, а другие узлы ее не видят
+            if (mediaFileRepository.releaseReference(path, fileName) > 0) {
+                log.info("File {} is still referenced", fullPath);
+                return;
+            }
+            if (mediaFileRepository.deleteUnreferenced(path, fileName) == 0
+                    && mediaFileRepository.existsByDirectoryAndFileName(path, fileName)) {
+                // Между запросами файл получил новую ссылку
+                log.info("File {} was referenced again concurrently", fullPath);
+                return;
+            }
+
+            boolean deleted = mediaStorage.delete(path, fileName);
+            eventPublisher.publishEvent(new MediaFileDeletedEvent(path, fileName));
             if (deleted) {
                 log.info("File deleted: {}", fullPath);
             } else {
@@ -70,6 +170,113 @@ public class FileService {
         } catch (IOException e) {
             log.error("Failed to delete file: {}", fullPath, e);
             throw new RuntimeException("Failed to delete file", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Убирает файл, на который больше не ссылается ни одна сущность, вместе с его записью в media_files.
+     * Вызывающий держит {@link #lockFor} и уже перепроверил ссылки.
+     * @param quarantine каталог карантина или null, чтобы удалить файл сразу
+     */
+    @Transactional
+    @CacheEvict(value = "media.validators", key = "{#path, #fileName}")
+    public void removeOrphan(String path, String fileName, Path quarantine) throws IOException {
+        // Сборщик мусора находит файлы на локальном диске - оттуда и переносим в карантин
+        Path fullPath = mediaLayout.locate(path, fileName);
+        mediaFileRepository.deleteByDirectoryAndFileName(path, fileName);
+        if (quarantine != null) {
+            Files.createDirectories(quarantine);
+            Path target = quarantine.resolve(fileName);
+            Files.move(fullPath, target, StandardCopyOption.REPLACE_EXISTING);
+            // Срок хранения в карантине отсчитываем от момента переноса
+            Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        // Удаленная копия (если есть) уходит вместе с локальной
+        mediaStorage.delete(path, fileName);
+        eventPublisher.publishEvent(new MediaFileDeletedEvent(path, fileName));
+    }
+
+    /**
+     * Записывает контрольные суммы файла; файл без записи в media_files получает одну ссылку.
+     * @return записанные значения; счетчик ссылок в нем не читается из БД
+     */
+    public MediaFile registerMediaFile(String path, String fileName, Path filePath, Checksums checksums) throws IOException {
+        return upsertMediaFile(path, fileName, filePath, checksums, 1, 0);
+    }
+
+    public void acquireReference(String path, String fileName, Path filePath, Checksums checksums, int references) throws IOException {
+        upsertMediaFile(path, fileName, filePath, checksums, references, references);
+    }
+
+    /**
+     * CRC-32 содержимого: из media_files, а для файлов без него - считается один раз и сохраняется.
+     */
+    public long crc32(String path, String fileName) throws IOException {
+        MediaFile mediaFile = mediaFileRepository.findByDirectoryAndFileName(path, fileName).orElse(null);
+        if (mediaFile != null && mediaFile.getCrc32() != null) {
+            return mediaFile.getCrc32();
+        }
+        Path filePath = getExistingFile(path, fileName);
+        Checksums checksums = checksums(filePath);
+        registerMediaFile(path, fileName, filePath, checksums);
+        return checksums.crc32();
+    }
+
+    public Lock lockFor(String path, String fileName) {
+        int hash = (path + fileName).hashCode();
+        return fileLocks[Math.floorMod(hash, LOCK_STRIPES)];
+    }
+
+    private MediaFile newMediaFile(String path, String fileName, int references) {
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setDirectory(path);
+        mediaFile.setFileName(fileName);
+        mediaFile.setReferenceCount(references);
+        return mediaFile;
+    }
+
+    private MediaFile upsertMediaFile(String path, String fileName, Path filePath, Checksums checksums,
+                                      int references, int addedReferences) throws IOException {
+        MediaFile mediaFile = newMediaFile(path, fileName, references);
+        mediaFile.setSha256(checksums.sha256());
+        mediaFile.setCrc32(checksums.crc32());
+        mediaFile.setSize(Files.size(filePath));
+        mediaFile.setLastModified(Files.getLastModifiedTime(filePath).toMillis());
+        mediaFileRepository.upsert(path, fileName, mediaFile.getSha256(), mediaFile.getCrc32(), mediaFile.getSize(),
+                mediaFile.getLastModified(), references, addedReferences);
+        return mediaFile;
+    }
+
+    private static Lock[] createLocks() {
+        Lock[] locks = new Lock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    /**
+     * SHA-256 и CRC-32 за одно чтение файла.
+     */
+    public Checksums checksums(Path filePath) throws IOException {
+        MessageDigest digest = newSha256();
+        CRC32 crc = new CRC32();
+        try (InputStream is = new CheckedInputStream(new DigestInputStream(Files.newInputStream(filePath), digest), crc)) {
+            is.transferTo(OutputStream.nullOutputStream());
+        }
+        return new Checksums(HexFormat.of().formatHex(digest.digest()), crc.getValue());
+    }
+
+    public record Checksums(String sha256, long crc32) {
+    }
+
+    private MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
         }
     }
 }
@@ -0,0 +1,297 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.event.MediaFileDeletedEvent;
+import com.alkmanistik.alkify_music_api.event.MediaFileStoredEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Горячие обложки в direct ByteBuffer вне кучи.
+ * Ограничен суммарным размером, вытесняет редко запрашиваемые записи (оценка частоты по count-min sketch).
+ * <p>
+ * Допуск считается по весу самого кеша: вытесненная запись сразу освобождает место под новую. Память вытесненных
+ * буферов вернется только после сборки мусора (их могут дочитывать текущие ответы), поэтому она лишь видна
+ * в метрике {@code media.image.cache.allocated}; от ее роста страхует лимит {@code -XX:MaxDirectMemorySize},
+ * при исчерпании которого запись просто отдается с диска.
+ */
+@Service
+public class ImageCacheService {
+
+    // Сколько случайных записей сравниваем при выборе жертвы
+    private static final int VICTIM_SAMPLE = 8;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final FrequencySketch sketch = new FrequencySketch(4096);
+    private final AtomicLong usedBytes = new AtomicLong();
+    // Вся выделенная память буферов, включая вытесненные, но еще не собранные; только для метрики
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final Cleaner cleaner = Cleaner.create();
+    // Ключи записей для случайной выборки и загружаемые сейчас ключи; меняются только под блокировкой
+    private final List<String> keys = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final Set<String> loading = new HashSet<>();
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final String imagePath;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter rejections;
+
+    public ImageCacheService(MeterRegistry meterRegistry,
+                             @Value("${project.image-cache.max-size}") DataSize maxSize,
+                             @Value("${project.image-cache.max-entry-size}") DataSize maxEntrySize,
+                             @Value("${project.images}") String imagePath) {
+        this.maxBytes = maxSize.toBytes();
+        this.maxEntryBytes = maxEntrySize.toBytes();
+        this.imagePath = imagePath;
+        this.hits = meterRegistry.counter("media.image.cache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("media.image.cache.requests", "result", "miss");
+        this.evictions = meterRegistry.counter("media.image.cache.evictions");
+        this.rejections = meterRegistry.counter("media.image.cache.rejections");
+        Gauge.builder("media.image.cache.bytes", usedBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("media.image.cache.allocated", allocatedBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("media.image.cache.entries", entries, Map::size)
+                .register(meterRegistry);
+    }
+
+    public CachedImage get(String key) {
+        sketch.increment(key);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.image().duplicate();
+    }
+
+    /**
+     * Решает, пускать ли файл в кеш, и только после этого читает его в direct-буфер.
+     * @return содержимое файла или null, если файл в кеш не попал и его нужно отдать с диска
+     */
+    public CachedImage load(String key, Path file, String contentType) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > maxEntryBytes || !reserve(key, (int) size)) {
+                return null;
+            }
+            ByteBuffer buffer;
+            try {
+                buffer = ByteBuffer.allocateDirect((int) size);
+            } catch (OutOfMemoryError e) {
+                release(key, (int) size);
+                return null;
+            }
+            allocatedBytes.addAndGet(size);
+            cleaner.register(buffer, () -> allocatedBytes.addAndGet(-size));
+            try {
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // читаем до конца
+                }
+            } catch (IOException | RuntimeException e) {
+                release(key, (int) size);
+                throw e;
+            }
+            buffer.flip();
+
+            CachedImage image = new CachedImage(buffer.asReadOnlyBuffer(), contentType);
+            install(key, image, (int) size);
+            return image.duplicate();
+        }
+    }
+
+    @EventListener
+    public void onImageStored(MediaFileStoredEvent event) {
+        invalidate(event.path(), event.fileName());
+    }
+
+    @EventListener
+    public void onImageDeleted(MediaFileDeletedEvent event) {
+        invalidate(event.path(), event.fileName());
+    }
+
+    private synchronized void invalidate(String path, String fileName) {
+        if (!path.equals(imagePath)) {
+            return;
+        }
+        // Ключи вида <имя файла>/<вариант>, удаляем оригинал вместе со всеми вариантами
+        String prefix = fileName + "/";
+        List.copyOf(keys).stream()
+                .filter(key -> key.startsWith(prefix))
+                .forEach(this::remove);
+        // Читаемое сейчас старое содержимое в кеш уже не попадет
+        loading.removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * Освобождает место под запись: вытесняет более редкие записи и резервирует память буфера.
+     * @return false, если новичок не прошел допуск
+     */
+    private synchronized boolean reserve(String key, int size) {
+        if (entries.containsKey(key) || loading.contains(key)) {
+            return false;
+        }
+        int candidateFrequency = sketch.frequency(key);
+        while (usedBytes.get() + size > maxBytes) {
+            String victim = sampleVictim();
+            if (victim == null || sketch.frequency(victim) >= candidateFrequency) {
+                // Новичок запрашивается реже, чем то, что пришлось бы вытеснить, - не пускаем
+                rejections.increment();
+                return false;
+            }
+            remove(victim);
+            evictions.increment();
+        }
+        usedBytes.addAndGet(size);
+        loading.add(key);
+        return true;
+    }
+
+    private synchronized void install(String key, CachedImage image, int size) {
+        if (!loading.remove(key)) {
+            usedBytes.addAndGet(-size);
+            return;
+        }
+        entries.put(key, new Entry(image, size));
+        positions.put(key, keys.size());
+        keys.add(key);
+    }
+
+    private synchronized void release(String key, int size) {
+        loading.remove(key);
+        usedBytes.addAndGet(-size);
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        Integer position = positions.remove(key);
+        if (removed == null || position == null) {
+            return;
+        }
+        // Удаление из списка перестановкой последнего ключа на место удаленного
+        String last = keys.removeLast();
+        if (position < keys.size()) {
+            keys.set(position, last);
+            positions.put(last, position);
+        }
+        usedBytes.addAndGet(-removed.size());
+    }
+
+    /**
+     * Самая редкая из нескольких случайных записей - приближение LFU без обхода всего кеша под блокировкой.
+     */
+    private String sampleVictim() {
+        if (keys.isEmpty()) {
+            return null;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String victim = null;
+        int victimFrequency = Integer.MAX_VALUE;
+        for (int i = 0; i < Math.min(VICTIM_SAMPLE, keys.size()); i++) {
+            String key = keys.get(random.nextInt(keys.size()));
+            int frequency = sketch.frequency(key);
+            if (frequency < victimFrequency) {
+                victim = key;
+                victimFrequency = frequency;
+            }
+        }
+        return victim;
+    }
+
+    public record CachedImage(ByteBuffer content, String contentType) {
+
+        CachedImage duplicate() {
+            return new CachedImage(content.duplicate(), contentType);
+        }
+    }
+
+    private record Entry(CachedImage image, int size) {
+    }
+
+    /**
+     * Счетчики насыщаются на 15 и периодически делятся пополам, чтобы старая популярность со временем забывалась.
+     */
+    private static final class FrequencySketch {
+
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+
+        private final int[][] table;
+        private final int mask;
+        private final int resetThreshold;
+        private int additions;
+
+        FrequencySketch(int width) {
+            int size = Integer.highestOneBit(width - 1) << 1;
+            this.table = new int[DEPTH][size];
+            this.mask = size - 1;
+            this.resetThreshold = size * 10;
+        }
+
+        synchronized void increment(String key) {
+            int hash = spread(key.hashCode());
+            for (int row = 0; row < DEPTH; row++) {
+                int index = indexOf(hash, row);
+                if (table[row][index] < MAX_COUNT) {
+                    table[row][index]++;
+                }
+            }
+            if (++additions >= resetThreshold) {
+                for (int[] counters : table) {
+                    for (int i = 0; i < counters.length; i++) {
+                        counters[i] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        synchronized int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, table[row][indexOf(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = hash * (0x9E3779B9 + (row << 1));
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 17;
+            hash *= 0xED5AD4BB;
+            hash ^= hash >>> 11;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.event.MediaFileDeletedEvent;
+import com.alkmanistik.alkify_music_api.event.MediaFileStoredEvent;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Уменьшенные копии обложек (w64/w256/w1024) и крошечные LQIP-заглушки.
+ * Хранятся в отдельном каталоге с ограничением по размеру и вытеснением по LRU.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageVariantService {
+
+    public static final String LQIP = "lqip";
+
+    private static final int LQIP_WIDTH = 16;
+    private static final float JPEG_QUALITY = 0.85f;
+    private static final float LQIP_QUALITY = 0.4f;
+
+    private final FileService fileService;
+
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    // Порядок доступа: первым лежит самый давно запрошенный вариант
+    private final LinkedHashMap<String, CachedVariant> index = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes;
+
+    @Value("${project.images}")
+    private String imagePath;
+
+    @Value("${project.image-variants.path}")
+    private String variantPath;
+
+    @Value("${project.image-variants.widths}")
+    private List<Integer> widths;
+
+    @Value("${project.image-variants.max-size}")
+    private DataSize maxSize;
+
+    // Ограничение на ширину x высоту оригинала: маленький PNG может разворачиваться в гигабайты пикселей
+    @Value("${project.image-variants.max-pixels}")
+    private long maxPixels;
+
+    @PostConstruct
+    void loadIndex() throws IOException {
+        Path dirPath = Paths.get(variantPath);
+        Files.createDirectories(dirPath);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath, Files::isRegularFile)) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.comparing(file -> file.toFile().lastModified()));
+
+        synchronized (index) {
+            for (Path file : files) {
+                String key = keyOf(file.getFileName().toString());
+                if (key == null) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                long size = Files.size(file);
+                index.put(key, new CachedVariant(file, size));
+                cachedBytes += size;
+            }
+        }
+        evictIfNeeded();
+        log.info("Image variant cache loaded: {} variants, {} bytes", index.size(), cachedBytes);
+    }
+
+    /**
+     * @return имя варианта или null, если нужен оригинал
+     */
+    public String variantName(Integer width, boolean lqip) {
+        if (lqip) {
+            return LQIP;
+        }
+        if (width == null) {
+            return null;
+        }
+        if (!widths.contains(width)) {
+            throw new IllegalArgumentException("Unsupported image width " + width + ", allowed: " + widths);
+        }
+        return "w" + width;
+    }
+
+    public Path getVariant(String imageName, String variant) throws IOException {
+        String key = imageName + "/" + variant;
+        Path cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Single-flight: одновременные первые запросы ждут одну генерацию
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            Path generated = lookup(key);
+            if (generated == null) {
+                generated = generate(imageName, variant, key);
+            }
+            future.complete(generated);
+            return generated;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    @Async
+    @EventListener
+    public void onImageStored(MediaFileStoredEvent event) {
+        if (!event.path().equals(imagePath)) {
+            return;
+        }
+        List<String> variants = new ArrayList<>();
+        widths.forEach(width -> variants.add("w" + width));
+        variants.add(LQIP);
+        for (String variant : variants) {
+            try {
+                getVariant(event.fileName(), variant);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to pregenerate {} variant for {}", variant, event.fileName(), e);
+            }
+        }
+    }
+
+    @EventListener
+    public void onImageDeleted(MediaFileDeletedEvent event) {
+        if (!event.path().equals(imagePath)) {
+            return;
+        }
+        List<CachedVariant> removed = new ArrayList<>();
+        synchronized (index) {
+            Iterator<Map.Entry<String, CachedVariant>> iterator = index.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, CachedVariant> entry = iterator.next();
+                if (entry.getKey().startsWith(event.fileName() + "/")) {
+                    removed.add(entry.getValue());
+                    cachedBytes -= entry.getValue().size();
+                    iterator.remove();
+                }
+            }
+        }
+        removed.forEach(this::deleteQuietly);
+    }
+
+    private Path lookup(String key) {
+        synchronized (index) {
+            CachedVariant variant = index.get(key);
+            return variant != null ? variant.path() : null;
+        }
+    }
+
+    private Path generate(String imageName, String variant, String key) throws IOException {
+        Path original = fileService.getExistingFile(imagePath, imageName);
+        int targetWidth = LQIP.equals(variant) ? LQIP_WIDTH : Integer.parseInt(variant.substring(1));
+        BufferedImage source = decode(original, targetWidth);
+        if (source == null) {
+            // Формат, который ImageIO не умеет читать, отдаем как есть
+            log.debug("Image {} can not be decoded, serving original", imageName);
+            return original;
+        }
+
+        BufferedImage scaled = scale(source, Math.min(targetWidth, source.getWidth()));
+        boolean hasAlpha = scaled.getColorModel().hasAlpha();
+        String format = hasAlpha ? "png" : "jpg";
+
+        Path dirPath = Paths.get(variantPath);
+        Path target = dirPath.resolve(imageName + "." + variant + "." + format);
+        Path tempFile = Files.createTempFile(dirPath, ".variant-", ".tmp");
+        try {
+            if (hasAlpha) {
+                ImageIO.write(scaled, format, tempFile.toFile());
+            } else {
+                writeJpeg(scaled, tempFile, LQIP.equals(variant) ? LQIP_QUALITY : JPEG_QUALITY);
+            }
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+
+        long size = Files.size(target);
+        synchronized (index) {
+            CachedVariant previous = index.put(key, new CachedVariant(target, size));
+            cachedBytes += size - (previous != null ? previous.size() : 0);
+        }
+        evictIfNeeded();
+        log.debug("Generated {} variant for {} ({} bytes)", variant, imageName, size);
+        return target;
+    }
+
+    /**
+     * Читает размеры из заголовка и только потом декодирует - с прореживанием строк и столбцов,
+     * чтобы в памяти оказалось не больше двух ширин варианта, а не весь оригинал.
+     * @return null, если формат не поддерживается
+     */
+    private BufferedImage decode(Path original, int targetWidth) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : Collections.emptyIterator();
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IllegalArgumentException("Image " + original.getFileName() + " is too large: "
+                            + width + "x" + height + ", at most " + maxPixels + " pixels allowed");
+                }
+                // Оставляем запас вдвое: дальше scale() уменьшает по шагам, и исходник должен быть крупнее цели
+                int step = Math.max(1, width / (targetWidth * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage scale(BufferedImage source, int targetWidth) {
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int targetHeight = Math.max(1, (int) Math.round((double) source.getHeight() * targetWidth / source.getWidth()));
+
+        // Уменьшаем в несколько шагов вдвое, билинейная интерполяция за один шаг дает мыло и муар
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage step = new BufferedImage(width, height, type);
+            Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private void writeJpeg(BufferedImage image, Path target, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private void evictIfNeeded() {
+        List<CachedVariant> evicted = new ArrayList<>();
+        synchronized (index) {
+            Iterator<CachedVariant> iterator = index.values().iterator();
+            while (cachedBytes > maxSize.toBytes() && iterator.hasNext()) {
+                CachedVariant variant = iterator.next();
+                cachedBytes -= variant.size();
+                iterator.remove();
+                evicted.add(variant);
+            }
+        }
+        evicted.forEach(this::deleteQuietly);
+    }
+
+    private void deleteQuietly(CachedVariant variant) {
+        try {
+            Files.deleteIfExists(variant.path());
+        } catch (IOException e) {
+            log.warn("Failed to delete image variant {}", variant.path(), e);
+        }
+    }
+
+    private Path await(CompletableFuture<Path> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for image variant");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IllegalStateException("Failed to generate image variant", e.getCause());
+        }
+    }
+
+    // <имя оригинала>.<вариант>.<формат> -> <имя оригинала>/<вариант>
+    private String keyOf(String variantFileName) {
+        int formatDot = variantFileName.lastIndexOf('.');
+        int variantDot = formatDot > 0 ? variantFileName.lastIndexOf('.', formatDot - 1) : -1;
+        if (variantDot <= 0 || variantFileName.startsWith(".")) {
+            return null;
+        }
+        return variantFileName.substring(0, variantDot) + "/" + variantFileName.substring(variantDot + 1, formatDot);
+    }
+
+    private record CachedVariant(Path path, long size) {
+    }
+}
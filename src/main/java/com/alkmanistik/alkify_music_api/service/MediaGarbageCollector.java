@@ -0,0 +1,373 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.dto.MediaGcReportDTO;
+import com.alkmanistik.alkify_music_api.model.MediaFile;
+import com.alkmanistik.alkify_music_api.repository.AlbumRepository;
+import com.alkmanistik.alkify_music_api.repository.ArtistRepository;
+import com.alkmanistik.alkify_music_api.repository.MediaFileRepository;
+import com.alkmanistik.alkify_music_api.repository.TrackRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import com.alkmanistik.alkify_music_api.storage.MediaLayout;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Фоновая уборка файлов, на которые не ссылается ни трек, ни альбом, ни артист.
+ * Каталог обходится порциями по имени файла (курсор между запусками), ссылки проверяются одним запросом на порцию.
+ * Молодые файлы не трогаем: загрузка могла еще не закоммитить свою транзакцию.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MediaGarbageCollector {
+
+    static final String QUARANTINE_DIR = ".quarantine";
+
+    private static final int MAX_SAMPLES = 100;
+    // Производные файлы рядом с аудио: живут, пока живет само аудио
+    private static final List<String> SIDECAR_EXTENSIONS = List.of(SeekIndexService.EXTENSION, WaveformService.EXTENSION);
+    private static final List<String> TEMP_PREFIXES = List.of(".upload-", ".seek-", ".peaks-", ".variant-", ".fetch-", ".peer-");
+
+    private final TrackRepository trackRepository;
+    private final AlbumRepository albumRepository;
+    private final ArtistRepository artistRepository;
+    private final MediaFileRepository mediaFileRepository;
+    private final FileService fileService;
+    private final MediaLayout mediaLayout;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<String, String> cursors = new ConcurrentHashMap<>();
+    private final Map<String, MediaGcReportDTO> currentPasses = new ConcurrentHashMap<>();
+    private final Map<String, MediaGcReportDTO> lastPasses = new ConcurrentHashMap<>();
+
+    @Value("${project.images}")
+    private String imagePath;
+
+    @Value("${project.audios}")
+    private String audioPath;
+
+    @Value("${project.gc.enabled}")
+    private boolean enabled;
+
+    @Value("${project.gc.dry-run}")
+    private boolean dryRun;
+
+    @Value("${project.gc.batch-size}")
+    private int batchSize;
+
+    @Value("${project.gc.grace-period}")
+    private Duration gracePeriod;
+
+    @Value("${project.gc.quarantine}")
+    private boolean quarantine;
+
+    @Value("${project.gc.quarantine-retention}")
+    private Duration quarantineRetention;
+
+    @Value("${project.gc.max-files-per-second}")
+    private int maxFilesPerSecond;
+
+    @Scheduled(fixedDelayString = "${project.gc.interval}", initialDelayString = "${project.gc.interval}")
+    public synchronized void sweep() {
+        if (!enabled) {
+            return;
+        }
+        for (String path : List.of(imagePath, audioPath)) {
+            try {
+                sweepBatch(path);
+            } catch (IOException | RuntimeException e) {
+                log.error("Media GC failed for {}", path, e);
+            }
+        }
+    }
+
+    /**
+     * Полный проход по каталогам без удаления - что было бы убрано при текущих настройках.
+     */
+    public List<MediaGcReportDTO> dryRunReport() throws IOException {
+        List<MediaGcReportDTO> reports = new ArrayList<>();
+        for (String path : List.of(imagePath, audioPath)) {
+            MediaGcReportDTO report = new MediaGcReportDTO(path, true);
+            String cursor = null;
+            List<Path> batch;
+            do {
+                batch = nextBatch(Paths.get(path), cursor, batchSize);
+                if (!batch.isEmpty()) {
+                    process(path, batch, true, report);
+                    cursor = cursorOf(Paths.get(path), batch);
+                }
+            } while (batch.size() == batchSize);
+            report.setFinishedAt(LocalDateTime.now());
+            reports.add(report);
+        }
+        return reports;
+    }
+
+    /**
+     * @return итоги последних завершенных проходов по каждому каталогу
+     */
+    public Collection<MediaGcReportDTO> lastReports() {
+        return lastPasses.values();
+    }
+
+    private void sweepBatch(String path) throws IOException {
+        Path dir = Paths.get(path);
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        MediaGcReportDTO report = currentPasses.computeIfAbsent(path, key -> new MediaGcReportDTO(key, dryRun));
+        List<Path> batch = nextBatch(dir, cursors.get(path), batchSize);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            process(path, batch, dryRun, report);
+        } finally {
+            sample.stop(meterRegistry.timer("media.gc.batch", "directory", path));
+        }
+
+        if (batch.size() < batchSize) {
+            // Дошли до конца каталога - проход завершен, следующий начнется сначала
+            if (!dryRun && quarantine) {
+                report.setPurgedFromQuarantine(purgeQuarantine(dir));
+            }
+            report.setFinishedAt(LocalDateTime.now());
+            lastPasses.put(path, report);
+            currentPasses.remove(path);
+            cursors.remove(path);
+            log.info("Media GC pass over {} finished: scanned {}, orphaned {} ({} bytes), reclaimed {}, dry run: {}",
+                    path, report.getScannedFiles(), report.getOrphanedFiles(), report.getOrphanedBytes(),
+                    report.getReclaimedFiles(), report.isDryRun());
+        } else {
+            cursors.put(path, cursorOf(dir, batch));
+        }
+    }
+
+    /**
+     * Следующие по порядку файлы после курсора - и в корне, и в каталогах шардов.
+     * В памяти держим не больше limit путей, сколько бы файлов ни было.
+     */
+    private List<Path> nextBatch(Path dir, String after, int limit) throws IOException {
+        return mediaLayout.listFiles(dir.toString(), after, limit);
+    }
+
+    private String cursorOf(Path dir, List<Path> batch) {
+        return mediaLayout.relativeName(dir.toString(), batch.getLast());
+    }
+
+    private void process(String path, List<Path> batch, boolean dryRun, MediaGcReportDTO report) throws IOException {
+        long threshold = System.currentTimeMillis() - gracePeriod.toMillis();
+
+        // Сайдкары (<аудио>.seek) живут, пока живет их аудио
+        Map<String, Path> candidates = new LinkedHashMap<>();
+        for (Path file : batch) {
+            String name = file.getFileName().toString();
+            if (name.startsWith(".")) {
+                if (isStaleTempFile(file, name, threshold)) {
+                    report.setStaleTempFiles(report.getStaleTempFiles() + 1);
+                    if (!dryRun) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+                continue;
+            }
+            if (Files.isRegularFile(file)) {
+                candidates.put(name, file);
+            }
+        }
+        report.setScannedFiles(report.getScannedFiles() + candidates.size());
+        meterRegistry.counter("media.gc.scanned", "directory", path).increment(candidates.size());
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        Set<String> referenceNames = candidates.keySet().stream()
+                .map(this::referenceName)
+                .collect(Collectors.toSet());
+        Set<String> referenced = findReferenced(path, referenceNames);
+        Map<String, MediaFile> mediaFiles = mediaFileRepository.findByDirectoryAndFileNameIn(path, candidates.keySet())
+                .stream()
+                .collect(Collectors.toMap(MediaFile::getFileName, Function.identity()));
+
+        for (Map.Entry<String, Path> candidate : candidates.entrySet()) {
+            String name = candidate.getKey();
+            if (referenced.contains(referenceName(name))) {
+                continue;
+            }
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(candidate.getValue(), BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            if (lastTouched(attributes, mediaFiles.get(name)) > threshold) {
+                continue;
+            }
+
+            report.setOrphanedFiles(report.getOrphanedFiles() + 1);
+            report.setOrphanedBytes(report.getOrphanedBytes() + attributes.size());
+            if (report.getOrphanSamples().size() < MAX_SAMPLES) {
+                report.getOrphanSamples().add(name);
+            }
+            if (dryRun) {
+                meterRegistry.counter("media.gc.orphans", "directory", path, "action", "dry-run").increment();
+                continue;
+            }
+            if (reclaim(path, name, candidate.getValue(), threshold)) {
+                report.setReclaimedFiles(report.getReclaimedFiles() + 1);
+                meterRegistry.counter("media.gc.orphans", "directory", path,
+                        "action", quarantine ? "quarantined" : "removed").increment();
+                meterRegistry.counter("media.gc.reclaimed.bytes", "directory", path).increment(attributes.size());
+                throttle();
+            }
+        }
+    }
+
+    /**
+     * Перепроверяет ссылку под блокировкой имени: между выборкой и удалением файл могли загрузить заново.
+     */
+    private boolean reclaim(String path, String name, Path file, long threshold) throws IOException {
+        Lock lock = fileService.lockFor(path, name);
+        lock.lock();
+        try {
+            Boolean reclaimed = transactionTemplate.execute(status -> {
+                try {
+                    return reclaimLocked(path, name, file, threshold);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return Boolean.TRUE.equals(reclaimed);
+        } catch (UncheckedIOException e) {
+            if (e.getCause() instanceof NoSuchFileException) {
+                return false;
+            }
+            throw e.getCause();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Строка media_files блокируется до проверки ссылок: повторная загрузка того же содержимого держит ее
+     * до своего коммита, и сборщик дождется его, а не удалит файл, на который вот-вот сошлется новый трек.
+     */
+    private boolean reclaimLocked(String path, String name, Path file, long threshold) throws IOException {
+        MediaFile mediaFile = mediaFileRepository.findForUpdate(path, name).orElse(null);
+        if (isReferenced(path, referenceName(name))) {
+            return false;
+        }
+        if (lastTouched(Files.readAttributes(file, BasicFileAttributes.class), mediaFile) > threshold) {
+            return false;
+        }
+        if (sidecarExtension(name) != null) {
+            Files.deleteIfExists(file);
+        } else {
+            fileService.removeOrphan(path, name, quarantine ? Paths.get(path).resolve(QUARANTINE_DIR) : null);
+        }
+        log.info("Media GC {} orphan {}{}", quarantine ? "quarantined" : "removed", path, name);
+        return true;
+    }
+
+    private long purgeQuarantine(Path dir) throws IOException {
+        Path quarantineDir = dir.resolve(QUARANTINE_DIR);
+        long threshold = System.currentTimeMillis() - quarantineRetention.toMillis();
+        long purged = 0;
+        String cursor = null;
+        List<Path> batch;
+        do {
+            batch = nextBatch(quarantineDir, cursor, batchSize);
+            for (Path file : batch) {
+                if (Files.getLastModifiedTime(file).toMillis() < threshold && Files.deleteIfExists(file)) {
+                    purged++;
+                    throttle();
+                }
+            }
+            if (!batch.isEmpty()) {
+                cursor = cursorOf(quarantineDir, batch);
+            }
+        } while (batch.size() == batchSize);
+        return purged;
+    }
+
+    private Set<String> findReferenced(String path, Collection<String> names) {
+        if (path.equals(audioPath)) {
+            return new HashSet<>(trackRepository.findReferencedAudioFiles(names));
+        }
+        Set<String> referenced = new HashSet<>(albumRepository.findReferencedImageFiles(names));
+        referenced.addAll(artistRepository.findReferencedImageFiles(names));
+        return referenced;
+    }
+
+    private boolean isReferenced(String path, String name) {
+        if (path.equals(audioPath)) {
+            return trackRepository.existsByAudioFilePath(name);
+        }
+        return albumRepository.existsByImageFilePath(name) || artistRepository.existsByImageFilePath(name);
+    }
+
+    private String referenceName(String name) {
+        String extension = sidecarExtension(name);
+        return extension != null ? name.substring(0, name.length() - extension.length()) : name;
+    }
+
+    private String sidecarExtension(String name) {
+        return SIDECAR_EXTENSIONS.stream()
+                .filter(name::endsWith)
+                .findFirst()
+                .orElse(null);
+    }
+
+    // Повторная загрузка того же содержимого не меняет mtime, зато обновляет запись в media_files
+    private long lastTouched(BasicFileAttributes attributes, MediaFile mediaFile) {
+        long touched = attributes.lastModifiedTime().toMillis();
+        if (mediaFile != null && mediaFile.getUpdatedAt() != null) {
+            touched = Math.max(touched, mediaFile.getUpdatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        return touched;
+    }
+
+    private boolean isStaleTempFile(Path file, String name, long threshold) throws IOException {
+        if (!name.endsWith(".tmp") || TEMP_PREFIXES.stream().noneMatch(name::startsWith)) {
+            return false;
+        }
+        try {
+            return Files.getLastModifiedTime(file).toMillis() < threshold;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private void throttle() throws InterruptedIOException {
+        if (maxFilesPerSecond <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(1000L / maxFilesPerSecond);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Media GC interrupted");
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Справедливое распределение полосы и чтения с диска между потоками отдачи медиа.
+ * <p>
+ * Каждый поток ограничен своим token bucket, все потоки одного пользователя (или адреса, если он анонимен) -
+ * общим ведром, а чтение с диска - глобальным бюджетом. Интерактивные запросы (перемотка, обложки)
+ * могут брать бюджет в долг, массовые (архивы альбомов, целые файлы без Range) ждут, пока в нем не останется
+ * резерв для интерактивных. Начальный запас ведра отдает первые куски без задержки,
+ * так что время до первого байта не растет под нагрузкой.
+ * <p>
+ * Ведро пользователя живет, пока к нему обращаются, и еще {@code idle-bucket-ttl} после этого: иначе серия коротких
+ * запросов подряд каждый раз получала бы новое полное ведро.
+ */
+@Slf4j
+@Service
+public class MediaIoScheduler {
+
+    // Атрибут запроса, которым вызывающий код помечает массовую отдачу
+    static final String BULK_ATTR = MediaIoScheduler.class.getName() + ".bulk";
+
+    private static final int MAX_USER_BUCKETS = 100_000;
+
+    public enum Priority {
+        INTERACTIVE, BULK
+    }
+
+    private final ScheduledExecutorService resumeExecutor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("media-io-resume").daemon().factory());
+    private final Cache<String, TokenBucket> userBuckets;
+    private final Map<Priority, AtomicInteger> activeStreams = new EnumMap<>(Priority.class);
+    private final Map<Priority, Counter> bytesCounters = new EnumMap<>(Priority.class);
+    private final Map<Priority, Timer> pauseTimers = new EnumMap<>(Priority.class);
+    private final TokenBucket diskBucket;
+    private final long bulkFloor;
+
+    @Value("${project.streaming.io-scheduler.enabled}")
+    private boolean enabled;
+
+    @Value("${project.streaming.io-scheduler.per-connection}")
+    private DataSize perConnection;
+
+    @Value("${project.streaming.io-scheduler.per-user}")
+    private DataSize perUser;
+
+    @Value("${project.streaming.io-scheduler.burst}")
+    private DataSize burst;
+
+    @Value("${project.streaming.io-scheduler.bulk-min-size}")
+    private DataSize bulkMinSize;
+
+    public MediaIoScheduler(MeterRegistry meterRegistry,
+                            @Value("${project.streaming.io-scheduler.disk-budget}") DataSize diskBudget,
+                            @Value("${project.streaming.io-scheduler.bulk-share}") double bulkShare,
+                            @Value("${project.streaming.io-scheduler.idle-bucket-ttl}") Duration idleBucketTtl) {
+        if (bulkShare <= 0 || bulkShare > 1) {
+            throw new IllegalArgumentException("Bulk share must be in (0, 1]: " + bulkShare);
+        }
+        // Глобальное ведро вмещает секунду чтения, массовым потокам достается только его верхняя доля
+        this.diskBucket = new TokenBucket(diskBudget.toBytes(), diskBudget.toBytes());
+        this.bulkFloor = (long) (diskBudget.toBytes() * (1 - bulkShare));
+        this.userBuckets = Caffeine.newBuilder()
+                .expireAfterAccess(idleBucketTtl)
+                .maximumSize(MAX_USER_BUCKETS)
+                .build();
+        for (Priority priority : Priority.values()) {
+            String tag = priority.name().toLowerCase(Locale.ROOT);
+            AtomicInteger active = new AtomicInteger();
+            activeStreams.put(priority, active);
+            meterRegistry.gauge("media.io.streams", Tags.of("priority", tag), active);
+            bytesCounters.put(priority, meterRegistry.counter("media.io.bytes", "priority", tag));
+            pauseTimers.put(priority, meterRegistry.timer("media.io.pause", "priority", tag));
+        }
+        meterRegistry.gauge("media.io.disk.tokens", diskBucket, TokenBucket::available);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        resumeExecutor.shutdownNow();
+    }
+
+    /**
+     * Регистрирует поток отдачи. Вызывающий обязан закрыть его после последнего байта.
+     * @param contentLength объем тела; целый большой файл без Range считается скачиванием
+     */
+    public StreamPacer open(HttpServletRequest request, long contentLength) {
+        Priority priority = Boolean.TRUE.equals(request.getAttribute(BULK_ATTR))
+                || request.getHeader(HttpHeaders.RANGE) == null && contentLength >= bulkMinSize.toBytes()
+                ? Priority.BULK
+                : Priority.INTERACTIVE;
+        activeStreams.get(priority).incrementAndGet();
+        if (!enabled) {
+            return new StreamPacer(priority, null, null);
+        }
+        return new StreamPacer(priority, new TokenBucket(perConnection.toBytes(), burst.toBytes()), userKey(request));
+    }
+
+    private String userKey(HttpServletRequest request) {
+        // Медиа отдается по подписанным ссылкам без JWT, поэтому обычно ключом служит адрес клиента.
+        // За прокси это адрес из X-Forwarded-For (server.forward-headers-strategy)
+        Principal principal = request.getUserPrincipal();
+        return principal != null ? "user:" + principal.getName() : "addr:" + request.getRemoteAddr();
+    }
+
+    private TokenBucket userBucket(String userKey) {
+        return userBuckets.get(userKey, key -> new TokenBucket(perUser.toBytes(), burst.toBytes()));
+    }
+
+    private void release(StreamPacer pacer) {
+        activeStreams.get(pacer.priority).decrementAndGet();
+    }
+
+    /**
+     * Ограничитель одного потока. Списывать байты может только тот, кто пишет ответ, закрывать - кто угодно.
+     */
+    public final class StreamPacer implements AutoCloseable {
+
+        private final Priority priority;
+        private final TokenBucket connection;
+        private final String userKey;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private StreamPacer(Priority priority, TokenBucket connection, String userKey) {
+            this.priority = priority;
+            this.connection = connection;
+            this.userKey = userKey;
+        }
+
+        public Priority priority() {
+            return priority;
+        }
+
+        /**
+         * @return false, если поток ограничен и отдавать его надо кусками
+         */
+        public boolean isUnlimited() {
+            return connection == null;
+        }
+
+        /**
+         * sendfile отдает диапазон целиком мимо приложения, паузу между кусками в нем не сделать. Поэтому
+         * интерактивный запрос берет весь диапазон в долг у ведер пользователя и диска, если они сейчас не в минусе.
+         * Долг отдают следующие запросы того же пользователя: пока он не погашен, они идут кусками с паузами.
+         * @return false, если ничего не списано и отдавать надо кусками через {@link #reserve}
+         */
+        public boolean tryReserveAll(long bytes) {
+            if (!isUnlimited()) {
+                if (priority == Priority.BULK) {
+                    return false;
+                }
+                // Ведро берется из кеша при каждом списании, чтобы длинный поток продлевал ему жизнь
+                TokenBucket user = userBucket(userKey);
+                if (!user.tryBorrow(bytes)) {
+                    return false;
+                }
+                if (!diskBucket.tryBorrow(bytes)) {
+                    user.refund(bytes);
+                    return false;
+                }
+                connection.reserve(bytes, 0);
+            }
+            bytesCounters.get(priority).increment(bytes);
+            return true;
+        }
+
+        /**
+         * Списывает отданные байты со всех ведер.
+         * @param fromDisk байты прочитаны с диска, а не из памяти
+         * @return сколько наносекунд подождать перед следующим куском
+         */
+        public long reserve(long bytes, boolean fromDisk) {
+            bytesCounters.get(priority).increment(bytes);
+            if (isUnlimited()) {
+                return 0;
+            }
+            long delay = Math.max(connection.reserve(bytes, 0), userBucket(userKey).reserve(bytes, 0));
+            if (fromDisk) {
+                delay = Math.max(delay, diskBucket.reserve(bytes, priority == Priority.BULK ? bulkFloor : 0));
+            }
+            if (delay > 0) {
+                pauseTimers.get(priority).record(delay, TimeUnit.NANOSECONDS);
+            }
+            return delay;
+        }
+
+        /**
+         * Возобновляет отдачу после паузы, не занимая поток на время ожидания.
+         */
+        void resumeAfter(long delayNanos, Runnable task) {
+            resumeExecutor.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release(this);
+            }
+        }
+    }
+
+    /**
+     * Token bucket со скоростью rate байт/с и емкостью capacity. Списание всегда проходит сразу, ведро может уйти
+     * в минус; ожидание - время, за которое уровень поднимется обратно до порога.
+     */
+    static final class TokenBucket {
+
+        private final double ratePerNano;
+        private final long capacity;
+        private double tokens;
+        private long updatedAt = System.nanoTime();
+
+        TokenBucket(long ratePerSecond, long capacity) {
+            if (ratePerSecond <= 0) {
+                throw new IllegalArgumentException("Rate must be positive: " + ratePerSecond);
+            }
+            this.ratePerNano = ratePerSecond / 1e9;
+            this.capacity = Math.max(1, capacity);
+            this.tokens = this.capacity;
+        }
+
+        /**
+         * @param floor уровень, ниже которого ведро считается пустым для вызывающего
+         * @return задержка в наносекундах
+         */
+        synchronized long reserve(long bytes, long floor) {
+            refill();
+            tokens -= bytes;
+            return tokens >= floor ? 0 : (long) ((floor - tokens) / ratePerNano);
+        }
+
+        /**
+         * Списывает в долг, только если ведро сейчас не в минусе.
+         */
+        synchronized boolean tryBorrow(long bytes) {
+            refill();
+            if (tokens < 0) {
+                return false;
+            }
+            tokens -= bytes;
+            return true;
+        }
+
+        synchronized void refund(long bytes) {
+            refill();
+            tokens = Math.min(capacity, tokens + bytes);
+        }
+
+        synchronized double available() {
+            refill();
+            return tokens;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - updatedAt) * ratePerNano);
+            updatedAt = now;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.dto.MediaValidatorDTO;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.http.HttpServletRequest;
+import com.alkmanistik.alkify_music_api.service.MediaIoScheduler.StreamPacer;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MediaStreamingService {
+
+    private static final String BYTES = "bytes";
+
+    // Атрибуты Tomcat для отдачи файла через sendfile (см. org.apache.catalina.Globals)
+    static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_FILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_FILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private final MediaIoScheduler mediaIoScheduler;
+
+    @Value("${project.streaming.sendfile.enabled}")
+    private boolean sendfileEnabled;
+
+    @Value("${project.streaming.sendfile.min-size}")
+    private DataSize sendfileMinSize;
+
+    @Value("${project.streaming.async.enabled}")
+    private boolean asyncEnabled;
+
+    @Value("${project.streaming.async.chunk-size}")
+    private DataSize asyncChunkSize;
+
+    @Value("${project.streaming.async.timeout}")
+    private Duration asyncTimeout;
+
+    public void stream(Path file, MediaType contentType, MediaValidatorDTO validators,
+                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = Files.size(file);
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, BYTES);
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        List<Region> regions = rangeHeader != null && rangeHeader.startsWith(BYTES + "=")
+                && isIfRangeSatisfied(request, validators)
+                ? parseRanges(rangeHeader, length)
+                : null;
+        if (regions == null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(contentType.toString());
+            response.setContentLengthLong(length);
+            if (!isHead(request)) {
+                writeRegion(file, new Region(0, length), request, response);
+            }
+            return;
+        }
+
+        if (regions.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, BYTES + " */" + length);
+            response.setContentLength(0);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        if (regions.size() == 1) {
+            Region region = regions.getFirst();
+            response.setContentType(contentType.toString());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, region.contentRange(length));
+            response.setContentLengthLong(region.count());
+            if (!isHead(request)) {
+                writeRegion(file, region, request, response);
+            }
+            return;
+        }
+
+        writeMultipart(file, contentType, regions, length, request, response);
+    }
+
+    /**
+     * Отдает отрезок трека, начинающийся с границы кадра. Диапазоны к отрезку не применяются.
+     */
+    public void streamClip(Path file, MediaType contentType, SeekIndexService.Clip clip,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(contentType.toString());
+        response.setContentLengthLong(clip.length());
+        if (isHead(request)) {
+            return;
+        }
+
+        Region region = new Region(clip.start(), clip.end() - clip.start());
+        if (clip.prefix().length == 0) {
+            writeRegion(file, region, request, response);
+            return;
+        }
+        writeSegments(file, List.of(new Bytes(ByteBuffer.wrap(clip.prefix())), region), request, response);
+    }
+
+    /**
+     * Отдает ответ, собранный из нескольких файлов и служебных байтов (например, ZIP-архив альбома).
+     */
+    void streamSegments(MediaType contentType, long contentLength, List<Segment> segments,
+                        HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(contentType.toString());
+        response.setContentLengthLong(contentLength);
+        if (!isHead(request)) {
+            request.setAttribute(MediaIoScheduler.BULK_ATTR, true);
+            writeSegments(null, segments, request, response);
+        }
+    }
+
+    /**
+     * Отдает уже загруженное в память содержимое (например, из кеша обложек).
+     */
+    public void streamBytes(ByteBuffer content, String contentType,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(contentType);
+        response.setContentLength(content.remaining());
+        if (!isHead(request)) {
+            writeSegments(null, List.of(new Bytes(content)), request, response);
+        }
+    }
+
+    private void writeMultipart(Path file, MediaType contentType, List<Region> regions, long length,
+                                HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String boundary = new String(MimeTypeUtils.generateMultipartBoundary(), StandardCharsets.US_ASCII);
+
+        // Заголовки частей считаем заранее, чтобы отдать точный Content-Length
+        List<Segment> segments = new ArrayList<>(regions.size() * 2 + 1);
+        long contentLength = 0;
+        for (Region region : regions) {
+            byte[] header = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + region.contentRange(length) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            segments.add(new Bytes(ByteBuffer.wrap(header)));
+            segments.add(region);
+            contentLength += header.length + region.count();
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        segments.add(new Bytes(ByteBuffer.wrap(closing)));
+        contentLength += closing.length;
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (isHead(request)) {
+            return;
+        }
+
+        writeSegments(file, segments, request, response);
+    }
+
+    private void writeRegion(Path file, Region region,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        StreamPacer pacer = mediaIoScheduler.open(request, region.count());
+        if (trySendfile(file, region, pacer, request)) {
+            pacer.close();
+            return;
+        }
+        writeSegments(file, List.of(region), pacer, request, response);
+    }
+
+    /**
+     * Передает отдачу файла коннектору Tomcat: данные идут из page cache в сокет без копирования в user space.
+     * Работает только для одного непрерывного диапазона и если в тело ответа еще ничего не писали.
+     * Темп отдачи sendfile не держит, поэтому диапазон целиком списывается с бюджетов планировщика заранее.
+     */
+    private boolean trySendfile(Path file, Region region, StreamPacer pacer,
+                                HttpServletRequest request) throws IOException {
+        if (!sendfileEnabled
+                || region.count() < sendfileMinSize.toBytes()
+                || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))
+                || !pacer.tryReserveAll(region.count())) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_FILENAME_ATTR, file.toRealPath().toString());
+        request.setAttribute(SENDFILE_FILE_START_ATTR, region.start());
+        // Tomcat ожидает конец диапазона не включительно
+        request.setAttribute(SENDFILE_FILE_END_ATTR, region.end() + 1);
+        return true;
+    }
+
+    private void writeSegments(Path file, List<Segment> segments,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long contentLength = segments.stream()
+                .mapToLong(segment -> switch (segment) {
+                    case Bytes bytes -> bytes.content().remaining();
+                    case Region region -> region.count();
+                    case FileRegion part -> part.count();
+                })
+                .sum();
+        writeSegments(file, segments, mediaIoScheduler.open(request, contentLength), request, response);
+    }
+
+    private void writeSegments(Path file, List<Segment> segments, StreamPacer pacer,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (asyncEnabled && request.isAsyncSupported()) {
+            // Поток воркера освобождается сразу, дальше пишем только когда сокет готов принять данные
+            FileChannel channel = null;
+            AsyncContext asyncContext;
+            try {
+                channel = file != null ? FileChannel.open(file, StandardOpenOption.READ) : null;
+                asyncContext = request.startAsync(request, response);
+            } catch (IOException | RuntimeException e) {
+                pacer.close();
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException closeError) {
+                        e.addSuppressed(closeError);
+                    }
+                }
+                throw e;
+            }
+            asyncContext.setTimeout(asyncTimeout.toMillis());
+            new AsyncMediaWriter(asyncContext, channel, segments, (int) asyncChunkSize.toBytes(), pacer).start();
+            return;
+        }
+
+        try (pacer; FileChannel channel = file != null ? FileChannel.open(file, StandardOpenOption.READ) : null) {
+            OutputStream os = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(os);
+            for (Segment segment : segments) {
+                switch (segment) {
+                    case Bytes bytes -> {
+                        ByteBuffer content = bytes.content().duplicate();
+                        while (content.hasRemaining()) {
+                            target.write(content);
+                        }
+                        pause(pacer.reserve(bytes.content().remaining(), false));
+                    }
+                    case Region region -> transfer(channel, region, target, pacer);
+                    case FileRegion part -> {
+                        try (FileChannel partChannel = FileChannel.open(part.file(), StandardOpenOption.READ)) {
+                            transfer(partChannel, new Region(part.start(), part.count()), target, pacer);
+                        }
+                    }
+                }
+            }
+            os.flush();
+        }
+    }
+
+    private void transfer(FileChannel channel, Region region, WritableByteChannel target,
+                          StreamPacer pacer) throws IOException {
+        // Ограниченный поток отдаем кусками, чтобы между ними выдерживать паузы планировщика
+        long step = pacer.isUnlimited() ? Long.MAX_VALUE : asyncChunkSize.toBytes();
+        long position = region.start();
+        long remaining = region.count();
+        while (remaining > 0) {
+            long transferred = channel.transferTo(position, Math.min(remaining, step), target);
+            if (transferred <= 0) {
+                // Файл укоротили во время отдачи
+                throw new IOException("Unexpected end of file at position " + position);
+            }
+            position += transferred;
+            remaining -= transferred;
+            pause(pacer.reserve(transferred, true));
+        }
+    }
+
+    private void pause(long nanos) throws IOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while streaming media", e);
+        }
+    }
+
+    /**
+     * @return удовлетворимые диапазоны (пустой список - 416) или null, если заголовок невалиден
+     * или диапазонов слишком много: такой Range игнорируется и отдается весь файл (RFC 9110, 14.2)
+     */
+    private List<Region> parseRanges(String rangeHeader, long length) {
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException ex) {
+            log.debug("Ignoring invalid Range header '{}': {}", rangeHeader, ex.getMessage());
+            return null;
+        }
+
+        List<Region> regions = new ArrayList<>(ranges.size());
+        for (HttpRange range : ranges) {
+            try {
+                long start = range.getRangeStart(length);
+                long end = range.getRangeEnd(length);
+                // "bytes=-0" и диапазоны пустого файла дают пустой регион - он тоже неудовлетворим
+                if (end >= start) {
+                    regions.add(new Region(start, end - start + 1));
+                }
+            } catch (IllegalArgumentException ignored) {
+                // Неудовлетворимые диапазоны пропускаем, 416 - только если не осталось ни одного
+            }
+        }
+        return coalesce(regions);
+    }
+
+    private List<Region> coalesce(List<Region> regions) {
+        if (regions.size() < 2) {
+            return regions;
+        }
+        List<Region> sorted = new ArrayList<>(regions);
+        sorted.sort(Comparator.comparingLong(Region::start));
+        List<Region> result = new ArrayList<>();
+        Region current = sorted.getFirst();
+        for (Region next : sorted.subList(1, sorted.size())) {
+            if (next.start() <= current.end() + 1) {
+                long end = Math.max(current.end(), next.end());
+                current = new Region(current.start(), end - current.start() + 1);
+            } else {
+                result.add(current);
+                current = next;
+            }
+        }
+        result.add(current);
+        return result;
+    }
+
+    private boolean isIfRangeSatisfied(HttpServletRequest request, MediaValidatorDTO validators) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range допускает только строгое сравнение ETag
+            return ifRange.equals(validators.getEtag());
+        }
+        try {
+            long since = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return since == validators.getLastModified() / 1000 * 1000;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    private boolean isHead(HttpServletRequest request) {
+        return "HEAD".equalsIgnoreCase(request.getMethod());
+    }
+
+    sealed interface Segment permits Bytes, Region, FileRegion {
+    }
+
+    record FileRegion(Path file, long start, long count) implements Segment {
+    }
+
+    record Bytes(ByteBuffer content) implements Segment {
+    }
+
+    record Region(long start, long count) implements Segment {
+
+        long end() {
+            return start + count - 1;
+        }
+
+        String contentRange(long length) {
+            return BYTES + " " + start + "-" + end() + "/" + length;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Подписанные ссылки на медиа: {@code /api/v1/files/audios/<name>?expires=<epoch>&signature=<hmac>}.
+ * Проверка - один HMAC-SHA256 без обращений к БД и Redis.
+ * <p>
+ * Срок действия выравнивается по окну в половину {@code lifetime}: в пределах окна ссылка на файл одна и та же
+ * (ее можно кешировать в браузере и CDN), а выданная ссылка живет от половины до полного {@code lifetime}.
+ * Кеш DTO со ссылками хранится не дольше {@link #cacheTtl()}, поэтому из кеша не уходит ссылка,
+ * которой осталось меньше четверти срока.
+ */
+@Service
+public class MediaUrlService {
+
+    public static final String FILES_PATH = "/api/v1/files/";
+    public static final String AUDIOS = "audios";
+    public static final String IMAGES = "images";
+    public static final String WAVEFORMS = "waveforms";
+    public static final String ALBUMS_PATH = "/api/v1/albums/";
+    public static final String DOWNLOAD = "/download";
+    public static final String EXPIRES_PARAM = "expires";
+    public static final String SIGNATURE_PARAM = "signature";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    // 128 бит HMAC достаточно и заметно укорачивает ссылку
+    private static final int SIGNATURE_BYTES = 16;
+
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+    private SecretKeySpec key;
+
+    @Value("${project.media-urls.enabled}")
+    private boolean enabled;
+
+    @Value("${project.media-urls.secret:}")
+    private String secret;
+
+    @Value("${project.media-urls.lifetime}")
+    private Duration lifetime;
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("project.media-urls.secret must be set when signed media URLs are enabled");
+        }
+        key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return ссылка на файл или, если подпись выключена, имя файла как раньше; null для null
+     */
+    public String sign(String kind, String fileName) {
+        if (fileName == null) {
+            return null;
+        }
+        if (!enabled) {
+            return fileName;
+        }
+        return signPath(FILES_PATH + kind + "/" + fileName);
+    }
+
+    public String signAudio(String fileName) {
+        return sign(AUDIOS, fileName);
+    }
+
+    public String signImage(String fileName) {
+        return sign(IMAGES, fileName);
+    }
+
+    /**
+     * Архив альбома отдает все его аудио, поэтому закрыт той же подписью, что и сами файлы.
+     * @return ссылка на скачивание; без подписи - просто путь
+     */
+    public String signAlbumDownload(Long albumId) {
+        if (albumId == null) {
+            return null;
+        }
+        String path = ALBUMS_PATH + albumId + DOWNLOAD;
+        return enabled ? signPath(path) : path;
+    }
+
+    private String signPath(String path) {
+        long expires = expiresAt(System.currentTimeMillis() / 1000);
+        return path + "?" + EXPIRES_PARAM + "=" + expires + "&" + SIGNATURE_PARAM + "=" + signature(path, expires);
+    }
+
+    /**
+     * Пики формы волны не защищаются подписью: это несколько килобайт огибающей, а не само аудио.
+     */
+    public String waveformUrl(String audioName) {
+        return audioName != null ? FILES_PATH + WAVEFORMS + "/" + audioName : null;
+    }
+
+    /**
+     * @param path путь запроса без контекста приложения, например {@code /api/v1/files/audios/<name>}
+     */
+    public boolean verify(String path, String expires, String signature) {
+        if (expires == null || signature == null) {
+            return false;
+        }
+        long expiresAt;
+        try {
+            expiresAt = Long.parseLong(expires);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (expiresAt < System.currentTimeMillis() / 1000) {
+            return false;
+        }
+        byte[] expected = signatureBytes(path, expiresAt);
+        byte[] presented;
+        try {
+            presented = Base64.getUrlDecoder().decode(signature);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return MessageDigest.isEqual(expected, presented);
+    }
+
+    /**
+     * @return предельный срок хранения в кеше ответов, содержащих подписанные ссылки
+     */
+    public Duration cacheTtl() {
+        return lifetime.dividedBy(4);
+    }
+
+    // Конец окна, следующего за текущим: от половины до полного lifetime с момента выдачи
+    private long expiresAt(long nowSeconds) {
+        long window = Math.max(1, lifetime.toSeconds() / 2);
+        return (nowSeconds / window + 2) * window;
+    }
+
+    private String signature(String path, long expires) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(signatureBytes(path, expires));
+    }
+
+    private byte[] signatureBytes(String path, long expires) {
+        Mac mac = macs.get();
+        byte[] digest = mac.doFinal((path + "\n" + expires).getBytes(StandardCharsets.UTF_8));
+        return Arrays.copyOf(digest, SIGNATURE_BYTES);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not supported", e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.dto.MediaValidatorDTO;
+import com.alkmanistik.alkify_music_api.model.MediaFile;
+import com.alkmanistik.alkify_music_api.repository.MediaFileRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.http.CacheControl;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Service
+@RequiredArgsConstructor
+public class MediaValidatorService {
+
+    // Имена файлов - UUID и никогда не переиспользуются, поэтому содержимое по URL не меняется
+    public static final CacheControl IMMUTABLE = CacheControl
+            .maxAge(Duration.ofDays(365))
+            .cachePublic()
+            .immutable();
+
+    private final MediaFileRepository mediaFileRepository;
+    private final FileService fileService;
+
+    @Cacheable(value = "media.validators", key = "{#path, #fileName}", sync = true)
+    public MediaValidatorDTO getValidators(String path, String fileName) throws IOException {
+        MediaFile mediaFile = mediaFileRepository.findByDirectoryAndFileName(path, fileName)
+                .orElse(null);
+        if (mediaFile == null || mediaFile.getSha256() == null) {
+            mediaFile = computeValidators(path, fileName);
+        }
+        return toValidatorDTO(mediaFile);
+    }
+
+    private MediaFile computeValidators(String path, String fileName) throws IOException {
+        // Файлы, загруженные до появления media_files, хэшируем один раз и сохраняем
+        Path filePath = fileService.getExistingFile(path, fileName);
+        FileService.Checksums checksums = fileService.checksums(filePath);
+        return fileService.registerMediaFile(path, fileName, filePath, checksums);
+    }
+
+    private MediaValidatorDTO toValidatorDTO(MediaFile mediaFile) {
+        return new MediaValidatorDTO(
+                "\"" + mediaFile.getSha256() + "\"",
+                mediaFile.getLastModified(),
+                mediaFile.getSize()
+        );
+    }
+}
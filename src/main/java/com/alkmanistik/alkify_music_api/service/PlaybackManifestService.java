@@ -0,0 +1,162 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.dto.MediaValidatorDTO;
+import com.alkmanistik.alkify_music_api.dto.PlaybackItemDTO;
+import com.alkmanistik.alkify_music_api.dto.PlaybackManifestDTO;
+import com.alkmanistik.alkify_music_api.model.Album;
+import com.alkmanistik.alkify_music_api.model.Track;
+import com.alkmanistik.alkify_music_api.repository.AlbumRepository;
+import com.alkmanistik.alkify_music_api.repository.TrackRepository;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Манифест воспроизведения: упорядоченные подписанные ссылки на аудио с размером, длительностью, кодеком и ETag,
+ * чтобы плеер мог заранее и точно подгрузить следующий трек без проб каждого файла.
+ * <p>
+ * Первые треки дополнительно отдаются в {@code Link: rel=preload} - сразу, через 103 Early Hints, до того
+ * как посчитаны валидаторы остальных файлов, и повторно в заголовках итогового ответа.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PlaybackManifestService {
+
+    // Tomcat отдает 103 Early Hints с уже выставленными заголовками по sendError(103)
+    private static final int SC_EARLY_HINTS = 103;
+
+    private final AlbumRepository albumRepository;
+    private final TrackRepository trackRepository;
+    private final MediaValidatorService mediaValidatorService;
+    private final MediaUrlService mediaUrlService;
+
+    @Value("${project.audios}")
+    private String audioPath;
+
+    @Value("${project.playback.preload-count}")
+    private int preloadCount;
+
+    @Value("${project.playback.early-hints}")
+    private boolean earlyHints;
+
+    @Value("${project.playback.max-tracks}")
+    private int maxTracks;
+
+    @Transactional
+    public PlaybackManifestDTO forAlbum(Long albumId, HttpServletResponse response) throws IOException {
+        Album album = albumRepository.findById(albumId)
+                .orElseThrow(() -> new EntityNotFoundException("Album not found with id: " + albumId));
+        List<Track> tracks = Optional.ofNullable(album.getTracks()).orElseGet(List::of).stream()
+                .sorted(Comparator.comparing(Track::getId))
+                .toList();
+        return build(albumId, tracks, response);
+    }
+
+    /**
+     * Манифест для произвольного списка треков в порядке запроса; повторы и несуществующие id пропускаются.
+     */
+    @Transactional
+    public PlaybackManifestDTO forTracks(List<Long> trackIds, HttpServletResponse response) throws IOException {
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(trackIds));
+        if (ids.size() > maxTracks) {
+            throw new IllegalArgumentException("Manifest can contain at most " + maxTracks + " tracks");
+        }
+        Map<Long, Track> found = trackRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Track::getId, Function.identity()));
+        List<Track> tracks = ids.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .toList();
+        return build(null, tracks, response);
+    }
+
+    private PlaybackManifestDTO build(Long albumId, List<Track> tracks, HttpServletResponse response) throws IOException {
+        List<Track> playable = tracks.stream()
+                .filter(track -> track.getAudioFilePath() != null)
+                .toList();
+
+        List<String> urls = playable.stream()
+                .map(track -> mediaUrlService.signAudio(track.getAudioFilePath()))
+                .toList();
+        sendPreloadHints(playable, urls, response);
+
+        List<PlaybackItemDTO> items = new ArrayList<>(playable.size());
+        long totalSize = 0;
+        long totalDuration = 0;
+        for (int i = 0; i < playable.size(); i++) {
+            Track track = playable.get(i);
+            MediaValidatorDTO validators = mediaValidatorService.getValidators(audioPath, track.getAudioFilePath());
+            items.add(new PlaybackItemDTO(
+                    i + 1,
+                    track.getId(),
+                    track.getTitle(),
+                    urls.get(i),
+                    mediaUrlService.waveformUrl(track.getAudioFilePath()),
+                    validators.getSize(),
+                    track.getDurationSeconds(),
+                    track.getBitrate(),
+                    track.getSampleRate(),
+                    codecOf(track),
+                    mimeTypeOf(track).toString(),
+                    validators.getEtag()
+            ));
+            totalSize += validators.getSize();
+            totalDuration += track.getDurationSeconds();
+        }
+        return new PlaybackManifestDTO(albumId, totalSize, totalDuration, items);
+    }
+
+    private void sendPreloadHints(List<Track> tracks, List<String> urls, HttpServletResponse response) {
+        int count = Math.min(preloadCount, tracks.size());
+        if (count == 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            response.addHeader(HttpHeaders.LINK, "<" + urls.get(i) + ">; rel=preload; as=audio; type=\""
+                    + mimeTypeOf(tracks.get(i)) + "\"");
+        }
+        if (!earlyHints) {
+            return;
+        }
+        try {
+            response.sendError(SC_EARLY_HINTS);
+        } catch (IOException | IllegalStateException e) {
+            // Early Hints - только оптимизация: Link все равно уйдет в заголовках ответа
+            log.debug("Early hints not sent: {}", e.toString());
+        }
+    }
+
+    private String codecOf(Track track) {
+        if (track.getAudioFormat() != null) {
+            return track.getAudioFormat().toLowerCase(Locale.ROOT);
+        }
+        String fileName = track.getAudioFilePath();
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 ? fileName.substring(dot + 1).toLowerCase(Locale.ROOT) : null;
+    }
+
+    private MediaType mimeTypeOf(Track track) {
+        return MediaTypeFactory.getMediaType(track.getAudioFilePath())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+}
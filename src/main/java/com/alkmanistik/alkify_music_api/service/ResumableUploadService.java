@@ -0,0 +1,216 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.exception.ConflictException;
+import com.alkmanistik.alkify_music_api.model.UploadSession;
+import com.alkmanistik.alkify_music_api.repository.UploadSessionRepository;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Докачиваемая загрузка больших аудиофайлов (по мотивам tus): сессия, куски по смещению, финализация.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ResumableUploadService {
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final AudioIngestService audioIngestService;
+    private final Map<String, ReentrantLock> sessionLocks = new ConcurrentHashMap<>();
+
+    @Value("${project.uploads.path}")
+    private String uploadPath;
+
+    @Value("${project.uploads.max-length}")
+    private DataSize maxLength;
+
+    @Value("${project.uploads.expiration}")
+    private Duration expiration;
+
+    public UploadSession createSession(String fileName, long length) throws IOException {
+        if (fileName == null || fileName.isBlank() || fileName.lastIndexOf('.') < 0) {
+            throw new IllegalArgumentException("Original filename is invalid");
+        }
+        boolean isAudio = MediaTypeFactory.getMediaType(fileName)
+                .map(type -> "audio".equals(type.getType()))
+                .orElse(false);
+        if (!isAudio) {
+            throw new IllegalArgumentException("Only audio files are allowed");
+        }
+        if (length <= 0 || length > maxLength.toBytes()) {
+            throw new IllegalArgumentException("Upload length must be between 1 and " + maxLength.toBytes() + " bytes");
+        }
+
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setExtension(fileName.substring(fileName.lastIndexOf('.')));
+        session.setLength(length);
+        session.setUploadOffset(0);
+
+        // Резервируем место под весь файл сразу, куски потом пишутся по своим смещениям
+        Path partFile = partPath(session.getId());
+        Files.createDirectories(partFile.getParent());
+        try (RandomAccessFile file = new RandomAccessFile(partFile.toFile(), "rw")) {
+            file.setLength(length);
+        }
+
+        UploadSession savedSession = uploadSessionRepository.save(session);
+        log.info("Upload session {} created for {} bytes", savedSession.getId(), length);
+        return savedSession;
+    }
+
+    public UploadSession getSession(String id) {
+        return uploadSessionRepository.findById(id)
+                .orElseThrow(() -> new EntityNotFoundException("Upload session not found: " + id));
+    }
+
+    public UploadSession writeChunk(String id, long offset, InputStream body) throws IOException, ConflictException {
+        LockedSession locked = lockSession(id, "Upload " + id + " is already receiving a chunk");
+        try {
+            UploadSession session = locked.session();
+            if (offset != session.getUploadOffset()) {
+                throw new ConflictException("Upload offset mismatch: expected " + session.getUploadOffset());
+            }
+
+            long position = offset;
+            try (FileChannel channel = FileChannel.open(partPath(id), StandardOpenOption.WRITE);
+                 ReadableByteChannel source = Channels.newChannel(body)) {
+                try {
+                    long transferred;
+                    while (position < session.getLength()
+                            && (transferred = channel.transferFrom(source, position, session.getLength() - position)) > 0) {
+                        position += transferred;
+                    }
+                } finally {
+                    // Даже при обрыве соединения фиксируем то, что успели записать, - клиент продолжит с этого места
+                    channel.force(false);
+                    session.setUploadOffset(position);
+                    uploadSessionRepository.save(session);
+                }
+            }
+
+            if (position == session.getLength() && body.read() != -1) {
+                throw new IllegalArgumentException("Chunk exceeds declared upload length");
+            }
+            return session;
+        } finally {
+            locked.lock().unlock();
+        }
+    }
+
+    public String complete(String id) throws IOException, ConflictException {
+        LockedSession locked = lockSession(id, "Upload " + id + " is still receiving a chunk");
+        boolean ended = false;
+        try {
+            UploadSession session = locked.session();
+            if (session.getUploadOffset() != session.getLength()) {
+                throw new ConflictException("Upload is incomplete: " + session.getUploadOffset()
+                        + " of " + session.getLength() + " bytes received");
+            }
+
+            String fileName;
+            try {
+                fileName = audioIngestService.ingest(partPath(id)).fileName();
+            } catch (IllegalArgumentException e) {
+                // Содержимое не распознано как аудио - файл уже удален, докачивать нечего
+                uploadSessionRepository.delete(session);
+                ended = true;
+                throw e;
+            }
+            uploadSessionRepository.delete(session);
+            ended = true;
+            log.info("Upload session {} completed as {}", id, fileName);
+            return fileName;
+        } finally {
+            release(id, locked.lock(), ended);
+        }
+    }
+
+    public void abort(String id) throws IOException, ConflictException {
+        LockedSession locked = lockSession(id, "Upload " + id + " is receiving a chunk or being completed");
+        boolean ended = false;
+        try {
+            Files.deleteIfExists(partPath(id));
+            uploadSessionRepository.delete(locked.session());
+            ended = true;
+            log.info("Upload session {} aborted", id);
+        } finally {
+            release(id, locked.lock(), ended);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${project.uploads.cleanup-interval}")
+    public void removeExpiredSessions() {
+        LocalDateTime threshold = LocalDateTime.now().minus(expiration);
+        for (UploadSession session : uploadSessionRepository.findByUpdatedAtBefore(threshold)) {
+            try {
+                abort(session.getId());
+            } catch (ConflictException | EntityNotFoundException e) {
+                // Сессию прямо сейчас докачивают или уже завершили - срок ее больше не касается
+                log.debug("Skipped expired upload session {}: {}", session.getId(), e.getMessage());
+            } catch (IOException e) {
+                log.error("Failed to remove expired upload session {}", session.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Захватывает блокировку сессии. Запись в карте блокировок появляется только для существующей сессии
+     * и убирается при ее завершении или отмене, так что неизвестные id не копятся в памяти.
+     */
+    private LockedSession lockSession(String id, String busyMessage) throws ConflictException {
+        getSession(id);
+        ReentrantLock lock = sessionLocks.computeIfAbsent(id, key -> new ReentrantLock());
+        if (!lock.tryLock()) {
+            throw new ConflictException(busyMessage);
+        }
+        // Пока ждали, сессию могли завершить или отменить - проверяем уже под блокировкой
+        var session = uploadSessionRepository.findById(id);
+        if (session.isEmpty()) {
+            release(id, lock, true);
+            throw new EntityNotFoundException("Upload session not found: " + id);
+        }
+        return new LockedSession(session.get(), lock);
+    }
+
+    /**
+     * @param ended сессии больше нет - запись о блокировке убираем; пока сессия жива, блокировка должна
+     *              оставаться той же, иначе два потока могут получить разные блокировки одной сессии
+     */
+    private void release(String id, ReentrantLock lock, boolean ended) {
+        if (ended) {
+            sessionLocks.remove(id, lock);
+        }
+        lock.unlock();
+    }
+
+    private record LockedSession(UploadSession session, ReentrantLock lock) {
+    }
+
+    private Path partPath(String id) {
+        return Paths.get(uploadPath).resolve(id + ".part");
+    }
+}
@@ -0,0 +1,636 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.event.MediaFileDeletedEvent;
+import com.alkmanistik.alkify_music_api.event.MediaFileStoredEvent;
+import com.alkmanistik.alkify_music_api.service.AudioProbeService.AudioFormat;
+import com.alkmanistik.alkify_music_api.service.AudioProbeService.Mp3Frame;
+import com.alkmanistik.alkify_music_api.storage.MediaLayout;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Индекс перемотки: для каждого шага по времени - смещение границы кадра (страницы Ogg), с которой можно начать отдачу.
+ * Лежит рядом с аудио в файле <имя>.seek, смещения хранятся разностями в varint - несколько байт на секунду звука.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SeekIndexService {
+
+    public static final String EXTENSION = ".seek";
+
+    private static final int MAGIC = 0x5345454B; // "SEEK"
+    private static final byte VERSION = 1;
+
+    private final FileService fileService;
+    private final MediaLayout mediaLayout;
+
+    private final Map<String, CompletableFuture<SeekIndex>> inFlight = new ConcurrentHashMap<>();
+
+    @Value("${project.audios}")
+    private String audioPath;
+
+    @Value("${project.seek-index.interval}")
+    private Duration interval;
+
+    /**
+     * Диапазон файла, покрывающий отрезок трека, и заголовок потока, который нужно отдать перед ним.
+     */
+    public record Clip(byte[] prefix, long start, long end) {
+
+        public long length() {
+            return prefix.length + end - start;
+        }
+    }
+
+    record SeekIndex(AudioFormat format, int intervalMillis, long headerEnd, long dataEnd,
+                     long durationMillis, long[] offsets) {
+
+        // Последняя граница кадра, начинающегося не позже указанного момента
+        long offsetAt(long millis) {
+            int index = (int) Math.min(offsets.length - 1, millis / intervalMillis);
+            return offsets[index];
+        }
+    }
+
+    public Clip clip(String audioName, int startSeconds, Integer previewSeconds) throws IOException {
+        if (startSeconds < 0 || previewSeconds != null && previewSeconds <= 0) {
+            throw new IllegalArgumentException("Start and preview length must be positive");
+        }
+        Path audio = fileService.getExistingFile(audioPath, audioName);
+        SeekIndex index = getIndex(audioName, audio);
+
+        long startMillis = startSeconds * 1000L;
+        if (startMillis >= index.durationMillis()) {
+            throw new IllegalArgumentException("Start position is beyond the end of the track");
+        }
+        long start = index.offsetAt(startMillis);
+        long end = index.dataEnd();
+        if (previewSeconds != null && startMillis + previewSeconds * 1000L < index.durationMillis()) {
+            end = Math.max(start, index.offsetAt(startMillis + previewSeconds * 1000L));
+        }
+        return new Clip(prefix(audio, index, end - start), start, end);
+    }
+
+    @Async
+    @EventListener
+    public void onAudioStored(MediaFileStoredEvent event) {
+        if (!event.path().equals(audioPath) || event.fileName().endsWith(EXTENSION)) {
+            return;
+        }
+        try {
+            Path audio = fileService.getExistingFile(audioPath, event.fileName());
+            AudioFormat format = formatOf(audio);
+            if (!isIndexable(format)) {
+                log.debug("No seek index for {} audio {}", format, event.fileName());
+                return;
+            }
+            if (!Files.exists(indexPath(event.fileName()))) {
+                buildOnce(event.fileName(), audio);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to build seek index for {}", event.fileName(), e);
+        }
+    }
+
+    @EventListener
+    public void onAudioDeleted(MediaFileDeletedEvent event) {
+        if (!event.path().equals(audioPath)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(indexPath(event.fileName()));
+        } catch (IOException e) {
+            log.warn("Failed to delete seek index for {}", event.fileName(), e);
+        }
+    }
+
+    SeekIndex getIndex(String audioName, Path audio) throws IOException {
+        Path indexFile = indexPath(audioName);
+        if (Files.exists(indexFile)) {
+            try {
+                return read(indexFile);
+            } catch (IOException e) {
+                log.warn("Seek index {} is unreadable, rebuilding", indexFile, e);
+            }
+        }
+        // Файлы, загруженные до появления индекса, индексируем при первой перемотке
+        return buildOnce(audioName, audio);
+    }
+
+    /**
+     * Single-flight: одновременные первые перемотки одного трека ждут один проход по файлу.
+     */
+    private SeekIndex buildOnce(String audioName, Path audio) throws IOException {
+        CompletableFuture<SeekIndex> future = new CompletableFuture<>();
+        CompletableFuture<SeekIndex> existing = inFlight.putIfAbsent(audioName, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            // Предыдущая сборка могла закончиться между проверкой файла и putIfAbsent
+            Path indexFile = indexPath(audioName);
+            SeekIndex index = null;
+            if (Files.exists(indexFile)) {
+                try {
+                    index = read(indexFile);
+                } catch (IOException e) {
+                    log.debug("Seek index {} is unreadable, rebuilding", indexFile);
+                }
+            }
+            if (index == null) {
+                index = build(audioName, audio);
+            }
+            future.complete(index);
+            return index;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(audioName, future);
+        }
+    }
+
+    private SeekIndex await(CompletableFuture<SeekIndex> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for seek index");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Failed to build seek index", e.getCause());
+        }
+    }
+
+    private SeekIndex build(String audioName, Path audio) throws IOException {
+        SeekIndex index;
+        try (FileChannel channel = FileChannel.open(audio, StandardOpenOption.READ)) {
+            ChannelReader reader = new ChannelReader(channel);
+            IndexBuilder builder = new IndexBuilder((int) interval.toMillis());
+            // Как и при приеме файла: ID3v2-тег бывает не только перед MP3, но и перед FLAC
+            long start = AudioProbeService.skipId3v2(channel);
+            AudioFormat format = AudioProbeService.detectFormat(AudioProbeService.read(channel, start, 12));
+            // Заголовок WAV в отрезке переписывается по смещениям от начала файла, тег перед RIFF их сдвинул бы
+            if (!isIndexable(format) || format == AudioFormat.WAV && start != 0) {
+                throw new IllegalArgumentException("Seeking and previews are not supported for " + format + " audio");
+            }
+            index = switch (format) {
+                case FLAC -> scanFlac(reader, builder, start);
+                case OGG -> scanOgg(reader, builder, start);
+                case WAV -> scanWav(reader, builder);
+                case MP3 -> scanMp3(channel, reader, builder);
+                case MP4 -> throw new IllegalStateException("Unreachable");
+            };
+        }
+
+        Path indexFile = indexPath(audioName);
+        Path tempFile = Files.createTempFile(indexFile.getParent(), ".seek-", ".tmp");
+        try {
+            write(index, tempFile);
+            Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        log.debug("Built seek index for {}: {} points", audioName, index.offsets().length);
+        return index;
+    }
+
+    private SeekIndex scanMp3(FileChannel channel, ChannelReader reader, IndexBuilder builder) throws IOException {
+        long start = AudioProbeService.skipId3v2(channel);
+        int sync = AudioProbeService.findMp3Sync(AudioProbeService.read(channel, start, AudioProbeService.PROBE_SIZE));
+        if (sync < 0) {
+            throw new IllegalArgumentException("Unsupported or corrupted audio file");
+        }
+        long position = start + sync;
+        long dataEnd = reader.size();
+        if (dataEnd - AudioProbeService.ID3V1_SIZE > position && reader.matches(dataEnd - AudioProbeService.ID3V1_SIZE, "TAG")) {
+            dataEnd -= AudioProbeService.ID3V1_SIZE;
+        }
+
+        Mp3Frame first = Mp3Frame.parse(reader.int32(position));
+        long infoOffset = position + 4 + first.sideInfoSize();
+        if (reader.matches(infoOffset, "Xing") || reader.matches(infoOffset, "Info") || reader.matches(position + 36, "VBRI")) {
+            // Служебный кадр LAME описывает весь файл - при старте с середины он только сбивает плееры
+            position += first.length();
+        }
+
+        int sampleRate = first.sampleRate();
+        long samples = 0;
+        while (position + 4 <= dataEnd) {
+            Mp3Frame frame = Mp3Frame.parse(reader.int32(position));
+            if (frame == null) {
+                // Мусор между кадрами - ищем следующую синхронизацию
+                position++;
+                continue;
+            }
+            builder.boundary(position, samples * 1000 / sampleRate);
+            samples += frame.samplesPerFrame();
+            position += frame.length();
+        }
+        long durationMillis = samples * 1000 / sampleRate;
+        return builder.build(AudioFormat.MP3, 0, Math.min(position, dataEnd), durationMillis);
+    }
+
+    /**
+     * MP4 хранит таблицу сэмплов в moov, и отрезок нельзя получить простым диапазоном байт файла.
+     */
+    private static boolean isIndexable(AudioFormat format) {
+        return format != AudioFormat.MP4;
+    }
+
+    private AudioFormat formatOf(Path audio) throws IOException {
+        try (FileChannel channel = FileChannel.open(audio, StandardOpenOption.READ)) {
+            long start = AudioProbeService.skipId3v2(channel);
+            return AudioProbeService.detectFormat(AudioProbeService.read(channel, start, 12));
+        }
+    }
+
+    private SeekIndex scanOgg(ChannelReader reader, IndexBuilder builder, long start) throws IOException {
+        long packet = start + 27 + reader.u8(start + 26);
+        long granuleRate;
+        long preSkip = 0;
+        if (reader.matches(packet, "OpusHead")) {
+            granuleRate = AudioProbeService.OPUS_SAMPLE_RATE;
+            preSkip = reader.u8(packet + 10) | reader.u8(packet + 11) << 8;
+        } else if (reader.matches(packet + 1, "vorbis")) {
+            granuleRate = Integer.toUnsignedLong(reader.int32le(packet + 12));
+        } else {
+            throw new IllegalArgumentException("Unsupported Ogg codec");
+        }
+
+        long headerEnd = -1;
+        long lastGranule = preSkip;
+        long position = start;
+        while (position + 27 <= reader.size() && reader.matches(position, "OggS")) {
+            long granule = reader.int64le(position + 6);
+            // Страницы заголовков кодека имеют нулевую гранулу, звук начинается с первой ненулевой
+            if (headerEnd < 0 && granule != 0) {
+                headerEnd = position;
+            }
+            if (headerEnd >= 0) {
+                builder.boundary(position, Math.max(0, lastGranule - preSkip) * 1000 / granuleRate);
+            }
+            if (granule != -1) {
+                lastGranule = Math.max(lastGranule, granule);
+            }
+            int segments = reader.u8(position + 26);
+            if (position + 27 + segments > reader.size()) {
+                break;
+            }
+            long body = 0;
+            for (int i = 0; i < segments; i++) {
+                body += reader.u8(position + 27 + i);
+            }
+            position += 27 + segments + body;
+        }
+        if (headerEnd < 0) {
+            throw new IllegalArgumentException("Ogg stream has no audio pages");
+        }
+        long durationMillis = Math.max(0, lastGranule - preSkip) * 1000 / granuleRate;
+        return builder.build(AudioFormat.OGG, headerEnd, Math.min(position, reader.size()), durationMillis);
+    }
+
+    private SeekIndex scanFlac(ChannelReader reader, IndexBuilder builder, long start) throws IOException {
+        long position = start + 4;
+        int minBlockSize = 0;
+        int minFrameSize = 0;
+        int sampleRate = 0;
+        long totalSamples = 0;
+        boolean last;
+        do {
+            int header = reader.u8(position);
+            last = (header & 0x80) != 0;
+            int length = reader.u8(position + 1) << 16 | reader.u8(position + 2) << 8 | reader.u8(position + 3);
+            if ((header & 0x7F) == 0) {
+                minBlockSize = reader.u8(position + 4) << 8 | reader.u8(position + 5);
+                minFrameSize = reader.u8(position + 8) << 16 | reader.u8(position + 9) << 8 | reader.u8(position + 10);
+                long bits = reader.int64(position + 14);
+                sampleRate = (int) (bits >>> 44);
+                totalSamples = bits & 0xF_FFFF_FFFFL;
+            }
+            position += 4 + length;
+        } while (!last && position < reader.size());
+        if (sampleRate == 0) {
+            throw new IllegalArgumentException("Corrupted FLAC stream");
+        }
+
+        long headerEnd = position;
+        long lastSample = -1;
+        while (position + 16 <= reader.size()) {
+            if (reader.u8(position) != 0xFF || (reader.u8(position + 1) & 0xFE) != 0xF8) {
+                position++;
+                continue;
+            }
+            long sample = flacFrameSample(reader, position, minBlockSize);
+            // Ложные синхрокоды отсеиваем по CRC-8 заголовка и монотонности номеров
+            if (sample < 0 || sample <= lastSample && lastSample >= 0) {
+                position++;
+                continue;
+            }
+            builder.boundary(position, sample * 1000 / sampleRate);
+            lastSample = sample;
+            position += Math.max(minFrameSize, 1);
+        }
+        long durationMillis = totalSamples * 1000 / sampleRate;
+        return builder.build(AudioFormat.FLAC, headerEnd, reader.size(), durationMillis);
+    }
+
+    /**
+     * @return номер первого сэмпла кадра или -1, если по смещению нет корректного заголовка кадра
+     */
+    private long flacFrameSample(ChannelReader reader, long position, int fixedBlockSize) throws IOException {
+        boolean variable = (reader.u8(position + 1) & 0x1) != 0;
+        int blockSizeCode = reader.u8(position + 2) >>> 4;
+        int sampleRateCode = reader.u8(position + 2) & 0xF;
+        int channels = reader.u8(position + 3) >>> 4;
+        int sampleSize = reader.u8(position + 3) >>> 1 & 0x7;
+        if (blockSizeCode == 0 || sampleRateCode == 15 || channels > 10 || sampleSize == 3
+                || (reader.u8(position + 3) & 0x1) != 0) {
+            return -1;
+        }
+
+        // Номер кадра/сэмпла закодирован как UTF-8 (до 7 байт)
+        long p = position + 4;
+        int first = reader.u8(p++);
+        int extra = Integer.numberOfLeadingZeros(~first << 24);
+        if (extra == 1 || extra > 7) {
+            return -1;
+        }
+        long number = extra == 0 ? first : first & (0x7F >>> extra);
+        for (int i = 1; i < extra; i++) {
+            int next = reader.u8(p++);
+            if ((next & 0xC0) != 0x80) {
+                return -1;
+            }
+            number = number << 6 | next & 0x3F;
+        }
+        p += blockSizeCode == 6 ? 1 : blockSizeCode == 7 ? 2 : 0;
+        p += sampleRateCode == 12 ? 1 : sampleRateCode == 13 || sampleRateCode == 14 ? 2 : 0;
+
+        int crc = 0;
+        for (long i = position; i < p; i++) {
+            crc ^= reader.u8(i);
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80) != 0 ? (crc << 1 ^ 0x07) & 0xFF : crc << 1 & 0xFF;
+            }
+        }
+        if (crc != reader.u8(p)) {
+            return -1;
+        }
+        return variable ? number : number * fixedBlockSize;
+    }
+
+    private SeekIndex scanWav(ChannelReader reader, IndexBuilder builder) throws IOException {
+        int byteRate = 0;
+        int blockAlign = 1;
+        long position = 12;
+        while (position + 8 <= reader.size()) {
+            long chunkSize = Integer.toUnsignedLong(reader.int32le(position + 4));
+            if (reader.matches(position, "fmt ")) {
+                byteRate = reader.int32le(position + 16);
+                blockAlign = Math.max(1, reader.u8(position + 20) | reader.u8(position + 21) << 8);
+            } else if (reader.matches(position, "data")) {
+                break;
+            }
+            position += 8 + chunkSize + (chunkSize & 1);
+        }
+        if (byteRate <= 0 || position + 8 > reader.size()) {
+            throw new IllegalArgumentException("Corrupted WAV file");
+        }
+
+        long dataStart = position + 8;
+        long available = reader.size() - dataStart;
+        long dataSize = Integer.toUnsignedLong(reader.int32le(position + 4));
+        long dataEnd = dataStart + (dataSize == 0 || dataSize > available ? available : dataSize);
+        long durationMillis = (dataEnd - dataStart) * 1000 / byteRate;
+        // PCM режется на любой границе блока, индекс просто вычисляется
+        for (long millis = 0; millis < durationMillis; millis += builder.intervalMillis) {
+            builder.boundary(dataStart + millis * byteRate / 1000 / blockAlign * blockAlign, millis);
+        }
+        return builder.build(AudioFormat.WAV, dataStart, dataEnd, durationMillis);
+    }
+
+    /**
+     * Заголовок потока, без которого декодер не начнет играть с середины.
+     * Для WAV размеры в RIFF и data переписываются под длину отрезка.
+     */
+    private byte[] prefix(Path audio, SeekIndex index, long clipLength) throws IOException {
+        if (index.headerEnd() == 0) {
+            return new byte[0];
+        }
+        byte[] header;
+        try (FileChannel channel = FileChannel.open(audio, StandardOpenOption.READ)) {
+            ByteBuffer buffer = AudioProbeService.read(channel, 0, (int) index.headerEnd());
+            header = new byte[buffer.remaining()];
+            buffer.get(header);
+        }
+        if (index.format() == AudioFormat.WAV) {
+            ByteBuffer patch = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            patch.putInt(4, (int) (header.length - 8 + clipLength));
+            patch.putInt(header.length - 4, (int) clipLength);
+        }
+        return header;
+    }
+
+    private Path indexPath(String audioName) {
+        return mediaLayout.resolvePath(audioPath, audioName + EXTENSION);
+    }
+
+    private void write(SeekIndex index, Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(index.format().ordinal());
+            out.writeInt(index.intervalMillis());
+            out.writeLong(index.headerEnd());
+            out.writeLong(index.dataEnd());
+            out.writeLong(index.durationMillis());
+            out.writeInt(index.offsets().length);
+            long previous = 0;
+            for (long offset : index.offsets()) {
+                writeVarLong(out, offset - previous);
+                previous = offset;
+            }
+        }
+    }
+
+    private SeekIndex read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Unknown seek index format");
+            }
+            AudioFormat format = AudioFormat.values()[in.readByte()];
+            int intervalMillis = in.readInt();
+            long headerEnd = in.readLong();
+            long dataEnd = in.readLong();
+            long durationMillis = in.readLong();
+            long[] offsets = new long[in.readInt()];
+            long previous = 0;
+            for (int i = 0; i < offsets.length; i++) {
+                previous += readVarLong(in);
+                offsets[i] = previous;
+            }
+            return new SeekIndex(format, intervalMillis, headerEnd, dataEnd, durationMillis, offsets);
+        }
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in seek index");
+    }
+
+    /**
+     * Точка i индекса - последняя граница кадра со временем начала не позже i * interval.
+     */
+    private static final class IndexBuilder {
+
+        private final int intervalMillis;
+        private long[] offsets = new long[256];
+        private int count;
+        private long previous = -1;
+
+        IndexBuilder(int intervalMillis) {
+            this.intervalMillis = intervalMillis;
+        }
+
+        void boundary(long offset, long millis) {
+            if (previous < 0) {
+                previous = offset;
+            }
+            while ((long) count * intervalMillis < millis) {
+                add(previous);
+            }
+            previous = offset;
+        }
+
+        SeekIndex build(AudioFormat format, long headerEnd, long dataEnd, long durationMillis) {
+            if (previous < 0) {
+                throw new IllegalArgumentException("Audio stream has no frames");
+            }
+            while ((long) count * intervalMillis <= durationMillis) {
+                add(previous);
+            }
+            return new SeekIndex(format, intervalMillis, headerEnd, dataEnd, durationMillis,
+                    Arrays.copyOf(offsets, count));
+        }
+
+        private void add(long offset) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = offset;
+        }
+    }
+
+    /**
+     * Последовательное чтение заголовков через окно, чтобы не делать системный вызов на каждый кадр.
+     */
+    private static final class ChannelReader {
+
+        private final FileChannel channel;
+        private final long size;
+        private final ByteBuffer window = ByteBuffer.allocate(64 * 1024);
+        private long windowStart = -1;
+
+        ChannelReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        long size() {
+            return size;
+        }
+
+        int u8(long position) throws IOException {
+            return window.get(ensure(position, 1)) & 0xFF;
+        }
+
+        int int32(long position) throws IOException {
+            return window.order(ByteOrder.BIG_ENDIAN).getInt(ensure(position, 4));
+        }
+
+        int int32le(long position) throws IOException {
+            return window.order(ByteOrder.LITTLE_ENDIAN).getInt(ensure(position, 4));
+        }
+
+        long int64(long position) throws IOException {
+            return window.order(ByteOrder.BIG_ENDIAN).getLong(ensure(position, 8));
+        }
+
+        long int64le(long position) throws IOException {
+            return window.order(ByteOrder.LITTLE_ENDIAN).getLong(ensure(position, 8));
+        }
+
+        boolean matches(long position, String signature) throws IOException {
+            if (position < 0 || position + signature.length() > size) {
+                return false;
+            }
+            int index = ensure(position, signature.length());
+            byte[] expected = signature.getBytes(StandardCharsets.US_ASCII);
+            for (int i = 0; i < expected.length; i++) {
+                if (window.get(index + i) != expected[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int ensure(long position, int length) throws IOException {
+            if (windowStart < 0 || position < windowStart || position + length > windowStart + window.limit()) {
+                window.clear();
+                while (window.hasRemaining()) {
+                    if (channel.read(window, position + window.position()) < 0) {
+                        break;
+                    }
+                }
+                window.flip();
+                windowStart = position;
+                if (window.limit() < length) {
+                    throw new EOFException("Unexpected end of audio stream at position " + position);
+                }
+            }
+            return (int) (position - windowStart);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.dto.ShardMigrationStatusDTO;
+import com.alkmanistik.alkify_music_api.exception.ConflictException;
+import com.alkmanistik.alkify_music_api.storage.MediaLayout;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Перенос файлов из плоских каталогов в шарды без остановки сервиса.
+ * Имена файлов не меняются, поэтому ни БД, ни кеши трогать не нужно: пока файл не перенесен,
+ * {@link MediaLayout#locate} находит его по старому пути. Каждый перенос - атомарный rename под блокировкой имени.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ShardedLayoutMigrationService {
+
+    private final FileService fileService;
+    private final MediaLayout mediaLayout;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile ShardMigrationStatusDTO status = new ShardMigrationStatusDTO();
+
+    @Value("${project.images}")
+    private String imagePath;
+
+    @Value("${project.audios}")
+    private String audioPath;
+
+    @Value("${project.storage.sharding.migrate-on-startup:false}")
+    private boolean migrateOnStartup;
+
+    @Value("${project.storage.sharding.max-files-per-second:200}")
+    private int maxFilesPerSecond;
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (migrateOnStartup && mediaLayout.isSharded() && running.compareAndSet(false, true)) {
+            migrate(begin());
+        }
+    }
+
+    /**
+     * Запускает перенос в фоне.
+     * @return состояние только что запущенного переноса
+     */
+    public ShardMigrationStatusDTO start() throws ConflictException {
+        if (!mediaLayout.isSharded()) {
+            throw new IllegalArgumentException("Sharded layout is disabled");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new ConflictException("Shard migration is already running");
+        }
+        ShardMigrationStatusDTO current = begin();
+        Thread.ofVirtual().name("shard-migration").start(() -> migrate(current));
+        return current;
+    }
+
+    public ShardMigrationStatusDTO status() {
+        return status;
+    }
+
+    private ShardMigrationStatusDTO begin() {
+        ShardMigrationStatusDTO current = new ShardMigrationStatusDTO();
+        current.setRunning(true);
+        current.setStartedAt(LocalDateTime.now());
+        status = current;
+        return current;
+    }
+
+    private void migrate(ShardMigrationStatusDTO current) {
+        try {
+            for (String path : List.of(imagePath, audioPath)) {
+                current.setCurrentDirectory(path);
+                migrateDirectory(path, current);
+            }
+            log.info("Shard migration finished: moved {}, duplicates {}, failed {}",
+                    current.getMovedFiles(), current.getDuplicateFiles(), current.getFailedFiles());
+        } catch (IOException | RuntimeException e) {
+            log.error("Shard migration aborted", e);
+        } finally {
+            current.setCurrentDirectory(null);
+            current.setFinishedAt(LocalDateTime.now());
+            current.setRunning(false);
+            running.set(false);
+        }
+    }
+
+    private void migrateDirectory(String path, ShardMigrationStatusDTO current) throws IOException {
+        Path dirPath = Paths.get(path);
+        if (!Files.isDirectory(dirPath)) {
+            return;
+        }
+        // Перенесенные файлы уходят в подкаталоги, поэтому одного прохода по корню достаточно
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dirPath, Files::isRegularFile)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                if (fileName.startsWith(".")) {
+                    continue;
+                }
+                current.setScannedFiles(current.getScannedFiles() + 1);
+                try {
+                    moveFile(path, fileName, current);
+                } catch (IOException e) {
+                    current.setFailedFiles(current.getFailedFiles() + 1);
+                    log.error("Failed to move {}{} into its shard", path, fileName, e);
+                }
+                throttle();
+            }
+        }
+    }
+
+    private void moveFile(String path, String fileName, ShardMigrationStatusDTO current) throws IOException {
+        Lock lock = fileService.lockFor(path, fileName);
+        lock.lock();
+        try {
+            Path source = mediaLayout.flatPath(path, fileName);
+            if (!Files.exists(source)) {
+                // Файл удалили, пока до него дошла очередь
+                return;
+            }
+            Path target = mediaLayout.shardedPath(path, fileName);
+            if (Files.exists(target)) {
+                // Та же загрузка уже попала в шард (content-addressed имя), старая копия лишняя
+                Files.delete(source);
+                current.setDuplicateFiles(current.getDuplicateFiles() + 1);
+                return;
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            current.setMovedFiles(current.getMovedFiles() + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void throttle() throws InterruptedIOException {
+        if (maxFilesPerSecond <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(1000L / maxFilesPerSecond);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Shard migration interrupted");
+        }
+    }
+}
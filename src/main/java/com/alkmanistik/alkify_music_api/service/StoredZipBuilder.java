@@ -0,0 +1,163 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.service.MediaStreamingService.Bytes;
+import com.alkmanistik.alkify_music_api.service.MediaStreamingService.FileRegion;
+import com.alkmanistik.alkify_music_api.service.MediaStreamingService.Segment;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Раскладка ZIP-архива без сжатия (STORED) в виде сегментов ответа: заголовки собираются заранее,
+ * а содержимое файлов отдается прямо с диска. Размер и CRC каждого файла известны до начала отдачи,
+ * поэтому длина архива считается точно, а в памяти держится только центральный каталог.
+ */
+class StoredZipBuilder {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final short ZIP64_EXTRA = 0x0001;
+    private static final short VERSION_DEFAULT = 20;
+    private static final short VERSION_ZIP64 = 45;
+    private static final short FLAG_UTF8 = 0x0800;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private long offset;
+    private int entries;
+
+    void addFile(String name, Path file, long size, long crc32, long lastModified) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        boolean zip64Size = size >= ZIP64_MAGIC;
+        boolean zip64Offset = offset >= ZIP64_MAGIC;
+        int dosDateTime = dosDateTime(lastModified);
+
+        ByteBuffer local = buffer(30 + nameBytes.length + (zip64Size ? 20 : 0));
+        local.putInt(LOCAL_HEADER)
+                .putShort(zip64Size ? VERSION_ZIP64 : VERSION_DEFAULT)
+                .putShort(FLAG_UTF8)
+                .putShort((short) 0)
+                .putInt(dosDateTime)
+                .putInt((int) crc32)
+                .putInt((int) (zip64Size ? ZIP64_MAGIC : size))
+                .putInt((int) (zip64Size ? ZIP64_MAGIC : size))
+                .putShort((short) nameBytes.length)
+                .putShort((short) (zip64Size ? 20 : 0))
+                .put(nameBytes);
+        if (zip64Size) {
+            local.putShort(ZIP64_EXTRA).putShort((short) 16).putLong(size).putLong(size);
+        }
+
+        int extraLength = (zip64Size ? 16 : 0) + (zip64Offset ? 8 : 0);
+        boolean zip64 = extraLength > 0;
+        ByteBuffer central = buffer(46 + nameBytes.length + (zip64 ? 4 + extraLength : 0));
+        central.putInt(CENTRAL_HEADER)
+                .putShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT)
+                .putShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT)
+                .putShort(FLAG_UTF8)
+                .putShort((short) 0)
+                .putInt(dosDateTime)
+                .putInt((int) crc32)
+                .putInt((int) (zip64Size ? ZIP64_MAGIC : size))
+                .putInt((int) (zip64Size ? ZIP64_MAGIC : size))
+                .putShort((short) nameBytes.length)
+                .putShort((short) (zip64 ? 4 + extraLength : 0))
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putInt(0)
+                .putInt((int) (zip64Offset ? ZIP64_MAGIC : offset))
+                .put(nameBytes);
+        if (zip64) {
+            central.putShort(ZIP64_EXTRA).putShort((short) extraLength);
+            if (zip64Size) {
+                central.putLong(size).putLong(size);
+            }
+            if (zip64Offset) {
+                central.putLong(offset);
+            }
+        }
+        centralDirectory.writeBytes(central.array());
+
+        segments.add(new Bytes(local.flip()));
+        segments.add(new FileRegion(file, 0, size));
+        offset += local.limit() + size;
+        entries++;
+    }
+
+    /**
+     * @return сегменты архива; после вызова builder больше не используется
+     */
+    List<Segment> finish() {
+        long directoryOffset = offset;
+        long directorySize = centralDirectory.size();
+        boolean zip64 = entries >= ZIP64_MAGIC_COUNT || directoryOffset >= ZIP64_MAGIC || directorySize >= ZIP64_MAGIC;
+
+        ByteBuffer end = buffer((zip64 ? 56 + 20 : 0) + 22);
+        if (zip64) {
+            long zip64EndOffset = directoryOffset + directorySize;
+            end.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY)
+                    .putLong(44)
+                    .putShort(VERSION_ZIP64)
+                    .putShort(VERSION_ZIP64)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(entries)
+                    .putLong(entries)
+                    .putLong(directorySize)
+                    .putLong(directoryOffset);
+            end.putInt(ZIP64_LOCATOR)
+                    .putInt(0)
+                    .putLong(zip64EndOffset)
+                    .putInt(1);
+        }
+        end.putInt(END_OF_CENTRAL_DIRECTORY)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) (zip64 ? ZIP64_MAGIC_COUNT : entries))
+                .putShort((short) (zip64 ? ZIP64_MAGIC_COUNT : entries))
+                .putInt((int) (zip64 ? ZIP64_MAGIC : directorySize))
+                .putInt((int) (zip64 ? ZIP64_MAGIC : directoryOffset))
+                .putShort((short) 0);
+
+        segments.add(new Bytes(ByteBuffer.wrap(centralDirectory.toByteArray())));
+        segments.add(new Bytes(end.flip()));
+        offset += directorySize + end.limit();
+        return segments;
+    }
+
+    /**
+     * @return полная длина архива, известна после {@link #finish()}
+     */
+    long length() {
+        return offset;
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Время в формате MS-DOS: младшие 16 бит - время с точностью 2 с, старшие - дата начиная с 1980 года
+    private static int dosDateTime(long epochMillis) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return 1 << 21 | 1 << 16;
+        }
+        int dosTime = time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+        int dosDate = (time.getYear() - 1980) << 9 | time.getMonthValue() << 5 | time.getDayOfMonth();
+        return dosDate << 16 | dosTime;
+    }
+}
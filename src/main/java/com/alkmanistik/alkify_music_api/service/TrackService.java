@@ -1,5 +1,6 @@
 package com.alkmanistik.alkify_music_api.service;
 
+import com.alkmanistik.alkify_music_api.cache.CacheDependency;
 import com.alkmanistik.alkify_music_api.dto.TrackDTO;
 import com.alkmanistik.alkify_music_api.exception.ForbiddenException;
 import com.alkmanistik.alkify_music_api.mapper.GlobalMapper;
@@ -9,6 +10,7 @@ import com.alkmanistik.alkify_music_api.repository.ArtistRepository;
 import com.alkmanistik.alkify_music_api.repository.TrackRepository;
 import com.alkmanistik.alkify_music_api.repository.UserRepository;
 import com.alkmanistik.alkify_music_api.request.TrackRequest;
+import com.alkmanistik.alkify_music_api.service.AudioIngestService.IngestedAudio;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
@@ -18,12 +20,22 @@ import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -33,14 +45,20 @@ public class TrackService {
 
     private final TrackRepository trackRepository;
     private final FileService fileService;
+    private final AudioIngestService audioIngestService;
     private final GlobalMapper globalMapper;
     private final ArtistRepository artistRepository;
     private final UserRepository userRepository;
     private final AlbumRepository albumRepository;
+    private final CacheInvalidationService cacheInvalidationService;
+    private final PlatformTransactionManager transactionManager;
 
     @Value("${project.audios}")
     private String audioPath;
 
+    @Value("${project.tracks.batch.max-size}")
+    private int batchMaxSize;
+
     @Cacheable(value = "tracks.all", sync = true)
     public List<TrackDTO> getAllTracks() {
         return trackRepository.findAll().stream()
@@ -58,21 +76,8 @@ public class TrackService {
     @Transactional
     @Caching(evict = {
             @CacheEvict(value = "tracks.all", allEntries = true),
-            @CacheEvict(value = "track.byId", key = "#result.id", condition = "#result != null"),
             @CacheEvict(value = "tracks.byAlbum", key = "#albumId"),
-            @CacheEvict(value = "tracks.search", allEntries = true),
-            @CacheEvict(value = "tracks.liked", allEntries = true),
-            @CacheEvict(value = "albums.all", allEntries = true),
-            @CacheEvict(value = "albums.byArtist", allEntries = true),
-            @CacheEvict(value = "album.byId", key = "#albumId"),
-            @CacheEvict(value = "albums.search", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", allEntries = true),
-            @CacheEvict(value = "artists.byUserId", key = "#user.id"),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "tracks.search", allEntries = true)
     })
     public TrackDTO createTrack(Long albumId, User user, TrackRequest trackRequest, MultipartFile file) throws IOException, ForbiddenException {
         Album album = albumRepository.findById(albumId)
@@ -87,34 +92,160 @@ public class TrackService {
         track.setGenre(trackRequest.getGenre());
         track.setExplicit(trackRequest.isExplicit());
         if (file != null && !file.isEmpty()) {
-            String fileName = fileService.uploadFile(audioPath, file);
-            track.setAudioFilePath(fileName);
+            audioIngestService.applyTo(track, audioIngestService.ingest(file));
         }
         track.setAlbum(album);
         track.setArtists(List.of(artist));
         var savedTrack = trackRepository.save(track);
+        cacheInvalidationService.evictDependents(CacheDependency.album(albumId), CacheDependency.artist(artist.getId()));
         log.info("Saved track: {}", savedTrack);
         return globalMapper.toTrackDTO(savedTrack);
     }
 
+    /**
+     * Создает несколько треков альбома за один запрос: права проверяются один раз, аудио принимается параллельно
+     * на виртуальных потоках, треки сохраняются в одной транзакции, а кеши сбрасываются одним проходом.
+     * Аудио сопоставляются с треками по порядку; если транзакция откатится, принятые файлы освобождаются.
+     */
     @Transactional
     @Caching(evict = {
             @CacheEvict(value = "tracks.all", allEntries = true),
+            @CacheEvict(value = "tracks.byAlbum", key = "#albumId"),
+            @CacheEvict(value = "tracks.search", allEntries = true)
+    })
+    public List<TrackDTO> createTracks(Long albumId, User user, List<TrackRequest> trackRequests,
+                                       List<MultipartFile> files) throws IOException, ForbiddenException {
+        files = files != null ? files : List.of();
+        if (trackRequests == null || trackRequests.isEmpty()) {
+            throw new IllegalArgumentException("Batch must contain at least one track");
+        }
+        if (files.size() > batchMaxSize) {
+            throw new IllegalArgumentException("Batch must contain at most " + batchMaxSize + " audio files");
+        }
+        if (!files.isEmpty() && files.size() != trackRequests.size()) {
+            throw new IllegalArgumentException("Expected " + trackRequests.size() + " audio files, got " + files.size());
+        }
+        Album album = albumRepository.findById(albumId)
+                .orElseThrow(() -> new EntityNotFoundException("Album not found with id: " + albumId));
+        Artist artist = artistRepository.findById(album.getArtists().getFirst().getId())
+                .orElseThrow(() -> new EntityNotFoundException("Artist not found with id: " + album.getArtists().getFirst().getId()));
+
+        checkArtistOwnership(artist, user);
+
+        List<IngestedAudio> audios = files.isEmpty()
+                ? Collections.nCopies(trackRequests.size(), null)
+                : ingestAll(files);
+        releaseOnRollback(audios);
+
+        List<Track> tracks = new ArrayList<>(trackRequests.size());
+        for (int i = 0; i < trackRequests.size(); i++) {
+            TrackRequest trackRequest = trackRequests.get(i);
+            Track track = new Track();
+            track.setTitle(trackRequest.getTitle());
+            track.setGenre(trackRequest.getGenre());
+            track.setExplicit(trackRequest.isExplicit());
+            if (audios.get(i) != null) {
+                audioIngestService.applyTo(track, audios.get(i));
+            }
+            track.setAlbum(album);
+            track.setArtists(new ArrayList<>(List.of(artist)));
+            tracks.add(track);
+        }
+        List<Track> savedTracks = trackRepository.saveAll(tracks);
+        cacheInvalidationService.evictDependents(CacheDependency.album(albumId), CacheDependency.artist(artist.getId()));
+        log.info("Saved {} tracks to album {}", savedTracks.size(), albumId);
+        return savedTracks.stream()
+                .map(globalMapper::toTrackDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Принимает файлы параллельно. Если хоть один не принят, уже принятые освобождаются и ошибка пробрасывается.
+     * @return результат для каждого трека по порядку, null - трек без аудио
+     */
+    private List<IngestedAudio> ingestAll(List<MultipartFile> files) throws IOException {
+        List<IngestedAudio> audios = new ArrayList<>(Collections.nCopies(files.size(), null));
+        List<Future<IngestedAudio>> futures = new ArrayList<>(files.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (MultipartFile file : files) {
+                futures.add(executor.submit(() -> file != null && !file.isEmpty() ? audioIngestService.ingest(file) : null));
+            }
+        }
+        Throwable failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                audios.set(i, futures.get(i).get());
+            } catch (ExecutionException e) {
+                failure = failure == null ? e.getCause() : failure;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            release(audios);
+            switch (failure) {
+                case IOException e -> throw e;
+                case RuntimeException e -> throw e;
+                default -> throw new IOException("Failed to ingest audio", failure);
+            }
+        }
+        return audios;
+    }
+
+    private void releaseOnRollback(List<IngestedAudio> audios) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    release(audios);
+                }
+            }
+        });
+    }
+
+    private void releaseAfterCommit(String audioName) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            releaseAudio(audioName);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                releaseAudio(audioName);
+            }
+        });
+    }
+
+    private void release(List<IngestedAudio> audios) {
+        for (IngestedAudio audio : audios) {
+            if (audio != null) {
+                releaseAudio(audio.fileName());
+            }
+        }
+    }
+
+    /**
+     * Ссылка снимается в отдельной транзакции: в afterCompletion поток еще привязан к завершенной транзакции,
+     * и deleteFile присоединился бы к ней - изменения так и не были бы закоммичены.
+     */
+    private void releaseAudio(String audioName) {
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            requiresNew.executeWithoutResult(status -> fileService.deleteFile(audioPath, audioName));
+        } catch (RuntimeException e) {
+            log.warn("Failed to release audio {}", audioName, e);
+        }
+    }
+
+    @Transactional
+    @Caching(evict = {
             @CacheEvict(value = "track.byId", key = "#trackId"),
-            @CacheEvict(value = "tracks.byAlbum", allEntries = true),
-            @CacheEvict(value = "tracks.search", allEntries = true),
-            @CacheEvict(value = "tracks.liked", allEntries = true),
-            @CacheEvict(value = "albums.all", allEntries = true),
-            @CacheEvict(value = "albums.byArtist", allEntries = true),
-            @CacheEvict(value = "album.byId", key = "#result.album.id"),
-            @CacheEvict(value = "albums.search", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", allEntries = true),
-            @CacheEvict(value = "artists.byUserId", key = "#user.id"),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "tracks.search", allEntries = true)
     })
     public TrackDTO updateTrack(Long trackId, User user, TrackRequest trackRequest, MultipartFile file) throws IOException, ForbiddenException {
         Track track = trackRepository.findById(trackId)
@@ -130,32 +261,25 @@ public class TrackService {
         }
         track.setExplicit(trackRequest.isExplicit());
         if (file != null && !file.isEmpty()) {
-            String fileName = fileService.uploadFile(audioPath, file);
-            track.setAudioFilePath(fileName);
+            String previousAudio = track.getAudioFilePath();
+            IngestedAudio audio = audioIngestService.ingest(file);
+            releaseOnRollback(Collections.singletonList(audio));
+            audioIngestService.applyTo(track, audio);
+            // Новый файл уже держит свою ссылку, старую отпускаем только когда трек точно переключен
+            if (previousAudio != null) {
+                releaseAfterCommit(previousAudio);
+            }
         }
         Track updatedTrack = trackRepository.save(track);
+        cacheInvalidationService.evictDependents(CacheDependency.track(trackId));
         log.info("Updated track: {}", updatedTrack);
         return globalMapper.toTrackDTO(updatedTrack);
     }
 
     @Transactional
     @Caching(evict = {
-            @CacheEvict(value = "tracks.all", allEntries = true),
             @CacheEvict(value = "track.byId", key = "#trackId"),
-            @CacheEvict(value = "tracks.byAlbum", allEntries = true),
-            @CacheEvict(value = "tracks.search", allEntries = true),
-            @CacheEvict(value = "tracks.liked", allEntries = true),
-            @CacheEvict(value = "albums.all", allEntries = true),
-            @CacheEvict(value = "albums.byArtist", allEntries = true),
-            @CacheEvict(value = "album.byId", allEntries = true),
-            @CacheEvict(value = "albums.search", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", allEntries = true),
-            @CacheEvict(value = "artists.byUserId", allEntries = true),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "tracks.all", allEntries = true)
     })
     public void deleteTrack(Long trackId, User user) throws ForbiddenException {
         Track track = trackRepository.findById(trackId)
@@ -168,27 +292,14 @@ public class TrackService {
         }
 
         trackRepository.delete(track);
+        evictDependentsOfDeleted(track);
         log.info("Deleted track with id: {}", trackId);
     }
 
     @Transactional
     @Caching(evict = {
-            @CacheEvict(value = "tracks.all", allEntries = true),
             @CacheEvict(value = "track.byId", key = "#trackId"),
-            @CacheEvict(value = "tracks.byAlbum", allEntries = true),
-            @CacheEvict(value = "tracks.search", allEntries = true),
-            @CacheEvict(value = "tracks.liked", allEntries = true),
-            @CacheEvict(value = "albums.all", allEntries = true),
-            @CacheEvict(value = "albums.byArtist", allEntries = true),
-            @CacheEvict(value = "album.byId", allEntries = true),
-            @CacheEvict(value = "albums.search", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", allEntries = true),
-            @CacheEvict(value = "artists.byUserId", allEntries = true),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", allEntries = true),
-            @CacheEvict(value = "user.byEmail", allEntries = true)
+            @CacheEvict(value = "tracks.all", allEntries = true)
     })
     public void delete(Long trackId) {
         Track track = trackRepository.findById(trackId)
@@ -199,27 +310,14 @@ public class TrackService {
         }
 
         trackRepository.delete(track);
+        evictDependentsOfDeleted(track);
         log.info("Deleted track with id: {}", trackId);
     }
 
     @Transactional
     @Caching(evict = {
             @CacheEvict(value = "tracks.all", allEntries = true),
-            @CacheEvict(value = "track.byId", allEntries = true),
-            @CacheEvict(value = "tracks.byAlbum", key = "#albumId"),
-            @CacheEvict(value = "tracks.search", allEntries = true),
-            @CacheEvict(value = "tracks.liked", allEntries = true),
-            @CacheEvict(value = "albums.all", allEntries = true),
-            @CacheEvict(value = "albums.byArtist", allEntries = true),
-            @CacheEvict(value = "album.byId", allEntries = true),
-            @CacheEvict(value = "albums.search", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", allEntries = true),
-            @CacheEvict(value = "artists.byUserId", allEntries = true),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", allEntries = true),
-            @CacheEvict(value = "user.byEmail", allEntries = true)
+            @CacheEvict(value = "tracks.byAlbum", key = "#albumId")
     })
     public void deleteTracksByAlbum(Long albumId) {
         trackRepository.findAllByAlbumId(albumId).forEach(track ->
@@ -247,19 +345,7 @@ public class TrackService {
     @Transactional
     @Caching(evict = {
             @CacheEvict(value = "track.byId", key = "#trackId"),
-            @CacheEvict(value = "tracks.all", allEntries = true),
-            @CacheEvict(value = "tracks.byAlbum", allEntries = true),
-            @CacheEvict(value = "albums.all", allEntries = true),
-            @CacheEvict(value = "albums.byArtist", allEntries = true),
-            @CacheEvict(value = "album.byId", key = "#result.album.id"),
-            @CacheEvict(value = "albums.search", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", key = "#artistId"),
-            @CacheEvict(value = "artists.byUserId", key = "#user.id"),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "artist.byId", key = "#artistId")
     })
     public TrackDTO addArtistToTrack(User user, Long trackId, Long artistId) throws ForbiddenException {
         Track track = trackRepository.findById(trackId)
@@ -276,25 +362,14 @@ public class TrackService {
 
         track.getArtists().add(artist);
         Track updatedTrack = trackRepository.save(track);
+        cacheInvalidationService.evictDependents(CacheDependency.track(trackId), CacheDependency.artist(artistId));
         return globalMapper.toTrackDTO(updatedTrack);
     }
 
     @Transactional
     @Caching(evict = {
             @CacheEvict(value = "track.byId", key = "#trackId"),
-            @CacheEvict(value = "tracks.all", allEntries = true),
-            @CacheEvict(value = "tracks.byAlbum", allEntries = true),
-            @CacheEvict(value = "albums.all", allEntries = true),
-            @CacheEvict(value = "albums.byArtist", allEntries = true),
-            @CacheEvict(value = "album.byId", key = "#result.album.id"),
-            @CacheEvict(value = "albums.search", allEntries = true),
-            @CacheEvict(value = "artists.all", allEntries = true),
-            @CacheEvict(value = "artist.byId", key = "#artistId"),
-            @CacheEvict(value = "artists.byUserId", key = "#user.id"),
-            @CacheEvict(value = "artist.search", allEntries = true),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "artist.byId", key = "#artistId")
     })
     public void removeArtistFromTrack(User user, Long trackId, Long artistId) throws ForbiddenException {
         Track track = trackRepository.findById(trackId)
@@ -314,15 +389,14 @@ public class TrackService {
 
         track.getArtists().remove(artist);
         trackRepository.save(track);
+        cacheInvalidationService.evictDependents(CacheDependency.track(trackId), CacheDependency.artist(artistId));
     }
 
     @Transactional
     @Caching(evict = {
             @CacheEvict(value = "track.byId", key = "#trackId"),
             @CacheEvict(value = "tracks.liked", key = "#user.id"),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "track.likedStatus", key = "{#trackId, #user.id}")
     })
     public void likeTrack(Long trackId, User user) {
         Track track = trackRepository.findById(trackId)
@@ -331,6 +405,8 @@ public class TrackService {
         if (!track.getLikedUsers().contains(user)) {
             track.getLikedUsers().add(user);
             trackRepository.save(track);
+            // Счетчик лайков входит в DTO трека везде, где он закеширован
+            cacheInvalidationService.evictDependents(CacheDependency.track(trackId));
             log.info("User {} liked track {}", user.getId(), trackId);
         }
     }
@@ -339,9 +415,7 @@ public class TrackService {
     @Caching(evict = {
             @CacheEvict(value = "track.byId", key = "#trackId"),
             @CacheEvict(value = "tracks.liked", key = "#user.id"),
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#user.id"),
-            @CacheEvict(value = "user.byEmail", key = "#user.email")
+            @CacheEvict(value = "track.likedStatus", key = "{#trackId, #user.id}")
     })
     public void unlikeTrack(Long trackId, User user) {
         Track track = trackRepository.findById(trackId)
@@ -352,6 +426,7 @@ public class TrackService {
             user.getLikedTracks().remove(track);
             trackRepository.save(track);
             userRepository.save(user);
+            cacheInvalidationService.evictDependents(CacheDependency.track(trackId));
             log.info("User {} unliked track {}", user.getId(), trackId);
         }
     }
@@ -368,6 +443,18 @@ public class TrackService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Удаленный трек уходит из всех записей, где он есть, а у альбома меняется число треков.
+     */
+    private void evictDependentsOfDeleted(Track track) {
+        if (track.getAlbum() != null) {
+            cacheInvalidationService.evictDependents(CacheDependency.track(track.getId()),
+                    CacheDependency.album(track.getAlbum().getId()));
+        } else {
+            cacheInvalidationService.evictDependents(CacheDependency.track(track.getId()));
+        }
+    }
+
     private void checkArtistOwnership(Artist artist, User user) throws ForbiddenException {
         if (!artist.getUser().getId().equals(user.getId())
                 && !user.getRoles().contains(Role.ADMIN)) {
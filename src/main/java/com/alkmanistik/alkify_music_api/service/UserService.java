@@ -1,5 +1,6 @@
 package com.alkmanistik.alkify_music_api.service;
 
+import com.alkmanistik.alkify_music_api.cache.CacheDependency;
 import com.alkmanistik.alkify_music_api.dto.UserDTO;
 import com.alkmanistik.alkify_music_api.mapper.GlobalMapper;
 import com.alkmanistik.alkify_music_api.model.Role;
@@ -30,6 +31,7 @@ public class UserService {
     private final GlobalMapper globalMapper;
     private final ArtistService artistService;
     private final PasswordEncoder passwordEncoder;
+    private final CacheInvalidationService cacheInvalidationService;
 
     @Transactional
     @Caching(evict = {
@@ -96,9 +98,8 @@ public class UserService {
 
     @Transactional
     @Caching(evict = {
-            @CacheEvict(value = "users.all", allEntries = true),
             @CacheEvict(value = "user.byId", key = "#userForUpdate.id"),
-            @CacheEvict(value = "user.byEmail", key = "#userUpdates.email")
+            @CacheEvict(value = "user.byEmail", key = "#userUpdates.email", condition = "#userUpdates.email != null")
     })
     public UserDTO updateUser(User userForUpdate, UserRequest userUpdates) {
 
@@ -120,14 +121,14 @@ public class UserService {
         }
 
         User updatedUser = userRepository.save(userForUpdate);
+        // Старый email и списки пользователей сбрасываются по зависимости
+        cacheInvalidationService.evictDependents(CacheDependency.user(updatedUser.getId()));
         return globalMapper.toUserDTO(updatedUser);
     }
 
     @Transactional
     @Caching(evict = {
-            @CacheEvict(value = "users.all", allEntries = true),
-            @CacheEvict(value = "user.byId", key = "#userId"),
-            @CacheEvict(value = "user.byEmail", allEntries = true)
+            @CacheEvict(value = "user.byId", key = "#userId")
     })
     public void deleteUser(Long userId) {
         User user = userRepository.findById(userId)
@@ -135,6 +136,7 @@ public class UserService {
 
         artistService.deleteAllArtistsByUser(userId);
         userRepository.delete(user);
+        cacheInvalidationService.evictDependents(CacheDependency.user(userId));
         log.info("Deleted user with id: {}", userId);
     }
 
@@ -0,0 +1,357 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.event.MediaFileDeletedEvent;
+import com.alkmanistik.alkify_music_api.event.MediaFileStoredEvent;
+import com.alkmanistik.alkify_music_api.exception.ServiceUnavailableException;
+import com.alkmanistik.alkify_music_api.service.AudioProbeService.AudioMetadata;
+import com.alkmanistik.alkify_music_api.storage.MediaLayout;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Пики формы волны для плееров: пары min/max по 8 бит, {@code project.waveform.points} пар на трек.
+ * Формат - audiowaveform .dat версии 1 (его читают peaks.js и waveform-data.js), лежит рядом с аудио в <имя>.peaks.
+ * PCM (WAV/AIFF) декодируется средствами JDK, остальные форматы - через ffmpeg, если он настроен.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WaveformService {
+
+    public static final String EXTENSION = ".peaks";
+
+    private static final int VERSION = 1;
+    private static final int FLAG_8_BIT = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int DEFAULT_SAMPLE_RATE = 44100;
+
+    private final FileService fileService;
+    private final MediaLayout mediaLayout;
+    private final AudioProbeService audioProbeService;
+
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    private Semaphore decodeSlots;
+
+    @Value("${project.audios}")
+    private String audioPath;
+
+    @Value("${project.waveform.points}")
+    private int points;
+
+    @Value("${project.waveform.ffmpeg:}")
+    private String ffmpeg;
+
+    @Value("${project.waveform.decode-timeout}")
+    private Duration decodeTimeout;
+
+    // Декодирование полного трека дорогое: одновременно не больше стольких сборок на узел
+    @Value("${project.waveform.max-concurrent-decodes}")
+    private int maxConcurrentDecodes;
+
+    @PostConstruct
+    void initDecodeSlots() {
+        decodeSlots = new Semaphore(maxConcurrentDecodes);
+    }
+
+    /**
+     * @return файл пиков; для аудио, загруженного до появления пиков, строится при первом запросе
+     * @throws ServiceUnavailableException если все слоты декодирования заняты
+     */
+    public Path getPeaks(String audioName) throws IOException, ServiceUnavailableException {
+        Path peaksFile = peaksPath(audioName);
+        if (Files.isRegularFile(peaksFile)) {
+            return peaksFile;
+        }
+        Path audio = fileService.getExistingFile(audioPath, audioName);
+        return buildOnce(audioName, audio, false);
+    }
+
+    @Async
+    @EventListener
+    public void onAudioStored(MediaFileStoredEvent event) {
+        if (!event.path().equals(audioPath)) {
+            return;
+        }
+        try {
+            if (!Files.exists(peaksPath(event.fileName()))) {
+                buildOnce(event.fileName(), fileService.getExistingFile(audioPath, event.fileName()), true);
+            }
+        } catch (IOException | ServiceUnavailableException | RuntimeException e) {
+            log.warn("Failed to build waveform for {}", event.fileName(), e);
+        }
+    }
+
+    @EventListener
+    public void onAudioDeleted(MediaFileDeletedEvent event) {
+        if (!event.path().equals(audioPath)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(peaksPath(event.fileName()));
+        } catch (IOException e) {
+            log.warn("Failed to delete waveform for {}", event.fileName(), e);
+        }
+    }
+
+    /**
+     * Single-flight: одновременные запросы к одному треку ждут одну сборку.
+     * Фоновая сборка ждет свободный слот, запрос без готовых пиков получает 503 вместо очереди.
+     */
+    private Path buildOnce(String audioName, Path audio, boolean waitForSlot)
+            throws IOException, ServiceUnavailableException {
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(audioName, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            Path peaksFile = peaksPath(audioName);
+            // Предыдущая сборка могла закончиться между проверкой файла и putIfAbsent
+            if (!Files.isRegularFile(peaksFile)) {
+                acquireDecodeSlot(waitForSlot);
+                try {
+                    build(audioName, audio);
+                } finally {
+                    decodeSlots.release();
+                }
+            }
+            future.complete(peaksFile);
+            return peaksFile;
+        } catch (IOException | ServiceUnavailableException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(audioName, future);
+        }
+    }
+
+    private void acquireDecodeSlot(boolean waitForSlot) throws IOException, ServiceUnavailableException {
+        if (!waitForSlot) {
+            if (!decodeSlots.tryAcquire()) {
+                throw new ServiceUnavailableException("Waveform decoding is busy, try again later");
+            }
+            return;
+        }
+        try {
+            decodeSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a waveform decode slot");
+        }
+    }
+
+    private Path await(CompletableFuture<Path> future) throws IOException, ServiceUnavailableException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for waveform");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof ServiceUnavailableException busy) {
+                throw busy;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Failed to build waveform", e.getCause());
+        }
+    }
+
+    private void build(String audioName, Path audio) throws IOException {
+        AudioMetadata metadata = audioProbeService.probe(audio);
+        Peaks peaks;
+        try (AudioInputStream pcm = AudioSystem.getAudioInputStream(audio.toFile())) {
+            peaks = decodePcm(pcm, metadata);
+        } catch (UnsupportedAudioFileException e) {
+            peaks = decodeWithFfmpeg(audio, metadata);
+        }
+
+        Path peaksFile = peaksPath(audioName);
+        Path tempFile = Files.createTempFile(peaksFile.getParent(), ".peaks-", ".tmp");
+        try {
+            Files.write(tempFile, peaks.toDat());
+            Files.move(tempFile, peaksFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        log.debug("Built waveform for {}: {} points, {} samples per point", audioName, peaks.length(), peaks.samplesPerPoint());
+    }
+
+    private Peaks decodePcm(AudioInputStream source, AudioMetadata metadata) throws IOException {
+        AudioFormat format = source.getFormat();
+        AudioFormat target = new AudioFormat(format.getSampleRate(), 16, format.getChannels(), true, false);
+        try (AudioInputStream pcm = AudioSystem.getAudioInputStream(target, source)) {
+            long frames = source.getFrameLength() > 0 ? source.getFrameLength() : estimateFrames(metadata, (int) format.getSampleRate());
+            return scan(pcm, format.getChannels(), (int) format.getSampleRate(), frames);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported PCM encoding: " + format, e);
+        }
+    }
+
+    private Peaks decodeWithFfmpeg(Path audio, AudioMetadata metadata) throws IOException {
+        if (ffmpeg == null || ffmpeg.isBlank()) {
+            throw new IllegalArgumentException(metadata.format() + " waveform requires project.waveform.ffmpeg to be set");
+        }
+        int sampleRate = metadata.sampleRate() > 0 ? metadata.sampleRate() : DEFAULT_SAMPLE_RATE;
+        // Сразу в моно 16 бит: форма волны по каналам не нужна
+        Process process = new ProcessBuilder(List.of(ffmpeg, "-v", "error", "-nostdin", "-i", audio.toString(),
+                "-ac", "1", "-ar", String.valueOf(sampleRate), "-f", "s16le", "-acodec", "pcm_s16le", "-"))
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        // scan читает stdout до EOF, поэтому зависший ffmpeg убиваем по таймеру, а не после чтения
+        AtomicBoolean timedOut = new AtomicBoolean();
+        process.onExit()
+                .orTimeout(decodeTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(e -> {
+                    timedOut.set(true);
+                    process.destroyForcibly();
+                    return process;
+                });
+        try (InputStream pcm = process.getInputStream()) {
+            Peaks peaks;
+            try {
+                peaks = scan(pcm, 1, sampleRate, estimateFrames(metadata, sampleRate));
+            } catch (IOException e) {
+                if (timedOut.get()) {
+                    throw new IOException("ffmpeg timed out decoding " + audio.getFileName(), e);
+                }
+                throw e;
+            }
+            int exitCode = process.waitFor();
+            if (timedOut.get()) {
+                throw new IOException("ffmpeg timed out decoding " + audio.getFileName());
+            }
+            if (exitCode != 0) {
+                throw new IOException("ffmpeg failed to decode " + audio.getFileName() + ", exit code " + exitCode);
+            }
+            return peaks;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding " + audio.getFileName());
+        } finally {
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Один проход по 16-битному PCM: min/max всех каналов на каждые samplesPerPoint кадров.
+     */
+    private Peaks scan(InputStream pcm, int channels, int sampleRate, long estimatedFrames) throws IOException {
+        int samplesPerPoint = (int) Math.max(1, (estimatedFrames + points - 1) / points);
+        Peaks peaks = new Peaks(sampleRate, samplesPerPoint, points);
+        byte[] buffer = new byte[64 * 1024 / (2 * channels) * (2 * channels)];
+        int frameSize = 2 * channels;
+        int buffered = 0;
+        int read;
+        while ((read = pcm.read(buffer, buffered, buffer.length - buffered)) >= 0) {
+            buffered += read;
+            int whole = buffered - buffered % frameSize;
+            for (int offset = 0; offset < whole; offset += 2) {
+                peaks.add((short) (buffer[offset] & 0xFF | buffer[offset + 1] << 8), offset % frameSize == frameSize - 2);
+            }
+            // Неполный кадр переносим в начало буфера
+            System.arraycopy(buffer, whole, buffer, 0, buffered - whole);
+            buffered -= whole;
+        }
+        peaks.finish();
+        return peaks;
+    }
+
+    private long estimateFrames(AudioMetadata metadata, int sampleRate) {
+        return Math.max(1, metadata.durationMillis() * sampleRate / 1000);
+    }
+
+    private Path peaksPath(String audioName) {
+        return mediaLayout.resolvePath(audioPath, audioName + EXTENSION);
+    }
+
+    private static final class Peaks {
+
+        private final int sampleRate;
+        private final int samplesPerPoint;
+        private final ByteArrayOutputStream data;
+        private int length;
+        private int frames;
+        private int min = Short.MAX_VALUE;
+        private int max = Short.MIN_VALUE;
+
+        Peaks(int sampleRate, int samplesPerPoint, int expectedPoints) {
+            this.sampleRate = sampleRate;
+            this.samplesPerPoint = samplesPerPoint;
+            this.data = new ByteArrayOutputStream(expectedPoints * 2 + 16);
+        }
+
+        void add(short sample, boolean endOfFrame) {
+            min = Math.min(min, sample);
+            max = Math.max(max, sample);
+            if (endOfFrame && ++frames == samplesPerPoint) {
+                flush();
+            }
+        }
+
+        void finish() {
+            if (frames > 0) {
+                flush();
+            }
+        }
+
+        int length() {
+            return length;
+        }
+
+        int samplesPerPoint() {
+            return samplesPerPoint;
+        }
+
+        byte[] toDat() {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+                    .putInt(VERSION)
+                    .putInt(FLAG_8_BIT)
+                    .putInt(sampleRate)
+                    .putInt(samplesPerPoint)
+                    .putInt(length);
+            byte[] result = new byte[HEADER_SIZE + data.size()];
+            System.arraycopy(header.array(), 0, result, 0, HEADER_SIZE);
+            System.arraycopy(data.toByteArray(), 0, result, HEADER_SIZE, data.size());
+            return result;
+        }
+
+        private void flush() {
+            // Старший байт 16-битного отсчета - 8-битное значение пика
+            data.write(min >> 8);
+            data.write(max >> 8);
+            length++;
+            frames = 0;
+            min = Short.MAX_VALUE;
+            max = Short.MIN_VALUE;
+        }
+    }
+}
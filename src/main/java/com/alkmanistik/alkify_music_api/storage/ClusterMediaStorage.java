@@ -0,0 +1,446 @@
+package com.alkmanistik.alkify_music_api.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * Медиа на нескольких узлах без общего хранилища. Каждый файл принадлежит {@code replicas} узлам,
+ * выбранным согласованным хешированием имени. Узел, принявший загрузку, сразу отвечает клиенту,
+ * а копии владельцам рассылает в фоне. Узел без нужного файла скачивает его у владельцев (или у любого
+ * узла, где он есть) и оставляет у себя: чужие копии занимают не больше {@code cache.max-size} и вытесняются по LRU.
+ * Промах у соседей запоминается на {@code negative-ttl}, чтобы запросы несуществующих имен не ходили по кластеру.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(value = "project.storage.backend", havingValue = "cluster")
+public class ClusterMediaStorage implements MediaStorage {
+
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private static final String PEER_API = "/internal/v1/cluster/media/";
+    private static final String PEER_PREFIX = ".peer-";
+    private static final int BATCH_SIZE = 500;
+    private static final Pattern CONTENT_ADDRESSED_NAME = Pattern.compile("^([0-9a-f]{64})(\\.[^.]+)?$");
+
+    private final MediaLayout mediaLayout;
+
+    private final Map<Path, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService replicationExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, URI> peers = new LinkedHashMap<>();
+    private HttpClient httpClient;
+    private ConsistentHashRing ring;
+    private HotTierIndex cachedCopies;
+    private Cache<Path, Boolean> missing;
+
+    @Value("${project.images}")
+    private String imagePath;
+
+    @Value("${project.audios}")
+    private String audioPath;
+
+    @Value("${project.cluster.node-id}")
+    private String nodeId;
+
+    @Value("${project.cluster.nodes}")
+    private List<String> nodes;
+
+    @Value("${project.cluster.replicas}")
+    private int replicas;
+
+    @Value("${project.cluster.virtual-nodes}")
+    private int virtualNodes;
+
+    @Value("${project.cluster.secret}")
+    private String secret;
+
+    @Value("${project.cluster.timeout}")
+    private Duration timeout;
+
+    @Value("${project.cluster.connect-timeout}")
+    private Duration connectTimeout;
+
+    @Value("${project.cluster.negative-ttl}")
+    private Duration negativeTtl;
+
+    @Value("${project.cluster.replication-attempts}")
+    private int replicationAttempts;
+
+    @Value("${project.cluster.cache.max-size}")
+    private DataSize cacheMaxSize;
+
+    @PostConstruct
+    void init() throws IOException {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalStateException("project.cluster.secret must be set for the cluster storage backend");
+        }
+        // node-1=http://host-1:8080,node-2=http://host-2:8080
+        for (String node : nodes) {
+            int separator = node.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalStateException("Invalid cluster node, expected id=url: " + node);
+            }
+            peers.put(node.substring(0, separator).strip(), URI.create(node.substring(separator + 1).strip()));
+        }
+        if (!peers.containsKey(nodeId)) {
+            throw new IllegalStateException("Cluster node " + nodeId + " is not listed in project.cluster.nodes");
+        }
+        ring = new ConsistentHashRing(peers.keySet(), virtualNodes);
+        // Недоступный узел должен отказывать быстро: запрос файла ждет соседей на потоке воркера
+        httpClient = HttpClient.newBuilder().connectTimeout(connectTimeout).build();
+        missing = Caffeine.newBuilder()
+                .expireAfterWrite(negativeTtl)
+                .maximumSize(10_000)
+                .build();
+
+        // Файлы, владельцем которых узел не является, - кеш чужих копий
+        cachedCopies = new HotTierIndex("Peer cache", cacheMaxSize.toBytes(), entry -> Files.deleteIfExists(entry.file()));
+        List<HotTierIndex.Entry> copies = new ArrayList<>();
+        for (String path : List.of(imagePath, audioPath)) {
+            String cursor = null;
+            List<Path> batch;
+            do {
+                batch = mediaLayout.listFiles(path, cursor, BATCH_SIZE);
+                for (Path file : batch) {
+                    String fileName = file.getFileName().toString();
+                    if (!fileName.startsWith(".") && !isOwner(fileName)) {
+                        copies.add(new HotTierIndex.Entry(path, fileName, file, Files.size(file),
+                                Files.getLastModifiedTime(file).toMillis()));
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    cursor = mediaLayout.relativeName(path, batch.getLast());
+                }
+            } while (batch.size() == BATCH_SIZE);
+        }
+        cachedCopies.load(copies);
+        log.info("Cluster node {} of {}, {} replicas per file", nodeId, peers.keySet(), replicas);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        replicationExecutor.shutdown();
+    }
+
+    @Override
+    public boolean store(String path, String fileName, Path source) throws IOException {
+        if (Files.exists(mediaLayout.locate(path, fileName))) {
+            Files.delete(source);
+            return false;
+        }
+        Path target = mediaLayout.resolvePath(path, fileName);
+        Files.createDirectories(target.getParent());
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        missing.invalidate(target);
+        replicationExecutor.execute(() -> replicate(path, fileName, target));
+        return true;
+    }
+
+    @Override
+    public Path fetch(String path, String fileName) throws IOException {
+        Path local = mediaLayout.locate(path, fileName);
+        if (Files.isRegularFile(local)) {
+            cachedCopies.touch(local);
+            return local;
+        }
+
+        // Single-flight: одновременные промахи по одному файлу ждут одно скачивание
+        Path target = mediaLayout.resolvePath(path, fileName);
+        if (missing.getIfPresent(target) != null) {
+            throw new FileNotFoundException("File not found on any cluster node: " + fileName);
+        }
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(target, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            Path fetched = Files.isRegularFile(target) ? target : fetchFromPeers(path, fileName, target);
+            future.complete(fetched);
+            return fetched;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(target);
+        }
+    }
+
+    @Override
+    public boolean exists(String path, String fileName) throws IOException {
+        if (Files.isRegularFile(mediaLayout.locate(path, fileName))) {
+            return true;
+        }
+        for (String node : otherNodes(fileName)) {
+            try {
+                if (send(node, "HEAD", path, fileName, HttpRequest.BodyPublishers.noBody(),
+                        HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return true;
+                }
+            } catch (IOException e) {
+                log.debug("Cluster node {} is unavailable: {}", node, e.toString());
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean delete(String path, String fileName) throws IOException {
+        boolean deleted = deleteReplica(path, fileName);
+        // Копии могут лежать и у владельцев, и в кеше любого узла
+        for (String node : otherNodes(fileName)) {
+            replicationExecutor.execute(() -> {
+                try {
+                    send(node, "DELETE", path, fileName, HttpRequest.BodyPublishers.noBody(),
+                            HttpResponse.BodyHandlers.discarding());
+                } catch (IOException e) {
+                    log.warn("Failed to delete {}{} on cluster node {}", path, fileName, node, e);
+                }
+            });
+        }
+        return deleted;
+    }
+
+    /**
+     * Проверка общего секрета узлов для внутренних запросов.
+     */
+    public boolean isTrusted(String presentedSecret) {
+        return presentedSecret != null && MessageDigest.isEqual(
+                presentedSecret.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return каталог по имени из адреса внутреннего API
+     */
+    public String directoryOf(String name) {
+        for (String path : List.of(imagePath, audioPath)) {
+            if (name.equals(directoryName(path))) {
+                return path;
+            }
+        }
+        throw new IllegalArgumentException("Unknown media directory: " + name);
+    }
+
+    /**
+     * Локальная копия для соседнего узла. Сам узел у соседей не спрашивает, чтобы запросы не ходили по кругу.
+     */
+    public Path localCopy(String path, String fileName) throws FileNotFoundException {
+        Path local = mediaLayout.locate(path, fileName);
+        if (!Files.isRegularFile(local)) {
+            throw new FileNotFoundException("File not found: " + fileName);
+        }
+        return local;
+    }
+
+    /**
+     * Принимает копию файла от соседнего узла. Для content-addressed имен сверяет SHA-256.
+     */
+    public void acceptReplica(String path, String fileName, InputStream body) throws IOException {
+        Path target = mediaLayout.resolvePath(path, fileName);
+        receive(fileName, target, body);
+        missing.invalidate(target);
+        if (!isOwner(fileName)) {
+            cachedCopies.track(path, fileName, target);
+        }
+        log.debug("Accepted replica {}{}", path, fileName);
+    }
+
+    public boolean deleteReplica(String path, String fileName) throws IOException {
+        Path sharded = mediaLayout.resolvePath(path, fileName);
+        cachedCopies.remove(sharded);
+        boolean deleted = Files.deleteIfExists(sharded);
+        if (mediaLayout.isSharded()) {
+            Path flat = mediaLayout.flatPath(path, fileName);
+            cachedCopies.remove(flat);
+            deleted |= Files.deleteIfExists(flat);
+        }
+        return deleted;
+    }
+
+    private void replicate(String path, String fileName, Path file) {
+        boolean replicated = true;
+        for (String node : ring.replicasFor(fileName, replicas)) {
+            if (!node.equals(nodeId)) {
+                replicated &= replicateTo(node, path, fileName, file);
+            }
+        }
+        // Копию на неродном узле можно вытеснять только после того, как ее получили владельцы
+        if (replicated && !isOwner(fileName)) {
+            try {
+                cachedCopies.track(path, fileName, file);
+            } catch (IOException e) {
+                log.warn("Failed to track cached copy {}", file, e);
+            }
+        }
+    }
+
+    private boolean replicateTo(String node, String path, String fileName, Path file) {
+        for (int attempt = 1; attempt <= replicationAttempts; attempt++) {
+            try {
+                HttpResponse<Void> response = send(node, "PUT", path, fileName,
+                        HttpRequest.BodyPublishers.ofFile(file), HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() / 100 == 2) {
+                    log.debug("Replicated {}{} to {}", path, fileName, node);
+                    return true;
+                }
+                log.warn("Cluster node {} responded {} to replica {}", node, response.statusCode(), fileName);
+            } catch (IOException e) {
+                log.warn("Replication of {}{} to {} failed, attempt {}: {}", path, fileName, node, attempt, e.toString());
+            }
+            try {
+                Thread.sleep(1000L << (attempt - 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        // Владелец получит файл позже сам - первым же запросом к соседям
+        log.error("Gave up replicating {}{} to {}", path, fileName, node);
+        return false;
+    }
+
+    /**
+     * Скачивает файл целиком в локальный кеш, отдача клиенту начинается после этого.
+     * Спрашивает сначала владельцев, затем остальных: файл может лежать только у принявшего загрузку узла,
+     * пока репликация не дошла до владельцев или вовсе от нее отказалась.
+     * Промах запоминается, только если ответили все узлы, а не часть из них была недоступна.
+     */
+    private Path fetchFromPeers(String path, String fileName, Path target) throws IOException {
+        boolean allAnswered = true;
+        for (String node : otherNodes(fileName)) {
+            try {
+                HttpResponse<InputStream> response = send(node, "GET", path, fileName,
+                        HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.ofInputStream());
+                try (InputStream body = response.body()) {
+                    if (response.statusCode() != 200) {
+                        allAnswered &= response.statusCode() == 404;
+                        continue;
+                    }
+                    receive(fileName, target, body);
+                }
+                if (!isOwner(fileName)) {
+                    cachedCopies.track(path, fileName, target);
+                }
+                log.info("Fetched {}{} from cluster node {}", path, fileName, node);
+                return target;
+            } catch (IOException e) {
+                allAnswered = false;
+                log.warn("Failed to fetch {}{} from cluster node {}: {}", path, fileName, node, e.toString());
+            }
+        }
+        if (allAnswered) {
+            missing.put(target, Boolean.TRUE);
+        }
+        throw new FileNotFoundException("File not found on any cluster node: " + fileName);
+    }
+
+    private void receive(String fileName, Path target, InputStream body) throws IOException {
+        Path dirPath = target.getParent();
+        Files.createDirectories(dirPath);
+        Path tempFile = Files.createTempFile(dirPath, PEER_PREFIX, ".tmp");
+        try {
+            MessageDigest digest = newSha256();
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tempFile, StandardOpenOption.WRITE), digest)) {
+                body.transferTo(out);
+            }
+            var matcher = CONTENT_ADDRESSED_NAME.matcher(fileName);
+            if (matcher.matches() && !matcher.group(1).equals(HexFormat.of().formatHex(digest.digest()))) {
+                throw new IOException("Checksum mismatch for replica " + fileName);
+            }
+            // Содержимое под одним именем одинаково, замена существующей копии безопасна
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private <T> HttpResponse<T> send(String node, String method, String path, String fileName,
+                                     HttpRequest.BodyPublisher body, HttpResponse.BodyHandler<T> handler) throws IOException {
+        URI uri = peers.get(node).resolve(PEER_API + directoryName(path) + "/"
+                + URLEncoder.encode(fileName, StandardCharsets.UTF_8).replace("+", "%20"));
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .method(method, body)
+                .header(SECRET_HEADER, secret)
+                .build();
+        try {
+            return httpClient.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while calling cluster node " + node);
+        }
+    }
+
+    private boolean isOwner(String fileName) {
+        return ring.replicasFor(fileName, replicas).contains(nodeId);
+    }
+
+    // Сначала владельцы, затем остальные - у них может лежать кешированная копия
+    private List<String> otherNodes(String fileName) {
+        return ring.nodesFor(fileName).stream()
+                .filter(node -> !node.equals(nodeId))
+                .toList();
+    }
+
+    private String directoryName(String path) {
+        return Paths.get(path).normalize().getFileName().toString();
+    }
+
+    private MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private Path await(CompletableFuture<Path> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching media file");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IllegalStateException("Failed to fetch media file", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.alkmanistik.alkify_music_api.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Кольцо согласованного хеширования: у каждого узла несколько виртуальных точек, файл принадлежит первым
+ * узлам по часовой стрелке от хеша своего имени. При добавлении или удалении узла переезжает
+ * примерно 1/N файлов, а не все.
+ */
+final class ConsistentHashRing {
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final int nodeCount;
+
+    ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("Cluster has no nodes");
+        }
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+        this.nodeCount = new HashSet<>(nodes).size();
+    }
+
+    /**
+     * @return все узлы в порядке предпочтения для ключа; первые {@code replicas} из них - владельцы
+     */
+    List<String> nodesFor(String key) {
+        LinkedHashSet<String> nodes = new LinkedHashSet<>();
+        collect(ring.tailMap(hash(key)).values(), nodes);
+        collect(ring.values(), nodes);
+        return List.copyOf(nodes);
+    }
+
+    List<String> replicasFor(String key, int replicas) {
+        List<String> nodes = nodesFor(key);
+        return nodes.subList(0, Math.min(replicas, nodes.size()));
+    }
+
+    private void collect(Collection<String> points, Set<String> nodes) {
+        for (String node : points) {
+            if (nodes.size() == nodeCount) {
+                return;
+            }
+            nodes.add(node);
+        }
+    }
+
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported", e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.alkmanistik.alkify_music_api.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Хранилище по умолчанию: файлы лежат только на локальном диске.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(value = "project.storage.backend", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemMediaStorage implements MediaStorage {
+
+    private final MediaLayout mediaLayout;
+
+    @Override
+    public boolean store(String path, String fileName, Path source) throws IOException {
+        // Копия может еще лежать по старой плоской раскладке, пока миграция до нее не дошла
+        if (Files.exists(mediaLayout.locate(path, fileName))) {
+            Files.delete(source);
+            return false;
+        }
+        Path target = mediaLayout.resolvePath(path, fileName);
+        Files.createDirectories(target.getParent());
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    @Override
+    public Path fetch(String path, String fileName) throws IOException {
+        Path filePath = mediaLayout.locate(path, fileName);
+        if (!Files.isRegularFile(filePath)) {
+            throw new FileNotFoundException("File not found: " + fileName);
+        }
+        return filePath;
+    }
+
+    @Override
+    public boolean exists(String path, String fileName) {
+        return Files.isRegularFile(mediaLayout.locate(path, fileName));
+    }
+
+    @Override
+    public boolean delete(String path, String fileName) throws IOException {
+        boolean deleted = Files.deleteIfExists(mediaLayout.resolvePath(path, fileName));
+        if (mediaLayout.isSharded()) {
+            deleted |= Files.deleteIfExists(mediaLayout.flatPath(path, fileName));
+        }
+        return deleted;
+    }
+}
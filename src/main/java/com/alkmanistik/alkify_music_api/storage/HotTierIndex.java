@@ -0,0 +1,125 @@
+package com.alkmanistik.alkify_music_api.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Учет локальных копий с ограничением по суммарному размеру и вытеснением по LRU.
+ * Вытеснение идет в фоне, решение о судьбе файла принимает {@link Evictor}.
+ */
+@Slf4j
+class HotTierIndex {
+
+    // Порядок доступа: первым лежит самый давно запрошенный файл
+    private final LinkedHashMap<Path, Entry> index = new LinkedHashMap<>(1024, 0.75f, true);
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final String name;
+    private final long maxBytes;
+    private final Evictor evictor;
+    private long cachedBytes;
+
+    HotTierIndex(String name, long maxBytes, Evictor evictor) {
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.evictor = evictor;
+    }
+
+    /**
+     * Заполняет индекс при старте: порядок вытеснения - по времени изменения файлов.
+     */
+    void load(List<Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparingLong(Entry::lastModified));
+        synchronized (index) {
+            for (Entry entry : sorted) {
+                Entry previous = index.put(entry.file(), entry);
+                cachedBytes += entry.size() - (previous != null ? previous.size() : 0);
+            }
+        }
+        evictIfNeeded();
+        log.info("{} loaded: {} files, {} bytes of {}", name, sorted.size(), cachedBytes(), maxBytes);
+    }
+
+    void track(String path, String fileName, Path file) throws IOException {
+        Entry entry = new Entry(path, fileName, file, Files.size(file), System.currentTimeMillis());
+        synchronized (index) {
+            Entry previous = index.put(file, entry);
+            cachedBytes += entry.size() - (previous != null ? previous.size() : 0);
+        }
+        evictIfNeeded();
+    }
+
+    void touch(Path file) {
+        synchronized (index) {
+            // get в карте с порядком доступа переносит файл в конец очереди на вытеснение
+            index.get(file);
+        }
+    }
+
+    void remove(Path file) {
+        synchronized (index) {
+            Entry removed = index.remove(file);
+            if (removed != null) {
+                cachedBytes -= removed.size();
+            }
+        }
+    }
+
+    long cachedBytes() {
+        synchronized (index) {
+            return cachedBytes;
+        }
+    }
+
+    private void evictIfNeeded() {
+        if (cachedBytes() <= maxBytes || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.ofVirtual().name("hot-tier-eviction").start(() -> {
+            try {
+                Entry victim;
+                while ((victim = nextVictim()) != null) {
+                    evict(victim);
+                }
+            } finally {
+                evicting.set(false);
+            }
+        });
+    }
+
+    private Entry nextVictim() {
+        synchronized (index) {
+            if (cachedBytes <= maxBytes || index.isEmpty()) {
+                return null;
+            }
+            Iterator<Entry> iterator = index.values().iterator();
+            Entry victim = iterator.next();
+            cachedBytes -= victim.size();
+            iterator.remove();
+            return victim;
+        }
+    }
+
+    private void evict(Entry victim) {
+        try {
+            evictor.evict(victim);
+            log.debug("Evicted {} from {}", victim.file(), name);
+        } catch (IOException | RuntimeException e) {
+            // Файл остается на диске вне индекса до следующего запуска
+            log.warn("Failed to evict {} from {}", victim.file(), name, e);
+        }
+    }
+
+    @FunctionalInterface
+    interface Evictor {
+        void evict(Entry entry) throws IOException;
+    }
+
+    record Entry(String path, String fileName, Path file, long size, long lastModified) {
+    }
+}
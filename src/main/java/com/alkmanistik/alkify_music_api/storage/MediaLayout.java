@@ -0,0 +1,164 @@
+package com.alkmanistik.alkify_music_api.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * Раскладка медиафайлов в локальных каталогах. Общая для всех реализаций {@link MediaStorage}:
+ * у файловой это основное хранилище, у удаленной - горячий слой.
+ */
+@Component
+public class MediaLayout {
+
+    private static final int SHARD_KEY_LENGTH = 4;
+    private static final int SHARD_DEPTH = 2;
+
+    @Value("${project.storage.sharding.enabled:false}")
+    private boolean sharded;
+
+    /**
+     * Место, где файл должен лежать при текущей раскладке. При шардировании это
+     * {@code <dir>/ab/cd/<name>}: два уровня по первым hex-символам имени, чтобы в одном каталоге
+     * не копились сотни тысяч файлов. Имена в БД от раскладки не зависят.
+     */
+    public Path resolvePath(String path, String fileName) {
+        return sharded ? shardedPath(path, fileName) : flatPath(path, fileName);
+    }
+
+    /**
+     * Фактическое расположение файла: по текущей раскладке, иначе по плоской (еще не перенесен),
+     * иначе снова по текущей - на случай, если миграция переместила файл между двумя проверками.
+     * Если файла нет нигде, возвращается путь по текущей раскладке.
+     */
+    public Path locate(String path, String fileName) {
+        Path filePath = resolvePath(path, fileName);
+        if (!sharded || Files.exists(filePath)) {
+            return filePath;
+        }
+        Path legacy = flatPath(path, fileName);
+        if (Files.exists(legacy)) {
+            return legacy;
+        }
+        return filePath;
+    }
+
+    public Path flatPath(String path, String fileName) {
+        Path dirPath = Paths.get(path).normalize();
+        Path filePath = dirPath.resolve(fileName).normalize();
+        if (!filePath.startsWith(dirPath)) {
+            throw new IllegalArgumentException("Invalid file name: " + fileName);
+        }
+        return filePath;
+    }
+
+    public Path shardedPath(String path, String fileName) {
+        if (fileName.indexOf('/') >= 0 || fileName.indexOf('\\') >= 0) {
+            throw new IllegalArgumentException("Invalid file name: " + fileName);
+        }
+        String shard = shardOf(fileName);
+        Path dirPath = Paths.get(path).normalize();
+        Path shardPath = dirPath.resolve(shard.substring(0, 2)).resolve(shard.substring(2, 4));
+        Path filePath = shardPath.resolve(fileName).normalize();
+        if (!shardPath.equals(filePath.getParent())) {
+            throw new IllegalArgumentException("Invalid file name: " + fileName);
+        }
+        return filePath;
+    }
+
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    // SHA-256 и UUID начинаются с hex и распределены равномерно; прочие имена хешируем
+    private static String shardOf(String fileName) {
+        if (fileName.length() > SHARD_KEY_LENGTH && isHex(fileName, SHARD_KEY_LENGTH)) {
+            return fileName.substring(0, SHARD_KEY_LENGTH).toLowerCase(Locale.ROOT);
+        }
+        return "%08x".formatted(fileName.hashCode()).substring(0, SHARD_KEY_LENGTH);
+    }
+
+    private static boolean isHex(String value, int length) {
+        for (int i = 0; i < length; i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Очередная порция обычных файлов каталога по возрастанию относительного пути - и в корне,
+     * и в каталогах шардов. Скрытые подкаталоги (карантин) пропускаются.
+     * @param after относительный путь последнего обработанного файла или null, чтобы начать сначала
+     */
+    public List<Path> listFiles(String path, String after, int limit) throws IOException {
+        Path dirPath = Paths.get(path).normalize();
+        TreeMap<String, Path> batch = new TreeMap<>();
+        Files.walkFileTree(dirPath, EnumSet.noneOf(FileVisitOption.class), SHARD_DEPTH + 1, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.equals(dirPath)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (dir.getFileName().toString().startsWith(".")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                // Каталог целиком до курсора или после последнего кандидата - заходить незачем
+                String relative = relativeName(dirPath, dir) + "/";
+                if (after != null && relative.compareTo(after) < 0 && !after.startsWith(relative)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (batch.size() >= limit && relative.compareTo(batch.lastKey()) > 0) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String relative = relativeName(dirPath, file);
+                if (after != null && relative.compareTo(after) <= 0) {
+                    return FileVisitResult.CONTINUE;
+                }
+                batch.put(relative, file);
+                if (batch.size() > limit) {
+                    batch.pollLastEntry();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Файл удалили или перенесли во время обхода
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return new ArrayList<>(batch.values());
+    }
+
+    public String relativeName(String path, Path file) {
+        return relativeName(Paths.get(path).normalize(), file);
+    }
+
+    private static String relativeName(Path dirPath, Path file) {
+        return dirPath.relativize(file.normalize()).toString().replace('\\', '/');
+    }
+
+}
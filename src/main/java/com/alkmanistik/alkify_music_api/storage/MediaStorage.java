@@ -0,0 +1,33 @@
+package com.alkmanistik.alkify_music_api.storage;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Хранилище медиафайлов. Файлы адресуются парой каталог ({@code project.images}/{@code project.audios}) и имя -
+ * ровно так, как они записаны в БД. Чтение всегда идет с локального диска: стриминг, sendfile и индексы
+ * работают с {@link Path}, поэтому удаленная реализация сначала подтягивает файл в горячий слой.
+ * Вызывающий держит {@code FileService#lockFor} на имя при записи и удалении.
+ */
+public interface MediaStorage {
+
+    /**
+     * Забирает {@code source} в хранилище под именем {@code fileName}.
+     * @return false, если файл с таким именем уже есть - тогда {@code source} просто удаляется
+     */
+    boolean store(String path, String fileName, Path source) throws IOException;
+
+    /**
+     * @return локальный путь к содержимому файла
+     * @throws FileNotFoundException если файла нет
+     */
+    Path fetch(String path, String fileName) throws IOException;
+
+    boolean exists(String path, String fileName) throws IOException;
+
+    /**
+     * @return true, если что-то было удалено
+     */
+    boolean delete(String path, String fileName) throws IOException;
+}
@@ -0,0 +1,225 @@
+package com.alkmanistik.alkify_music_api.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+
+/**
+ * Минимальный клиент S3-совместимого хранилища (AWS S3, MinIO, Ceph RGW): PUT/GET/HEAD/DELETE объекта
+ * с подписью AWS Signature V4. Адресация path-style ({@code endpoint/bucket/key}) - ее понимают все реализации.
+ * Тело не подписывается (UNSIGNED-PAYLOAD), чтобы не читать файл дважды; целостность проверяем своими SHA-256.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "project.storage.backend", havingValue = "s3")
+public class S3ObjectStore {
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    private static final String SIGNED_HEADERS = "host;x-amz-content-sha256;x-amz-date";
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+    private static final DateTimeFormatter AMZ_DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final HttpClient httpClient;
+
+    @Value("${project.storage.s3.endpoint}")
+    private URI endpoint;
+
+    @Value("${project.storage.s3.region}")
+    private String region;
+
+    @Value("${project.storage.s3.bucket}")
+    private String bucket;
+
+    @Value("${project.storage.s3.access-key}")
+    private String accessKey;
+
+    @Value("${project.storage.s3.secret-key}")
+    private String secretKey;
+
+    @Value("${project.storage.s3.timeout:PT5M}")
+    private Duration timeout;
+
+    public S3ObjectStore(@Value("${project.storage.s3.connect-timeout:PT5S}") Duration connectTimeout) {
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+
+    public void put(String key, Path source) throws IOException {
+        HttpResponse<Void> response = send("PUT", key, HttpRequest.BodyPublishers.ofFile(source),
+                HttpResponse.BodyHandlers.discarding());
+        expectSuccess(response, key);
+        log.debug("Uploaded {} to {}", key, bucket);
+    }
+
+    /**
+     * Скачивает объект в {@code target}, перезаписывая его.
+     * @throws FileNotFoundException если объекта нет
+     */
+    public void get(String key, Path target) throws IOException {
+        HttpResponse<Path> response = send("GET", key, HttpRequest.BodyPublishers.noBody(),
+                HttpResponse.BodyHandlers.ofFile(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING));
+        if (response.statusCode() / 100 != 2) {
+            // При ошибке в файл попало XML-описание ошибки
+            Files.deleteIfExists(target);
+        }
+        expectSuccess(response, key);
+    }
+
+    public boolean exists(String key) throws IOException {
+        HttpResponse<Void> response = send("HEAD", key, HttpRequest.BodyPublishers.noBody(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() == 404) {
+            return false;
+        }
+        expectSuccess(response, key);
+        return true;
+    }
+
+    public void delete(String key) throws IOException {
+        HttpResponse<Void> response = send("DELETE", key, HttpRequest.BodyPublishers.noBody(),
+                HttpResponse.BodyHandlers.discarding());
+        // Удаление отсутствующего объекта в S3 тоже успешно
+        if (response.statusCode() != 404) {
+            expectSuccess(response, key);
+        }
+    }
+
+    private <T> HttpResponse<T> send(String method, String key, HttpRequest.BodyPublisher body,
+                                     HttpResponse.BodyHandler<T> handler) throws IOException {
+        String canonicalUri = canonicalUri(key);
+        URI uri = endpoint.resolve(canonicalUri);
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        String amzDate = AMZ_DATE.format(now);
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .method(method, body)
+                .header("x-amz-content-sha256", UNSIGNED_PAYLOAD)
+                .header("x-amz-date", amzDate)
+                .header("Authorization", authorization(method, canonicalUri, host(uri), amzDate, AMZ_DAY.format(now)))
+                .build();
+        try {
+            return httpClient.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while calling object storage");
+        }
+    }
+
+    private void expectSuccess(HttpResponse<?> response, String key) throws IOException {
+        int status = response.statusCode();
+        if (status == 404) {
+            throw new FileNotFoundException("Object not found: " + key);
+        }
+        if (status / 100 != 2) {
+            throw new IOException("Object storage responded " + status + " for " + key);
+        }
+    }
+
+    private String authorization(String method, String canonicalUri, String host, String amzDate, String day) {
+        String canonicalRequest = String.join("\n",
+                method,
+                canonicalUri,
+                "",
+                "host:" + host,
+                "x-amz-content-sha256:" + UNSIGNED_PAYLOAD,
+                "x-amz-date:" + amzDate,
+                "",
+                SIGNED_HEADERS,
+                UNSIGNED_PAYLOAD);
+        String scope = day + "/" + region + "/s3/aws4_request";
+        String stringToSign = String.join("\n", ALGORITHM, amzDate, scope, hex(sha256(canonicalRequest)));
+
+        byte[] signingKey = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), day);
+        signingKey = hmac(signingKey, region);
+        signingKey = hmac(signingKey, "s3");
+        signingKey = hmac(signingKey, "aws4_request");
+        String signature = hex(hmac(signingKey, stringToSign));
+
+        return ALGORITHM + " Credential=" + accessKey + "/" + scope
+                + ", SignedHeaders=" + SIGNED_HEADERS
+                + ", Signature=" + signature;
+    }
+
+    // Путь запроса с учетом пути в endpoint; каждый сегмент кодируется по RFC 3986
+    private String canonicalUri(String key) {
+        String basePath = endpoint.getRawPath() == null || endpoint.getRawPath().isEmpty() ? "/" : endpoint.getRawPath();
+        if (!basePath.endsWith("/")) {
+            basePath += "/";
+        }
+        StringBuilder uri = new StringBuilder(basePath).append(encode(bucket));
+        for (String segment : key.split("/")) {
+            uri.append('/').append(encode(segment));
+        }
+        return uri.toString();
+    }
+
+    // HttpClient сам ставит Host без порта по умолчанию - подписываем то же значение
+    private static String host(URI uri) {
+        int port = uri.getPort();
+        boolean defaultPort = port == -1
+                || "http".equals(uri.getScheme()) && port == 80
+                || "https".equals(uri.getScheme()) && port == 443;
+        return defaultPort ? uri.getHost() : uri.getHost() + ":" + port;
+    }
+
+    private static String encode(String value) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if (c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9'
+                    || c == '-' || c == '_' || c == '.' || c == '~') {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(HexFormat.of().withUpperCase().toHexDigits(b));
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String value) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not supported", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+}
@@ -0,0 +1,208 @@
+package com.alkmanistik.alkify_music_api.storage;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Файлы живут в S3-совместимом хранилище, а локальные каталоги служат горячим слоем: запрошенный файл
+ * скачивается туда один раз и дальше отдается с диска (sendfile, Range), пока его не вытеснят по LRU.
+ * Записи идут сквозь оба уровня, так что свежая загрузка сразу горячая.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(value = "project.storage.backend", havingValue = "s3")
+public class TieredMediaStorage implements MediaStorage {
+
+    static final String FETCH_PREFIX = ".fetch-";
+    private static final int BATCH_SIZE = 500;
+    // Сайдкары и прочие производные файлы живут только локально и пересоздаются по требованию
+    private static final List<String> LOCAL_ONLY_SUFFIXES = List.of(".seek", ".peaks");
+
+    private final MediaLayout mediaLayout;
+    private final S3ObjectStore objectStore;
+
+    private final Map<Path, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    private HotTierIndex hotTier;
+
+    @Value("${project.images}")
+    private String imagePath;
+
+    @Value("${project.audios}")
+    private String audioPath;
+
+    @Value("${project.storage.s3.key-prefix:}")
+    private String keyPrefix;
+
+    @Value("${project.storage.hot-tier.max-size}")
+    private DataSize maxSize;
+
+    @PostConstruct
+    void loadIndex() throws IOException {
+        hotTier = new HotTierIndex("Hot tier", maxSize.toBytes(), this::evict);
+        List<HotTierIndex.Entry> files = new ArrayList<>();
+        for (String path : List.of(imagePath, audioPath)) {
+            String cursor = null;
+            List<Path> batch;
+            do {
+                batch = mediaLayout.listFiles(path, cursor, BATCH_SIZE);
+                for (Path file : batch) {
+                    String fileName = file.getFileName().toString();
+                    if (!fileName.startsWith(".") && LOCAL_ONLY_SUFFIXES.stream().noneMatch(fileName::endsWith)) {
+                        files.add(new HotTierIndex.Entry(path, fileName, file, Files.size(file),
+                                Files.getLastModifiedTime(file).toMillis()));
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    cursor = mediaLayout.relativeName(path, batch.getLast());
+                }
+            } while (batch.size() == BATCH_SIZE);
+        }
+        hotTier.load(files);
+    }
+
+    @Override
+    public boolean store(String path, String fileName, Path source) throws IOException {
+        String key = keyOf(path, fileName);
+        if (Files.exists(mediaLayout.locate(path, fileName)) || objectStore.exists(key)) {
+            Files.delete(source);
+            return false;
+        }
+        Path target = mediaLayout.resolvePath(path, fileName);
+        Files.createDirectories(target.getParent());
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        try {
+            objectStore.put(key, target);
+        } catch (IOException | RuntimeException e) {
+            // Без копии в хранилище файл нельзя считать сохраненным - его бы потеряло первое же вытеснение
+            Files.deleteIfExists(target);
+            throw e;
+        }
+        hotTier.track(path, fileName, target);
+        return true;
+    }
+
+    @Override
+    public Path fetch(String path, String fileName) throws IOException {
+        Path local = mediaLayout.locate(path, fileName);
+        if (touch(local)) {
+            return local;
+        }
+
+        // Single-flight: одновременные промахи по одному файлу ждут одно скачивание
+        Path target = mediaLayout.resolvePath(path, fileName);
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(target, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            Path fetched = Files.isRegularFile(target) ? target : download(path, fileName, target);
+            touch(fetched);
+            future.complete(fetched);
+            return fetched;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(target);
+        }
+    }
+
+    @Override
+    public boolean exists(String path, String fileName) throws IOException {
+        return Files.isRegularFile(mediaLayout.locate(path, fileName)) || objectStore.exists(keyOf(path, fileName));
+    }
+
+    @Override
+    public boolean delete(String path, String fileName) throws IOException {
+        boolean deleted = deleteLocal(mediaLayout.resolvePath(path, fileName));
+        if (mediaLayout.isSharded()) {
+            deleted |= deleteLocal(mediaLayout.flatPath(path, fileName));
+        }
+        boolean remote = objectStore.exists(keyOf(path, fileName));
+        objectStore.delete(keyOf(path, fileName));
+        return deleted || remote;
+    }
+
+    /**
+     * @return суммарный размер файлов в горячем слое
+     */
+    public long cachedBytes() {
+        return hotTier.cachedBytes();
+    }
+
+    private Path download(String path, String fileName, Path target) throws IOException {
+        Path dirPath = Paths.get(path);
+        Files.createDirectories(dirPath);
+        Path tempFile = Files.createTempFile(dirPath, FETCH_PREFIX, ".tmp");
+        try {
+            objectStore.get(keyOf(path, fileName), tempFile);
+            Files.createDirectories(target.getParent());
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        log.debug("Fetched {}{} into hot tier", path, fileName);
+        hotTier.track(path, fileName, target);
+        return target;
+    }
+
+    private boolean touch(Path file) {
+        hotTier.touch(file);
+        return Files.isRegularFile(file);
+    }
+
+    private boolean deleteLocal(Path file) throws IOException {
+        hotTier.remove(file);
+        return Files.deleteIfExists(file);
+    }
+
+    /**
+     * Перед удалением локальной копии убеждаемся, что объект есть в хранилище, и догружаем его,
+     * если нет - так файлы, оставшиеся с чисто локальной конфигурации, не теряются.
+     */
+    private void evict(HotTierIndex.Entry victim) throws IOException {
+        String key = keyOf(victim.path(), victim.fileName());
+        if (!objectStore.exists(key)) {
+            objectStore.put(key, victim.file());
+            log.info("Uploaded local-only file {} before eviction", key);
+        }
+        Files.deleteIfExists(victim.file());
+    }
+
+    private String keyOf(String path, String fileName) {
+        Path directory = Paths.get(path).normalize().getFileName();
+        return keyPrefix + (directory != null ? directory + "/" : "") + fileName;
+    }
+
+    private Path await(CompletableFuture<Path> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching media file");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IllegalStateException("Failed to fetch media file", e.getCause());
+        }
+    }
+}
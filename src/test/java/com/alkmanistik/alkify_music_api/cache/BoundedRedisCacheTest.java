@@ -0,0 +1,244 @@
+package com.alkmanistik.alkify_music_api.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BoundedRedisCacheTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    // Общий Redis для всех менеджеров теста: значения кеша и строковые ключи
+    private final InMemoryCacheWriter writer = new InMemoryCacheWriter();
+    private final Map<String, String> strings = new ConcurrentHashMap<>();
+    private StringRedisTemplate redisTemplate;
+    private ValueOperations<String, String> values;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(redisTemplate.opsForZSet()).thenReturn(mock(ZSetOperations.class));
+        when(values.get(anyString())).thenAnswer(invocation -> strings.get(invocation.<String>getArgument(0)));
+        when(values.increment(anyString())).thenAnswer(invocation -> Long.parseLong(strings.merge(
+                invocation.getArgument(0), "1", (current, one) -> String.valueOf(Long.parseLong(current) + 1))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void slowLoadDoesNotBlockOtherKeys() throws Exception {
+        BoundedRedisCache cache = cache(Duration.ofMinutes(10), Duration.ofSeconds(1));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> cache.get("a", () -> {
+            loading.countDown();
+            release.await();
+            return "a";
+        }), executor);
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        assertEquals("b", assertTimeoutPreemptively(TIMEOUT, () -> cache.get("b", () -> "b")));
+
+        release.countDown();
+        assertEquals("a", slow.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void concurrentLoadsOfOneKeyCallLoaderOnce() throws Exception {
+        BoundedRedisCache cache = cache(Duration.ofMinutes(10), Duration.ofSeconds(1));
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<String> loader = () -> {
+            calls.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return "v";
+        };
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cache.get("k", loader), executor);
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        AtomicReference<Thread> waiter = new AtomicReference<>();
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> {
+            waiter.set(Thread.currentThread());
+            return cache.get("k", loader);
+        }, executor);
+        awaitParked(waiter);
+
+        release.countDown();
+        assertEquals("v", first.get(5, TimeUnit.SECONDS));
+        assertEquals("v", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals("v", cache.get("k").get());
+    }
+
+    @Test
+    void clearOnOneNodeHidesEntriesFromAnotherWithinGenerationRefresh() throws Exception {
+        Duration refresh = Duration.ofMillis(100);
+        BoundedRedisCache first = cache(Duration.ofMinutes(10), refresh);
+        BoundedRedisCache second = cache(Duration.ofMinutes(10), refresh);
+        first.put("k", "v");
+        assertEquals("v", second.get("k").get());
+
+        first.clear();
+
+        assertNull(first.get("k"));
+        Thread.sleep(refresh.toMillis() * 2);
+        assertNull(second.get("k"));
+        assertEquals("1", strings.get("cache-gen:tracks"));
+    }
+
+    @Test
+    void anotherNodeSeesOldGenerationUntilRefresh() {
+        BoundedRedisCache first = cache(Duration.ofMinutes(10), Duration.ofMinutes(1));
+        BoundedRedisCache second = cache(Duration.ofMinutes(10), Duration.ofMinutes(1));
+        first.put("k", "old");
+        assertEquals("old", second.get("k").get());
+
+        first.clear();
+        first.put("k", "new");
+
+        // Окно устаревшего поколения: без сообщения инвалидации второй узел читает прошлое поколение до generation-refresh
+        assertEquals("old", second.get("k").get());
+        second.refreshGeneration();
+        assertEquals("new", second.get("k").get());
+    }
+
+    @Test
+    void clearWithoutTtlDeletesEntriesInsteadOfBumpingGeneration() {
+        BoundedRedisCache first = cache(Duration.ZERO, Duration.ofSeconds(1));
+        BoundedRedisCache second = cache(Duration.ZERO, Duration.ofSeconds(1));
+        first.put("k", "v");
+
+        first.clear();
+
+        // Записи без TTL сами не истекут, поэтому их удаляют сразу, и второй узел не видит их даже в прошлом поколении
+        assertNull(second.get("k"));
+        assertTrue(writer.entries.isEmpty());
+        verify(values, never()).increment(anyString());
+        verify(redisTemplate).delete("cache-index:tracks:0");
+    }
+
+    private BoundedRedisCache cache(Duration ttl, Duration generationRefresh) {
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(writer)
+                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig().entryTtl(ttl))
+                .build();
+        CachePolicyProperties properties = new CachePolicyProperties();
+        properties.setGenerationRefresh(generationRefresh);
+        return (BoundedRedisCache) new BoundedRedisCacheManager(redisCacheManager, properties, redisTemplate,
+                mock(CacheDependencyIndex.class)).getCache("tracks");
+    }
+
+    private static void awaitParked(AtomicReference<Thread> thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            Thread current = thread.get();
+            if (current != null && current.getState() == Thread.State.WAITING) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        throw new AssertionError("Second load did not wait for the first one");
+    }
+
+    /**
+     * Redis в памяти для {@link RedisCache}: TTL не отслеживается, {@code clean} понимает только шаблон {@code префикс*}.
+     */
+    private static class InMemoryCacheWriter implements RedisCacheWriter {
+
+        private final Map<String, byte[]> entries = new ConcurrentHashMap<>();
+
+        @Override
+        public byte[] get(String name, byte[] key) {
+            return entries.get(string(key));
+        }
+
+        @Override
+        public CompletableFuture<byte[]> retrieve(String name, byte[] key, Duration ttl) {
+            return CompletableFuture.completedFuture(get(name, key));
+        }
+
+        @Override
+        public void put(String name, byte[] key, byte[] value, Duration ttl) {
+            entries.put(string(key), value);
+        }
+
+        @Override
+        public CompletableFuture<Void> store(String name, byte[] key, byte[] value, Duration ttl) {
+            put(name, key, value, ttl);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+            return entries.putIfAbsent(string(key), value);
+        }
+
+        @Override
+        public void remove(String name, byte[] key) {
+            entries.remove(string(key));
+        }
+
+        @Override
+        public void clean(String name, byte[] pattern) {
+            String prefix = string(pattern).replace("*", "");
+            entries.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+
+        @Override
+        public void clearStatistics(String name) {
+        }
+
+        @Override
+        public RedisCacheWriter withStatisticsCollector(CacheStatisticsCollector cacheStatisticsCollector) {
+            return this;
+        }
+
+        @Override
+        public CacheStatistics getCacheStatistics(String cacheName) {
+            return CacheStatisticsCollector.none().getCacheStatistics(cacheName);
+        }
+
+        private static String string(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
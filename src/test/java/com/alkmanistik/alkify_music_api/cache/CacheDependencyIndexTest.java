@@ -0,0 +1,102 @@
+package com.alkmanistik.alkify_music_api.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class CacheDependencyIndexTest {
+
+    private StringRedisTemplate redisTemplate;
+    private StringRedisConnection connection;
+    private List<Object> pipelineResults;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        connection = mock(StringRedisConnection.class);
+        pipelineResults = new ArrayList<>();
+        // Конвейер: команды уходят в соединение, результаты приходят списком после выполнения
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            invocation.<RedisCallback<Object>>getArgument(0).doInRedis(connection);
+            return pipelineResults;
+        });
+    }
+
+    @Test
+    void recordAddsMemberToEveryDependency() {
+        CacheDependencyIndex index = new CacheDependencyIndex(redisTemplate, Duration.ofHours(1));
+
+        index.record("album.byId", "10", Set.of(CacheDependency.album(10L), CacheDependency.artist(100L)));
+
+        verify(connection).sAdd("cache-deps:album:10", "album.byId|10");
+        verify(connection).sAdd("cache-deps:artist:100", "album.byId|10");
+        verify(connection).expire("cache-deps:album:10", 3600);
+        verify(connection).expire("cache-deps:artist:100", 3600);
+    }
+
+    @Test
+    void recordWithoutTtlDoesNotExpire() {
+        new CacheDependencyIndex(redisTemplate, null).record("track.byId", "1", Set.of(CacheDependency.track(1L)));
+
+        verify(connection).sAdd("cache-deps:track:1", "track.byId|1");
+        verify(connection, never()).expire(any(String.class), anyLong());
+    }
+
+    @Test
+    void recordWithoutDependenciesSkipsRedis() {
+        new CacheDependencyIndex(redisTemplate, null).record("user.liked", "1", Set.of());
+
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void takeDrainsEverySetAndMergesMembers() {
+        pipelineResults.add(new LinkedHashSet<>(List.of("album.byId|10", "tracks.byAlbum|10")));
+        pipelineResults.add(new LinkedHashSet<>(List.of("album.byId|10", "artist.byId|100", "broken")));
+
+        List<CacheDependencyIndex.Entry> entries = new CacheDependencyIndex(redisTemplate, null)
+                .take(List.of(CacheDependency.album(10L), CacheDependency.artist(100L)));
+
+        // SPOP с максимальным количеством снимает все множество вместе с ключом
+        verify(connection).sPop("cache-deps:album:10", Integer.MAX_VALUE);
+        verify(connection).sPop("cache-deps:artist:100", Integer.MAX_VALUE);
+        assertEquals(List.of(
+                new CacheDependencyIndex.Entry("album.byId", "10"),
+                new CacheDependencyIndex.Entry("tracks.byAlbum", "10"),
+                new CacheDependencyIndex.Entry("artist.byId", "100")
+        ), entries);
+    }
+
+    @Test
+    void keysMayContainSeparator() {
+        pipelineResults.add(Set.of("tracks.search|rock|pop"));
+
+        assertEquals(List.of(new CacheDependencyIndex.Entry("tracks.search", "rock|pop")),
+                new CacheDependencyIndex(redisTemplate, null).take(List.of(CacheDependency.track(1L))));
+    }
+
+    @Test
+    void takeWithoutDependenciesSkipsRedis() {
+        assertTrue(new CacheDependencyIndex(redisTemplate, null).take(List.of()).isEmpty());
+        verifyNoInteractions(redisTemplate);
+    }
+}
@@ -0,0 +1,98 @@
+package com.alkmanistik.alkify_music_api.cache;
+
+import com.alkmanistik.alkify_music_api.dto.AlbumDTO;
+import com.alkmanistik.alkify_music_api.dto.AlbumMinimalDTO;
+import com.alkmanistik.alkify_music_api.dto.ArtistDTO;
+import com.alkmanistik.alkify_music_api.dto.ArtistMinimalDTO;
+import com.alkmanistik.alkify_music_api.dto.TrackDTO;
+import com.alkmanistik.alkify_music_api.dto.TrackMinimalDTO;
+import com.alkmanistik.alkify_music_api.dto.UserDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheDependencyTest {
+
+    @Test
+    void trackCollectsAlbumAndArtists() {
+        TrackDTO track = new TrackDTO();
+        track.setId(1L);
+        track.setAlbum(album(10L));
+        track.setArtists(List.of(artist(100L), artist(101L)));
+
+        assertEquals(Set.of(
+                CacheDependency.track(1L),
+                CacheDependency.album(10L),
+                CacheDependency.artist(100L),
+                CacheDependency.artist(101L)
+        ), CacheDependency.of(track));
+    }
+
+    @Test
+    void nestedDtosAndListsAreWalked() {
+        AlbumDTO album = new AlbumDTO();
+        album.setId(10L);
+        album.setArtists(List.of(artist(100L)));
+        album.setTracks(List.of(track(1L), track(2L)));
+
+        ArtistDTO artist = new ArtistDTO();
+        artist.setId(200L);
+        artist.setAlbums(List.of(album(20L)));
+        artist.setTracks(List.of(track(3L)));
+        UserDTO user = new UserDTO();
+        user.setId(7L);
+        user.setManagedArtists(List.of(artist));
+
+        assertEquals(Set.of(
+                CacheDependency.album(10L),
+                CacheDependency.artist(100L),
+                CacheDependency.track(1L),
+                CacheDependency.track(2L),
+                CacheDependency.user(7L),
+                CacheDependency.artist(200L),
+                CacheDependency.album(20L),
+                CacheDependency.track(3L)
+        ), CacheDependency.of(List.of(album, user)));
+    }
+
+    @Test
+    void nullsAndMissingIdsAreSkipped() {
+        TrackDTO track = new TrackDTO();
+        track.setAlbum(new AlbumMinimalDTO());
+        List<Object> values = new ArrayList<>(Arrays.asList(null, track));
+
+        assertTrue(CacheDependency.of(values).isEmpty());
+        assertTrue(CacheDependency.of(null).isEmpty());
+    }
+
+    @Test
+    void plainValuesHaveNoDependencies() {
+        assertTrue(CacheDependency.of(Boolean.TRUE).isEmpty());
+        assertTrue(CacheDependency.of(42L).isEmpty());
+        assertTrue(CacheDependency.of("track:1").isEmpty());
+    }
+
+    private static AlbumMinimalDTO album(Long id) {
+        AlbumMinimalDTO album = new AlbumMinimalDTO();
+        album.setId(id);
+        return album;
+    }
+
+    private static ArtistMinimalDTO artist(Long id) {
+        ArtistMinimalDTO artist = new ArtistMinimalDTO();
+        artist.setId(id);
+        return artist;
+    }
+
+    private static TrackMinimalDTO track(Long id) {
+        TrackMinimalDTO track = new TrackMinimalDTO();
+        track.setId(id);
+        return track;
+    }
+}
@@ -0,0 +1,223 @@
+package com.alkmanistik.alkify_music_api.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache.ValueRetrievalException;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class TwoLevelCacheTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    // Свои потоки: в общем пуле может оказаться один поток, и заблокированная загрузка не даст запустить вторую
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private GatedCache redis;
+    private Cache<String, Object> local;
+    private TwoLevelCache cache;
+
+    @BeforeEach
+    void setUp() {
+        redis = new GatedCache(executor);
+        local = Caffeine.newBuilder().build();
+        cache = new TwoLevelCache("tracks", redis, local, mock(CacheInvalidationBus.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void evictDuringLoadDoesNotRepopulateLocal() throws Exception {
+        redis.put("k", "old");
+        CompletableFuture<Object> load = redis.gateNextRead(() -> cache.get("k"));
+
+        cache.evict("k");
+        redis.release();
+
+        assertEquals("old", ((ValueWrapper) load.get(5, TimeUnit.SECONDS)).get());
+        assertNull(local.getIfPresent("k"));
+        assertNull(cache.get("k"));
+    }
+
+    @Test
+    void clearLocalDuringLoadDoesNotRepopulateLocal() throws Exception {
+        redis.put("k", "old");
+        CompletableFuture<Object> load = redis.gateNextRead(() -> cache.get("k"));
+
+        cache.clearLocal();
+        redis.release();
+
+        load.get(5, TimeUnit.SECONDS);
+        assertNull(local.getIfPresent("k"));
+    }
+
+    @Test
+    void putDuringLoadKeepsNewValueInLocal() throws Exception {
+        redis.put("k", "old");
+        CompletableFuture<Object> load = redis.gateNextRead(() -> cache.get("k"));
+
+        cache.put("k", "new");
+        redis.release();
+
+        load.get(5, TimeUnit.SECONDS);
+        assertEquals("new", local.getIfPresent("k"));
+    }
+
+    @Test
+    void slowLoadDoesNotBlockOtherKeys() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> cache.get("a", () -> {
+            loading.countDown();
+            release.await();
+            return "a";
+        }), executor);
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        assertEquals("b", assertTimeoutPreemptively(TIMEOUT, () -> cache.get("b", () -> "b")));
+
+        release.countDown();
+        assertEquals("a", slow.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void concurrentLoadsOfOneKeyCallLoaderOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<String> loader = () -> {
+            calls.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return "v";
+        };
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cache.get("k", loader), executor);
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        AtomicReference<Thread> waiter = new AtomicReference<>();
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> {
+            waiter.set(Thread.currentThread());
+            return cache.get("k", loader);
+        }, executor);
+        awaitParked(waiter);
+
+        release.countDown();
+        assertEquals("v", first.get(5, TimeUnit.SECONDS));
+        assertEquals("v", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void failedLoadIsRethrownAndNotCached() {
+        AtomicInteger calls = new AtomicInteger();
+        Callable<String> failing = () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("db down");
+        };
+
+        ValueRetrievalException e = assertThrows(ValueRetrievalException.class, () -> cache.get("k", failing));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals("v", cache.get("k", () -> "v"));
+        assertEquals(1, calls.get());
+    }
+
+    private static void awaitParked(AtomicReference<Thread> thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            Thread current = thread.get();
+            if (current != null && current.getState() == Thread.State.WAITING) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        throw new AssertionError("Second load did not wait for the first one");
+    }
+
+    /**
+     * L2 в памяти, чтение которого можно задержать: так загрузка L1 застревает между чтением L2 и записью в L1.
+     * Загрузка через {@link #get(Object, Callable)} не держит блокировок, как и {@link BoundedRedisCache}.
+     */
+    private static class GatedCache extends ConcurrentMapCache {
+
+        private final ExecutorService executor;
+        private final AtomicBoolean gated = new AtomicBoolean();
+        private final CountDownLatch read = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        GatedCache(ExecutorService executor) {
+            super("tracks");
+            this.executor = executor;
+        }
+
+        CompletableFuture<Object> gateNextRead(Callable<Object> call) throws InterruptedException {
+            gated.set(true);
+            CompletableFuture<Object> result = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return call.call();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, executor);
+            assertTrue(read.await(5, TimeUnit.SECONDS));
+            return result;
+        }
+
+        void release() {
+            release.countDown();
+        }
+
+        @Override
+        public ValueWrapper get(Object key) {
+            ValueWrapper value = super.get(key);
+            if (gated.compareAndSet(true, false)) {
+                read.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return value;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(Object key, Callable<T> valueLoader) {
+            ValueWrapper cached = get(key);
+            if (cached != null) {
+                return (T) cached.get();
+            }
+            T value;
+            try {
+                value = valueLoader.call();
+            } catch (Exception e) {
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+            put(key, value);
+            return value;
+        }
+    }
+}
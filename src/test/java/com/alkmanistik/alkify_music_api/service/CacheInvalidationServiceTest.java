@@ -0,0 +1,90 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.cache.CacheDependency;
+import com.alkmanistik.alkify_music_api.cache.CacheDependencyIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CacheInvalidationServiceTest {
+
+    private CacheDependencyIndex index;
+    private Cache albums;
+    private CacheInvalidationService service;
+
+    @BeforeEach
+    void setUp() {
+        index = mock(CacheDependencyIndex.class);
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager("album.byId");
+        albums = cacheManager.getCache("album.byId");
+        albums.put("10", "album 10");
+        albums.put("11", "album 11");
+        when(index.take(List.of(CacheDependency.album(10L))))
+                .thenReturn(List.of(new CacheDependencyIndex.Entry("album.byId", "10")));
+        service = new CacheInvalidationService(cacheManager, index);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void evictsIndexedEntriesImmediatelyOutsideTransaction() {
+        service.evictDependents(CacheDependency.album(10L));
+
+        assertNull(albums.get("10"));
+        assertNotNull(albums.get("11"));
+    }
+
+    @Test
+    void evictionWaitsForCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.evictDependents(CacheDependency.album(10L));
+
+        verify(index, never()).take(anyCollection());
+        assertNotNull(albums.get("10"));
+
+        TransactionSynchronizationUtils.triggerAfterCommit();
+        assertNull(albums.get("10"));
+        assertNotNull(albums.get("11"));
+    }
+
+    @Test
+    void rollbackKeepsEntries() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.evictDependents(CacheDependency.album(10L));
+        TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(index, never()).take(anyCollection());
+        assertNotNull(albums.get("10"));
+    }
+
+    @Test
+    void indexFailureLeavesEntriesToTtl() {
+        when(index.take(List.of(CacheDependency.album(11L)))).thenThrow(new IllegalStateException("Redis is down"));
+
+        service.evictDependents(CacheDependency.album(11L));
+
+        assertNotNull(albums.get("11"));
+    }
+}
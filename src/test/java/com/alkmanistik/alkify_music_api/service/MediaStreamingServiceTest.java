@@ -0,0 +1,218 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.dto.MediaValidatorDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MediaStreamingServiceTest {
+
+    private static final MediaType AUDIO = MediaType.parseMediaType("audio/mpeg");
+    private static final long FILE_SIZE = DataSize.ofMegabytes(6).toBytes();
+    private static final int SMALL_SIZE = 1000;
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+    private Path smallFile;
+    private byte[] smallContent;
+    private MediaValidatorDTO validators;
+    private MediaStreamingService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = tempDir.resolve("track.mp3");
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(FILE_SIZE);
+        }
+        validators = new MediaValidatorDTO("\"abc\"", 1_700_000_000_000L, FILE_SIZE);
+        smallContent = new byte[SMALL_SIZE];
+        for (int i = 0; i < smallContent.length; i++) {
+            smallContent[i] = (byte) (i * 7);
+        }
+        smallFile = Files.write(tempDir.resolve("cover.bin"), smallContent);
+
+        MediaIoScheduler scheduler = new MediaIoScheduler(new SimpleMeterRegistry(),
+                DataSize.ofMegabytes(200), 0.5, Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(scheduler, "enabled", true);
+        ReflectionTestUtils.setField(scheduler, "perConnection", DataSize.ofMegabytes(2));
+        ReflectionTestUtils.setField(scheduler, "perUser", DataSize.ofMegabytes(8));
+        ReflectionTestUtils.setField(scheduler, "burst", DataSize.ofKilobytes(512));
+        ReflectionTestUtils.setField(scheduler, "bulkMinSize", DataSize.ofMegabytes(16));
+
+        service = new MediaStreamingService(scheduler);
+        ReflectionTestUtils.setField(service, "sendfileEnabled", true);
+        ReflectionTestUtils.setField(service, "sendfileMinSize", DataSize.ofKilobytes(48));
+        ReflectionTestUtils.setField(service, "asyncEnabled", false);
+        ReflectionTestUtils.setField(service, "asyncChunkSize", DataSize.ofKilobytes(64));
+        ReflectionTestUtils.setField(service, "asyncTimeout", Duration.ofMinutes(1));
+    }
+
+    @Test
+    void largeRangeUsesSendfileWithSchedulerEnabled() throws IOException {
+        long count = DataSize.ofMegabytes(5).toBytes();
+        MockHttpServletRequest request = request("bytes=0-" + (count - 1));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        service.stream(file, AUDIO, validators, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals(file.toRealPath().toString(), request.getAttribute(MediaStreamingService.SENDFILE_FILENAME_ATTR));
+        assertEquals(0L, request.getAttribute(MediaStreamingService.SENDFILE_FILE_START_ATTR));
+        assertEquals(count, request.getAttribute(MediaStreamingService.SENDFILE_FILE_END_ATTR));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void userInDebtAfterSendfileIsPaced() throws IOException {
+        service.stream(file, AUDIO, validators, request("bytes=0-5242879"), new MockHttpServletResponse());
+
+        long count = DataSize.ofKilobytes(64).toBytes();
+        MockHttpServletRequest request = request("bytes=0-" + (count - 1));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        service.stream(file, AUDIO, validators, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertNull(request.getAttribute(MediaStreamingService.SENDFILE_FILENAME_ATTR));
+        assertEquals(count, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void suffixRangeReturnsTail() throws IOException {
+        MockHttpServletResponse response = streamSmall("bytes=-100", null);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 900-999/1000", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(Arrays.copyOfRange(smallContent, 900, 1000), response.getContentAsByteArray());
+    }
+
+    @Test
+    void openEndedRangeReturnsRestOfFile() throws IOException {
+        MockHttpServletResponse response = streamSmall("bytes=250-", null);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 250-999/1000", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(Arrays.copyOfRange(smallContent, 250, 1000), response.getContentAsByteArray());
+    }
+
+    @Test
+    void rangeEndBeyondFileIsClamped() throws IOException {
+        MockHttpServletResponse response = streamSmall("bytes=990-5000", null);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 990-999/1000", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(10, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void multipleRangesReturnMultipartBody() throws IOException {
+        MockHttpServletResponse response = streamSmall("bytes=0-9,500-509", null);
+
+        assertEquals(206, response.getStatus());
+        assertTrue(response.getContentType().startsWith("multipart/byteranges; boundary="));
+        String body = response.getContentAsString(StandardCharsets.ISO_8859_1);
+        assertTrue(body.contains("Content-Range: bytes 0-9/1000"));
+        assertTrue(body.contains("Content-Range: bytes 500-509/1000"));
+        assertEquals(response.getContentLengthLong(), response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void overlappingRangesAreCoalesced() throws IOException {
+        MockHttpServletResponse response = streamSmall("bytes=0-99,50-149", null);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 0-149/1000", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void rangeStartingPastEndIsNotSatisfiable() throws IOException {
+        MockHttpServletResponse response = streamSmall("bytes=1000-", null);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */1000", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void emptySuffixRangeIsNotSatisfiable() throws IOException {
+        assertEquals(416, streamSmall("bytes=-0", null).getStatus());
+    }
+
+    @Test
+    void invalidRangeIsIgnored() throws IOException {
+        for (String range : new String[]{"bytes=abc", "bytes=500-100", "bytes=" + "1-1,".repeat(200) + "1-1"}) {
+            MockHttpServletResponse response = streamSmall(range, null);
+
+            assertEquals(200, response.getStatus(), range);
+            assertArrayEquals(smallContent, response.getContentAsByteArray(), range);
+        }
+    }
+
+    @Test
+    void ifRangeWithCurrentEtagKeepsRange() throws IOException {
+        assertEquals(206, streamSmall("bytes=0-9", "\"abc\"").getStatus());
+    }
+
+    @Test
+    void ifRangeWithStaleValidatorReturnsWholeFile() throws IOException {
+        MockHttpServletResponse stale = streamSmall("bytes=0-9", "\"old\"");
+        assertEquals(200, stale.getStatus());
+        assertArrayEquals(smallContent, stale.getContentAsByteArray());
+
+        // Слабый ETag в If-Range не допускается
+        assertEquals(200, streamSmall("bytes=0-9", "W/\"abc\"").getStatus());
+    }
+
+    @Test
+    void ifRangeWithLastModifiedDate() throws IOException {
+        MockHttpServletRequest request = request("bytes=0-9");
+        request.removeAttribute(MediaStreamingService.SENDFILE_SUPPORTED_ATTR);
+        request.addHeader(HttpHeaders.IF_RANGE, validators.getLastModified());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        service.stream(smallFile, AUDIO, validators, request, response);
+
+        assertEquals(206, response.getStatus());
+    }
+
+    private MockHttpServletResponse streamSmall(String range, String ifRange) throws IOException {
+        MockHttpServletRequest request = request(range);
+        request.removeAttribute(MediaStreamingService.SENDFILE_SUPPORTED_ATTR);
+        if (ifRange != null) {
+            request.addHeader(HttpHeaders.IF_RANGE, ifRange);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        service.stream(smallFile, AUDIO, validators, request, response);
+        return response;
+    }
+
+    private MockHttpServletRequest request(String range) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/files/audios/track.mp3");
+        request.setRemoteAddr("203.0.113.7");
+        request.setAttribute(MediaStreamingService.SENDFILE_SUPPORTED_ATTR, true);
+        if (range != null) {
+            request.addHeader(HttpHeaders.RANGE, range);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,135 @@
+package com.alkmanistik.alkify_music_api.service;
+
+import com.alkmanistik.alkify_music_api.service.MediaStreamingService.Bytes;
+import com.alkmanistik.alkify_music_api.service.MediaStreamingService.FileRegion;
+import com.alkmanistik.alkify_music_api.service.MediaStreamingService.Segment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class StoredZipBuilderTest {
+
+    private static final long ZIP64_SIZE = 0x1_0000_0000L + 17;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void archiveIsReadableByZipFile() throws IOException {
+        byte[] first = "first track".getBytes(StandardCharsets.UTF_8);
+        byte[] second = new byte[70_000];
+        for (int i = 0; i < second.length; i++) {
+            second[i] = (byte) (i * 31);
+        }
+        Path firstFile = Files.write(tempDir.resolve("first.mp3"), first);
+        Path secondFile = Files.write(tempDir.resolve("second.flac"), second);
+
+        StoredZipBuilder builder = new StoredZipBuilder();
+        builder.addFile("01 - Первый.mp3", firstFile, first.length, crc32(first), 1_700_000_000_000L);
+        builder.addFile("02 - Second.flac", secondFile, second.length, crc32(second), 1_700_000_000_000L);
+        builder.addFile("cover.jpg", Files.write(tempDir.resolve("empty"), new byte[0]), 0, 0, 0);
+        List<Segment> segments = builder.finish();
+
+        Path archive = write(segments, tempDir.resolve("album.zip"));
+        assertEquals(builder.length(), Files.size(archive));
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            assertEquals(List.of("01 - Первый.mp3", "02 - Second.flac", "cover.jpg"),
+                    Collections.list(zip.entries()).stream().map(ZipEntry::getName).toList());
+            assertEntry(zip, "01 - Первый.mp3", first);
+            assertEntry(zip, "02 - Second.flac", second);
+            assertEntry(zip, "cover.jpg", new byte[0]);
+        }
+    }
+
+    @Test
+    void largeEntryUsesZip64SizesAndOffsets() throws IOException {
+        byte[] small = "after four gigabytes".getBytes(StandardCharsets.UTF_8);
+        Path smallFile = Files.write(tempDir.resolve("small.mp3"), small);
+
+        StoredZipBuilder builder = new StoredZipBuilder();
+        // Содержимое большой записи не читается - в архиве на его месте остается дыра разреженного файла
+        builder.addFile("huge.wav", tempDir.resolve("hole"), ZIP64_SIZE, 0, 1_700_000_000_000L);
+        builder.addFile("small.mp3", smallFile, small.length, crc32(small), 1_700_000_000_000L);
+        List<Segment> segments = builder.finish();
+
+        Path archive = write(segments, tempDir.resolve("zip64.zip"));
+        assertEquals(builder.length(), Files.size(archive));
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            ZipEntry huge = zip.getEntry("huge.wav");
+            assertNotNull(huge);
+            assertEquals(ZIP64_SIZE, huge.getSize());
+            assertEquals(ZIP64_SIZE, huge.getCompressedSize());
+            // Запись лежит за границей 4 ГБ: найти и прочитать ее можно только по смещению из ZIP64 extra
+            assertEntry(zip, "small.mp3", small);
+        }
+    }
+
+    private static void assertEntry(ZipFile zip, String name, byte[] expected) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        assertNotNull(entry, name);
+        assertEquals(ZipEntry.STORED, entry.getMethod());
+        assertEquals(expected.length, entry.getSize());
+        assertEquals(crc32(expected), entry.getCrc());
+        try (InputStream in = zip.getInputStream(entry)) {
+            assertArrayEquals(expected, in.readAllBytes());
+        }
+    }
+
+    /**
+     * Собирает архив из сегментов так же, как их отдает сервер. Части несуществующих файлов пропускаются
+     * без записи и остаются дырами разреженного файла.
+     */
+    private static Path write(List<Segment> segments, Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.SPARSE)) {
+            long position = 0;
+            for (Segment segment : segments) {
+                switch (segment) {
+                    case Bytes bytes -> {
+                        ByteBuffer content = bytes.content().duplicate();
+                        while (content.hasRemaining()) {
+                            position += out.write(content, position);
+                        }
+                    }
+                    case FileRegion region -> {
+                        if (Files.exists(region.file())) {
+                            try (FileChannel in = FileChannel.open(region.file(), StandardOpenOption.READ)) {
+                                long copied = 0;
+                                while (copied < region.count()) {
+                                    copied += in.transferTo(region.start() + copied, region.count() - copied,
+                                            out.position(position + copied));
+                                }
+                            }
+                        }
+                        position += region.count();
+                    }
+                    default -> throw new IllegalStateException("Unexpected segment " + segment);
+                }
+            }
+        }
+        return target;
+    }
+
+    private static long crc32(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+}